@@ -31,18 +31,24 @@
  */
 package org.openrtb.common.json;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
-import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.ParameterizedType;
+import java.nio.charset.Charset;
 
+import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.map.JsonMappingException;
-import org.codehaus.jackson.map.MappingJsonFactory;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectReader;
+import org.codehaus.jackson.map.ObjectWriter;
 
 /**
  * This generic class is responsible for converting JSON formatted inputs into
@@ -52,18 +58,36 @@ import org.codehaus.jackson.map.ObjectMapper;
  * For examples on how to use this class, please refer to the unit tests for
  * specific examples.
  *
+ * Translators are thread-safe. All of them share one {@link ObjectMapper},
+ * and so its caches of serializers and deserializers; each holds an
+ * immutable {@link ObjectReader} and {@link ObjectWriter} for its type,
+ * whose (de)serializers are resolved when the translator is created.
+ *
  * @param <T>
  *            The class to serialize and deserialize to and from JSON.
  */
 public abstract class AbstractJsonTranslator<T> {
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // configured once, and only read afterwards, so safe to share
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory FACTORY = MAPPER.getJsonFactory();
+
     private Class<?> clazz;
-    private boolean usePrettyPrinter;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private volatile boolean usePrettyPrinter;
 
 
     public AbstractJsonTranslator(Class<? extends AbstractJsonTranslator<?>> subclass) {
         ParameterizedType pType = (ParameterizedType) subclass.getGenericSuperclass();
         clazz = (Class<?>)pType.getActualTypeArguments()[0];
+        reader = MAPPER.reader(clazz);
+        writer = MAPPER.writerWithType(clazz);
+        // resolves and caches the (de)serializers now, not on first use
+        MAPPER.canSerialize(clazz);
+        MAPPER.canDeserialize(MAPPER.constructType(clazz));
     }
 
     /**
@@ -87,7 +111,7 @@ public abstract class AbstractJsonTranslator<T> {
      */
     public T fromJSON(String json)
             throws JsonMappingException, JsonParseException, IOException {
-        return fromJSON(new StringReader(json));
+        return reader.<T>readValue(json);
     }
 
     /**
@@ -107,10 +131,42 @@ public abstract class AbstractJsonTranslator<T> {
      * @throws IOException
      *             Refer to {@link #fromJSON(Reader)} for more information.
      */
-    @SuppressWarnings("unchecked")
     public T fromJSON(Reader reader)
             throws JsonMappingException, JsonParseException, IOException {
-        return (T)new ObjectMapper().readValue(reader, clazz);
+        return this.reader.<T>readValue(reader);
+    }
+
+    /**
+     * Attempts to convert the JSON read from <code>in</code>, in any of the
+     * encodings JSON allows, into an instance of the parameterized type
+     * <code>T</code>. The stream is closed.
+     *
+     * @throws JsonMappingException
+     *             Refer to {@link #fromJSON(Reader)} for more information.
+     * @throws JsonParseException
+     *             Refer to {@link #fromJSON(Reader)} for more information.
+     * @throws IOException
+     *             Refer to {@link #fromJSON(Reader)} for more information.
+     */
+    public T fromJSON(InputStream in)
+            throws JsonMappingException, JsonParseException, IOException {
+        return reader.<T>readValue(in);
+    }
+
+    /**
+     * Attempts to convert the encoded <code>json</code> into an instance of
+     * the parameterized type <code>T</code>.
+     *
+     * @throws JsonMappingException
+     *             Refer to {@link #fromJSON(Reader)} for more information.
+     * @throws JsonParseException
+     *             Refer to {@link #fromJSON(Reader)} for more information.
+     * @throws IOException
+     *             Refer to {@link #fromJSON(Reader)} for more information.
+     */
+    public T fromJSON(byte[] json)
+            throws JsonMappingException, JsonParseException, IOException {
+        return reader.<T>readValue(json);
     }
 
     public String toJSON(T value) throws IOException {
@@ -119,15 +175,51 @@ public abstract class AbstractJsonTranslator<T> {
         return writer.toString();
     }
 
+    /**
+     * The JSON form of <code>value</code>, UTF-8 encoded.
+     */
+    public byte[] toJSONBytes(T value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        toJSON(out, value);
+        return out.toByteArray();
+    }
+
     public void toJSON(Writer writer, T value) throws IOException {
-        MappingJsonFactory factory = new MappingJsonFactory();
-        JsonGenerator generator = factory.createJsonGenerator(writer);
+        toJSON(configure(FACTORY.createJsonGenerator(writer)), value);
+    }
+
+    /**
+     * Writes <code>value</code> to <code>out</code> as UTF-8 encoded JSON;
+     * the bytes are those of {@link #toJSON(Object)} encoded as UTF-8.
+     */
+    public void toJSON(OutputStream out, T value) throws IOException {
+        toJSON(createJsonGenerator(out), value);
+    }
+
+    /**
+     * Writes <code>value</code> to the supplied <code>generator</code>, which
+     * is flushed but not closed.
+     */
+    public void toJSON(JsonGenerator generator, T value) throws IOException {
+        writer.writeValue(generator, value);
+        generator.flush();
+    }
 
+    /**
+     * A UTF-8 generator writing to <code>out</code>, configured as this
+     * translator's own are.
+     */
+    public JsonGenerator createJsonGenerator(OutputStream out) throws IOException {
+        // not JsonEncoding.UTF8: that generator escapes characters outside
+        // the BMP, where the writer based one, and so signatures, do not
+        return configure(FACTORY.createJsonGenerator(new OutputStreamWriter(out, UTF8)));
+    }
+
+    private JsonGenerator configure(JsonGenerator generator) {
         if (usePrettyPrinter) {
             generator.useDefaultPrettyPrinter();
         }
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.writeValue(generator, value);
+        return generator;
     }
 
     public void usePrettyPrinter() {
@@ -136,6 +228,9 @@ public abstract class AbstractJsonTranslator<T> {
     public void disablePrettyPrint() {
         usePrettyPrinter = false;
     }
+    public boolean isPrettyPrinting() {
+        return usePrettyPrinter;
+    }
 
     /**
      * Returns the {@link Class} that this converter object is responsible for
@@ -47,7 +47,7 @@ import org.codehaus.jackson.map.annotate.JsonSerialize.Inclusion;
  * @since 1.0
  */
 @JsonSerialize(include=Inclusion.NON_DEFAULT)
-@JsonPropertyOrder({"landingPageTLD", "name", "sinceThisTimestamp", "blocklist"})
+@JsonPropertyOrder({"landingPageTLD", "name", "sinceThisTimestamp", "blocklist", "removedBlocklist"})
 public class Advertiser {
 
     @JsonProperty("landingPageTLD")
@@ -62,6 +62,9 @@ public class Advertiser {
     @JsonProperty("blocklist")
     private List<Blocklist> blocklist;
 
+    @JsonProperty("removedBlocklist")
+    private List<Blocklist> removedBlocklist;
+
     public Advertiser() {
         this(null, null, null, null);
     }
@@ -79,6 +82,7 @@ public class Advertiser {
         setName(name);
         setTimestamp(timestamp);
         setBlocklist(blocklist);
+        setRemovedBlocklist(null);
     }
 
     /**
@@ -114,10 +118,16 @@ public class Advertiser {
 
     /**
      * If specified, the API will only return changes since this POSIX
-     * timestamp.
+     * timestamp (in milliseconds).
      *
      * By default, the API will return all results if this value is set to
      * <code>null</code>.
+     *
+     * In a response, a non-<code>null</code> value marks the advertiser as an
+     * incremental update since that time: {@link #getBlocklist()} then holds
+     * the entries added, and {@link #getRemovedBlocklist()} the entries
+     * removed, since then. A <code>null</code> value means the
+     * {@link #getBlocklist()} is complete.
      */
     @JsonProperty("sinceThisTimestamp")
     public Long getTimestamp() {
@@ -160,9 +170,45 @@ public class Advertiser {
         this.blocklist.add(blocklist);
     }
 
+    /**
+     * For incremental updates (see {@link #getTimestamp()}), the
+     * {@link Blocklist} entries removed since <tt>sinceThisTimestamp</tt>.
+     * Removals are applied before the additions in {@link #getBlocklist()}, so
+     * an entry removed and then blocked again ends up blocked.
+     *
+     * This method should never return <code>null</code>.
+     */
+    public List<Blocklist> getRemovedBlocklist() {
+        return removedBlocklist;
+    }
+
+    public void setRemovedBlocklist(List<Blocklist> removedBlocklist) {
+        initializeRemovedBlocklist();
+        if (removedBlocklist == null) {
+            this.removedBlocklist.clear();
+        } else {
+            this.removedBlocklist.addAll(removedBlocklist);
+        }
+    }
+
+    public void addRemovedBlocklist(Blocklist blocklist) {
+        if (blocklist == null) {
+            throw new IllegalArgumentException("Blocklist passed to Advertiser#addRemovedBlocklist() must be non-null");
+        }
+
+        initializeRemovedBlocklist();
+        this.removedBlocklist.add(blocklist);
+    }
+
     private void initializeBlocklist() {
         if (blocklist == null) {
             blocklist = new ArrayList<Blocklist>();
         }
     }
+
+    private void initializeRemovedBlocklist() {
+        if (removedBlocklist == null) {
+            removedBlocklist = new ArrayList<Blocklist>();
+        }
+    }
 }
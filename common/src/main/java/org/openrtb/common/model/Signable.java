@@ -31,10 +31,22 @@
  */
 package org.openrtb.common.model;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.codec.digest.DigestUtils;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonStreamContext;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.util.JsonGeneratorDelegate;
 import org.openrtb.common.json.AbstractJsonTranslator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,6 +61,17 @@ public abstract class Signable {
 
     private static final Logger log = LoggerFactory.getLogger(Signable.class);
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final JsonFactory JSON = new JsonFactory();
+
+    // the JSON is only needed for its digest
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) { }
+        @Override
+        public void write(byte[] b, int off, int len) { }
+    };
+
     abstract Identification getIdentification();
 
 
@@ -80,13 +103,51 @@ public abstract class Signable {
 	public void sign(byte[] sharedSecret, AbstractJsonTranslator translator)
             throws IOException {
         clearToken();
-        StringBuilder signableStr =
-            new StringBuilder("{").append(translator.toJSON(this))
-                                  .append(",\"sharedSecret\":")
-                                  .append(Hex.encodeHex(sharedSecret))
-                                  .append("}");
-        String token = DigestUtils.md5Hex(signableStr.toString());
+        MessageDigest md5 = signatureDigest();
+        translator.toJSON(new DigestOutputStream(DISCARD, md5), this);
+        setToken(token(md5, sharedSecret));
+    }
+
+    /**
+     * Signs this object as {@link #sign(byte[], AbstractJsonTranslator)}
+     * does, and returns its signed JSON form, UTF-8 encoded, as
+     * {@link AbstractJsonTranslator#toJSON(Object)} would produce it after
+     * signing.
+     *
+     * The object is serialized once: the bytes are digested as they are
+     * written, and the token is then inserted where it belongs, at the end
+     * of the <tt>identification</tt> object.
+     *
+     * @throws IOException
+     *             should the {@link Signable} be unable to be converted to
+     *             JSON.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public byte[] signToJSON(byte[] sharedSecret, AbstractJsonTranslator translator)
+            throws IOException {
+        clearToken();
+        MessageDigest md5 = signatureDigest();
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        TokenLocator generator =
+            new TokenLocator(translator.createJsonGenerator(new DigestOutputStream(json, md5)), json);
+        translator.toJSON(generator, this);
+        String token = token(md5, sharedSecret);
         setToken(token);
+
+        int at = generator.tokenOffset;
+        if (at < 0 || translator.isPrettyPrinting()) {
+            // not where it can be spliced in; serialize again, signed
+            json.reset();
+            translator.toJSON(json, this);
+            return json.toByteArray();
+        }
+        byte[] unsigned = json.toByteArray();
+        byte[] field = ((unsigned[at - 1] == '{' ? "" : ",") + "\"token\":\"" + token + "\"").getBytes(UTF8);
+        byte[] signed = new byte[unsigned.length + field.length];
+        System.arraycopy(unsigned, 0, signed, 0, at);
+        System.arraycopy(field, 0, signed, at, field.length);
+        System.arraycopy(unsigned, at, signed, at + field.length, unsigned.length - at);
+        return signed;
     }
 
     /**
@@ -120,12 +181,9 @@ public abstract class Signable {
                 return false;
             }
 
-            StringBuilder signableStr =
-                new StringBuilder("{").append(translator.toJSON(this))
-                                      .append(",\"sharedSecret\":")
-                                      .append(Hex.encodeHex(sharedSecret))
-                                      .append("}");
-            String verification = DigestUtils.md5Hex(signableStr.toString());
+            MessageDigest md5 = signatureDigest();
+            translator.toJSON(new DigestOutputStream(DISCARD, md5), this);
+            String verification = token(md5, sharedSecret);
             if (!token.equals(verification)) {
                 log.error("Signature verification value ["+verification+"] does not match supplied value ["+token+"]");
                 return false;
@@ -136,6 +194,136 @@ public abstract class Signable {
         return true;
     }
 
+    /**
+     * Validates a signed object in the form it was received, UTF-8 encoded
+     * JSON, without reading it into objects and serializing it again: the
+     * digest is taken over the received bytes with the <tt>token</tt> member
+     * of the <tt>identification</tt> object cut out, which are the bytes the
+     * sender signed. Only the JSON up to the end of the <tt>identification</tt>
+     * object is parsed.
+     *
+     * @param json
+     *            the signed object, as received.
+     * @param sharedSecret
+     *            a byte array representing the shared secret between the sender
+     *            and receiver.
+     * @return <tt>true</tt> if the verification completed successfully,
+     *         <tt>false</tt> otherwise.
+     * @throws IOException
+     *             should <tt>json</tt> not be valid JSON.
+     */
+    public static boolean verifyJSON(byte[] json, byte[] sharedSecret) throws IOException {
+        int[] span = new int[2];
+        String token = locateToken(json, span);
+        if (token == null) {
+            log.warn("This signable has not been signed yet; nothing to verify");
+            return false;
+        }
+
+        MessageDigest md5 = signatureDigest();
+        md5.update(json, 0, span[0]);
+        md5.update(json, span[1], json.length - span[1]);
+        String verification = token(md5, sharedSecret);
+        if (!token.equals(verification)) {
+            log.error("Signature verification value ["+verification+"] does not match supplied value ["+token+"]");
+            return false;
+        }
+        return true;
+    }
+
+    // finds identification.token, returning its value and setting span to
+    // the bytes of the member, with one adjoining comma
+    private static String locateToken(byte[] json, int[] span) throws IOException {
+        JsonParser parser = JSON.createJsonParser(json);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                if (!"identification".equals(parser.getCurrentName())) {
+                    parser.nextToken();
+                    parser.skipChildren();
+                    continue;
+                }
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    return null;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    // for byte input, the char offsets are byte offsets; a
+                    // field name's location may include its separator
+                    int start = (int)parser.getTokenLocation().getCharOffset();
+                    boolean isToken = "token".equals(parser.getCurrentName());
+                    parser.nextToken();
+                    if (!isToken) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+                        return null;
+                    }
+                    String token = parser.getText();
+                    // the current location is that of the closing quote
+                    int end = (int)parser.getCurrentLocation().getCharOffset() + 1;
+                    while (start < end && json[start] != '"') {
+                        start++;
+                    }
+                    if (start == end || json[end - 1] != '"') {
+                        throw new JsonParseException("unable to locate the token", parser.getCurrentLocation());
+                    }
+                    int before = start - 1;
+                    while (before >= 0 && isWhitespace(json[before])) {
+                        before--;
+                    }
+                    if (before >= 0 && json[before] == ',') {
+                        start = before;
+                    } else {
+                        int after = end;
+                        while (after < json.length && isWhitespace(json[after])) {
+                            after++;
+                        }
+                        if (after < json.length && json[after] == ',') {
+                            end = after + 1;
+                        }
+                    }
+                    span[0] = start;
+                    span[1] = end;
+                    return token;
+                }
+                return null;
+            }
+            return null;
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    /**
+     * An MD5 digest primed with the opening brace that the signed form of a
+     * {@link Signable} starts with; the object's JSON follows.
+     */
+    public static MessageDigest signatureDigest() {
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            md5.update((byte)'{');
+            return md5;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    /**
+     * Completes a digest started with {@link #signatureDigest()}, once the
+     * object's JSON has been written to it, and returns the token.
+     */
+    public static String token(MessageDigest digest, byte[] sharedSecret) {
+        digest.update((",\"sharedSecret\":" + new String(Hex.encodeHex(sharedSecret)) + "}").getBytes(UTF8));
+        return new String(Hex.encodeHex(digest.digest()));
+    }
+
     /**
      * Clear the token from the associated object, if one exists, and return the
      * value prior to clearing it out of the object. <tt>null</tt> is a valid
@@ -214,4 +402,31 @@ public abstract class Signable {
         }
     }
 
+
+    /**
+     * Records where the <tt>identification</tt> object of the document
+     * ends, which is where its <tt>token</tt> goes.
+     */
+    private static class TokenLocator extends JsonGeneratorDelegate {
+        private final ByteArrayOutputStream out;
+        int tokenOffset = -1;
+
+        TokenLocator(JsonGenerator generator, ByteArrayOutputStream out) {
+            super(generator);
+            this.out = out;
+        }
+
+        @Override
+        public void writeEndObject() throws IOException {
+            JsonStreamContext context = getOutputContext();
+            JsonStreamContext parent = context.getParent();
+            if (tokenOffset < 0 && parent != null && parent.inObject()
+                    && parent.getParent() != null && parent.getParent().inRoot()
+                    && "identification".equals(parent.getCurrentName())) {
+                flush();
+                tokenOffset = out.size();
+            }
+            super.writeEndObject();
+        }
+    }
 }
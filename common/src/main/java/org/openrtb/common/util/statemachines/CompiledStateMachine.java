@@ -0,0 +1,155 @@
+package org.openrtb.common.util.statemachines;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A state machine over enum states and events, compiled into a transition
+ * table.
+ *
+ * The transitions are frozen into an <tt>int[state][event]</tt> table when
+ * the machine is built, so following one is two array loads. The machine
+ * itself holds no per-transaction state and is safe to share between any
+ * number of threads and transactions; each transaction keeps its current
+ * state in a {@link Cursor}, a single int moved by compare-and-set. Neither
+ * {@link #exec(Cursor, Object)} nor {@link #fire(Cursor, Enum, Object)}
+ * takes a lock or allocates.
+ *
+ * When two threads race to move the same cursor (say a win notification and
+ * the offer timer), exactly one transition is taken and only the thread that
+ * took it runs the action of the state it entered.
+ */
+public final class CompiledStateMachine<S extends Enum<S> & FSMAction<E>, E extends Enum<E>> {
+	private static final int NONE = -1;
+
+	private final S[] states;
+	private final int[][] table;
+
+	private CompiledStateMachine(S[] states, int[][] table) {
+		this.states = states;
+		this.table = table;
+	}
+
+	public static <S extends Enum<S> & FSMAction<E>, E extends Enum<E>> Builder<S, E> builder(
+			Class<S> stateType, Class<E> eventType) {
+		return new Builder<S, E>(stateType, eventType);
+	}
+
+	/**
+	 * The state reached by following <tt>event</tt> from <tt>from</tt>, or
+	 * <tt>null</tt> if there is no such transition.
+	 */
+	public S next(S from, E event) {
+		int to = table[from.ordinal()][event.ordinal()];
+		return to == NONE ? null : states[to];
+	}
+
+	public S current(Cursor cursor) {
+		return states[cursor.state];
+	}
+
+	/**
+	 * Runs the action of the cursor's current state and follows the events
+	 * it returns until an action returns <tt>null</tt>, or until another
+	 * thread moves the cursor, which then carries on from there.
+	 * 
+	 * @return the state the cursor was left in.
+	 * @throws FSMException
+	 *             if an action returns an event that has no transition from
+	 *             its state.
+	 */
+	public S exec(Cursor cursor, Object context) throws FSMException {
+		int current = cursor.state;
+		while (true) {
+			E event = states[current].exec(context);
+			if (event == null) {
+				return states[current];
+			}
+			int to = table[current][event.ordinal()];
+			if (to == NONE) {
+				throw new FSMException("exec: no transition on " + event
+						+ " from " + states[current]);
+			}
+			if (!cursor.move(current, to)) {
+				return states[cursor.state];
+			}
+			current = to;
+		}
+	}
+
+	/**
+	 * Delivers an external event (a timer, a notification) to the cursor,
+	 * and executes from the state it leads to.
+	 * 
+	 * @return <tt>false</tt> if the event has no transition from the
+	 *         cursor's current state, e.g. because the transaction moved on
+	 *         in the meantime.
+	 */
+	public boolean fire(Cursor cursor, E event, Object context)
+			throws FSMException {
+		int e = event.ordinal();
+		while (true) {
+			int current = cursor.state;
+			int to = table[current][e];
+			if (to == NONE) {
+				return false;
+			}
+			if (cursor.move(current, to)) {
+				exec(cursor, context);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * The current state of one transaction. May be extended to carry the
+	 * transaction's own context.
+	 */
+	public static class Cursor {
+		private static final AtomicIntegerFieldUpdater<Cursor> STATE = AtomicIntegerFieldUpdater
+				.newUpdater(Cursor.class, "state");
+
+		private volatile int state;
+
+		public Cursor(Enum<?> start) {
+			this.state = start.ordinal();
+		}
+
+		final boolean move(int from, int to) {
+			return STATE.compareAndSet(this, from, to);
+		}
+	}
+
+	public static final class Builder<S extends Enum<S> & FSMAction<E>, E extends Enum<E>> {
+		private final S[] states;
+		private final int[][] table;
+
+		private Builder(Class<S> stateType, Class<E> eventType) {
+			this.states = stateType.getEnumConstants();
+			int events = eventType.getEnumConstants().length;
+			this.table = new int[states.length][events];
+			for (int[] row : table) {
+				Arrays.fill(row, NONE);
+			}
+		}
+
+		public Builder<S, E> addTransition(S from, E event, S to)
+				throws FSMException {
+			int existing = table[from.ordinal()][event.ordinal()];
+			if (existing != NONE && existing != to.ordinal()) {
+				throw new FSMException("addTransition: " + event + " from "
+						+ from + " already leads to " + states[existing]);
+			}
+			table[from.ordinal()][event.ordinal()] = to.ordinal();
+			return this;
+		}
+
+		public CompiledStateMachine<S, E> build() {
+			int[][] copy = new int[table.length][];
+			for (int i = 0; i < table.length; i++) {
+				copy[i] = table[i].clone();
+			}
+			return new CompiledStateMachine<S, E>(states, copy);
+		}
+	}
+}
@@ -0,0 +1,10 @@
+package org.openrtb.common.util.statemachines;
+
+/**
+ * The action of a state in a {@link CompiledStateMachine}: run on entering
+ * the state, it returns the event to follow next, or <tt>null</tt> to stop
+ * and wait for an external event.
+ */
+public interface FSMAction<E extends Enum<E>> {
+	public E exec(Object context) throws FSMException;
+}
@@ -0,0 +1,97 @@
+package org.openrtb.common.util.statemachines;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The states and transitions of a {@link FiniteStateMachine}, validated once
+ * and immutable afterwards.
+ *
+ * A definition holds no execution state and is safe to share between
+ * threads; each transaction runs it through its own
+ * {@link FiniteStateMachine}. Transitions are stored as private copies, so
+ * later changes to the {@link FSMTransition} objects used to build it do not
+ * affect the definition.
+ */
+public final class FSMDefinition<T extends FSMCallback> {
+	private final Set<T> states;
+	private final Map<FSMTransition<T, String>, T> transitions;
+
+	private FSMDefinition(Set<T> states,
+			Map<FSMTransition<T, String>, T> transitions) {
+		this.states = Collections.unmodifiableSet(states);
+		this.transitions = Collections.unmodifiableMap(transitions);
+	}
+
+	public static <T extends FSMCallback> Builder<T> builder() {
+		return new Builder<T>();
+	}
+
+	public boolean hasState(T state) {
+		return states.contains(state);
+	}
+
+	/**
+	 * The state reached by following <tt>event</tt> from <tt>from</tt>, or
+	 * <tt>null</tt> if there is no such transition.
+	 */
+	public T next(T from, String event) {
+		return transitions.get(new FSMTransition<T, String>(from, event));
+	}
+
+	/**
+	 * The state the transition leads to, or <tt>null</tt> if it is not part
+	 * of this definition.
+	 */
+	public T next(FSMTransition<T, String> transition) {
+		return transitions.get(transition);
+	}
+
+	public static final class Builder<T extends FSMCallback> {
+		private final Set<T> states = new HashSet<T>();
+		private final Map<FSMTransition<T, String>, T> transitions = new HashMap<FSMTransition<T, String>, T>();
+
+		private Builder() {
+		}
+
+		public Builder<T> addStates(T... newStates) {
+			for (T s : newStates) {
+				states.add(s);
+			}
+			return this;
+		}
+
+		/**
+		 * Adds a transition on <tt>event</tt> from <tt>from</tt> to
+		 * <tt>to</tt>.
+		 */
+		public Builder<T> addTransition(T from, String event, T to)
+				throws FSMException {
+			if (!states.contains(from))
+				throw new FSMException(
+						"addTransitions: fromState is not a known FSMState");
+			if (!states.contains(to))
+				throw new FSMException(
+						"addTransition: toState is not a known FSMState");
+			transitions.put(new FSMTransition<T, String>(from, event), to);
+			return this;
+		}
+
+		/**
+		 * Adds <tt>transition</tt> as leaving <tt>from</tt>, whatever state
+		 * the transition object currently carries.
+		 */
+		public Builder<T> addTransition(T from,
+				FSMTransition<T, String> transition, T to) throws FSMException {
+			return addTransition(from, transition.getEvent(), to);
+		}
+
+		public FSMDefinition<T> build() {
+			return new FSMDefinition<T>(new HashSet<T>(states),
+					new HashMap<FSMTransition<T, String>, T>(transitions));
+		}
+	}
+}
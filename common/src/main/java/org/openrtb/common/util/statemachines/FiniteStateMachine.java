@@ -1,104 +1,109 @@
 package org.openrtb.common.util.statemachines;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * One execution of a state machine: the current state of a single
+ * transaction over a shared, immutable {@link FSMDefinition}.
+ *
+ * Creating one is cheap, so a transaction should get its own instance over a
+ * definition built once up front. The <tt>addStates</tt>/
+ * <tt>addTransition</tt> methods remain for machines that are built in
+ * place; they collect a private definition, built when the machine next
+ * runs.
+ */
 public class FiniteStateMachine<T extends FSMCallback> {
-	private Map<T, FSMState<T>> states = new HashMap<T, FSMState<T>>();
-	private Map<FSMTransition<T, String>, T> transitions = new HashMap<FSMTransition<T, String>, T>();
-	private FSMState<T> initial, current;
-	private FSMTransition<T, String> running;
-	private final Logger logger = LoggerFactory.getLogger(FiniteStateMachine.class);
-	public FiniteStateMachine() {
-	}
+	private static final Logger logger = LoggerFactory.getLogger(FiniteStateMachine.class);
 
-	private synchronized FSMState<T> findState(T stateId) {
-		if (states.containsKey(stateId))
-			return states.get(stateId);
-		return null;
+	private FSMDefinition<T> definition;
+	private FSMDefinition.Builder<T> builder;
+	private final AtomicReference<T> current = new AtomicReference<T>();
+
+	public FiniteStateMachine(FSMDefinition<T> definition) {
+		this.definition = definition;
 	}
 
-	public synchronized T getCurrent() {
-		return this.current.state();
+	public FiniteStateMachine() {
+		this.builder = FSMDefinition.builder();
 	}
 
-	private synchronized FSMTransition<T, String> getRunning() {
-		return running;
+	public T getCurrent() {
+		return current.get();
 	}
 
-	private synchronized boolean isRunning() {
-		return (running != null);
+	public FSMDefinition<T> getDefinition() {
+		return definition();
 	}
 
 	public synchronized void addStates(T... newStates) {
-		for (T s : newStates) {
-			FSMState<T> state = new FSMState<T>(s);
-			states.put(s, state);
-		}
+		inPlaceBuilder().addStates(newStates);
 	}
 
 	public synchronized void addTransition(T from,
 			FSMTransition<T, String> transition, T to) throws FSMException {
-		FSMState<T> fromState = findState(from);
-		if (fromState == null)
-			throw new FSMException(
-					"addTransitions: fromState is not a known FSMState");
+		inPlaceBuilder().addTransition(from, transition, to);
+	}
 
-		FSMState<T> toState = findState(to);
-		if (toState == null)
-			throw new FSMException(
-					"addTransition: toState is not a known FSMState");
-		transition.setState(from);
-		FSMState<T> transitionState = findState(transition.getState());
-		if (transitionState == null)
+	private FSMDefinition.Builder<T> inPlaceBuilder() {
+		if (builder == null)
 			throw new FSMException(
-					"addTransition: transitionState is not a known FSMState");
-
-		transitions.put(transition, to);
+					"addTransition: state machine has a shared definition");
+		definition = null;
+		return builder;
 	}
 
-	public void exec(T start, Object context) throws FSMException {
-		this.start(start, context);
-		while (isRunning()) {
-			FSMTransition<T, String> t = getRunning(); // transition to follow
-
-			// make sure the current state was not modified by another thread
-			// while we were executing the call back above
-			if (current.state() != t.getState())
-				break;
-			followTransition(t, context);
-		}
+	private synchronized FSMDefinition<T> definition() {
+		if (definition == null)
+			definition = builder.build();
+		return definition;
 	}
 
 	@SuppressWarnings("unchecked")
-	private synchronized void start(T start, Object context) {
-		FSMState<T> startState = findState(start);
-		if (startState == null)
+	public void exec(T start, Object context) throws FSMException {
+		FSMDefinition<T> def = definition();
+		if (!def.hasState(start))
 			throw new FSMException("exec: Initial State not known");
-		this.initial = startState;
-		this.current = this.initial;
-		FSMCallback callback = (FSMCallback) current.state();
-		running = callback.exec(context);
+		current.set(start);
+		run(def, start, start.exec(context), context);
+	}
+
+	/**
+	 * Follows <tt>t</tt> from the current state, and any transitions the
+	 * callbacks return after it. If <tt>t</tt> names a state, it is only
+	 * followed from that state.
+	 * 
+	 * @return <tt>false</tt> if the machine is in another state than the one
+	 *         <tt>t</tt> names.
+	 */
+	public boolean followTransition(FSMTransition<T, String> t, Object context)
+			throws FSMException {
+		T state = current.get();
+		if (t.getState() != null && t.getState() != state)
+			return false;
+		run(definition(), state, t, context);
+		return true;
 	}
 
+	// follow transitions from state until a callback returns none, or until
+	// another thread moves the machine on, in which case it continues
 	@SuppressWarnings("unchecked")
-	public void followTransition(FSMTransition<T, String> t,
-			Object context) {
-		// follow the transition t from current state
-		Thread.currentThread().getId();
-    	logger.info("Thread id:" + Thread.currentThread().getId() + " Initial State :" + t.toString());
-		if (!transitions.containsKey(t))
-			throw new FSMException("followTransition: Illegal Transition");
-		current = findState(transitions.get(t));
-		logger.info("Thread id:" + Thread.currentThread().getId() + "Final State :" +current.state().toString() );
-    	
-		if (current == null)
-			throw new FSMException("followTransition: Illegal next State");
-			FSMCallback callback = (FSMCallback) current.state();
-			// set the resulting transition
-			running = callback.exec(context);
+	private void run(FSMDefinition<T> def, T state,
+			FSMTransition<T, String> running, Object context) {
+		while (running != null) {
+			T to = def.next(state, running.getEvent());
+			if (to == null)
+				throw new FSMException("followTransition: Illegal Transition");
+			if (!current.compareAndSet(state, to))
+				return;
+			if (logger.isDebugEnabled())
+				logger.debug("Thread id:" + Thread.currentThread().getId()
+						+ " " + state + " -> " + to + " on "
+						+ running.getEvent());
+			state = to;
+			running = to.exec(context);
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,308 @@
+package org.openrtb.common.util.statemachines;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A timeout scheduler for state machine timers (request expiry, offer expiry
+ * and the like) built on a hashed timing wheel.
+ *
+ * The wheel is an array of buckets, one per tick. A timeout is hashed into
+ * the bucket of the tick it expires on, together with the number of full
+ * turns of the wheel left before it is due; a single worker thread advances
+ * one bucket per tick and runs whatever has come due. Scheduling and
+ * cancelling are O(1) and never block, and one thread serves any number of
+ * outstanding timeouts, at the price of firing up to one tick late.
+ *
+ * Tasks run on the worker thread and must be short; anything slow should be
+ * handed off to another executor. Exceptions thrown by a task are logged and
+ * do not affect other timeouts.
+ */
+public class HashedWheelTimer {
+	private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+	public static final long DEFAULT_TICK_MS = 10;
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	private final long tickNanos;
+	private final Bucket[] wheel;
+	private final int mask;
+
+	// handed from the scheduling threads to the worker, which owns the wheel
+	private final Queue<WheelTimeout> registrations = new ConcurrentLinkedQueue<WheelTimeout>();
+	private final Queue<WheelTimeout> cancellations = new ConcurrentLinkedQueue<WheelTimeout>();
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private final Thread worker;
+	private final long startTime;
+	private volatile boolean running = true;
+
+	/**
+	 * A scheduled task that can be cancelled.
+	 */
+	public interface Timeout {
+		/**
+		 * Cancels the task if it has not run yet.
+		 * 
+		 * @return <tt>true</tt> if this call cancelled the task.
+		 */
+		boolean cancel();
+
+		boolean isCancelled();
+
+		boolean isExpired();
+	}
+
+	private static class Holder {
+		static final HashedWheelTimer SHARED = new HashedWheelTimer(
+				"fsm-timer", DEFAULT_TICK_MS, TimeUnit.MILLISECONDS,
+				DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * The process wide timer, started on first use.
+	 */
+	public static HashedWheelTimer getShared() {
+		return Holder.SHARED;
+	}
+
+	public HashedWheelTimer(final String name, long tick, TimeUnit unit,
+			int wheelSize) {
+		if (tick <= 0) {
+			throw new IllegalArgumentException("tick must be positive: " + tick);
+		}
+		if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+			throw new IllegalArgumentException("invalid wheel size: " + wheelSize);
+		}
+		this.tickNanos = unit.toNanos(tick);
+		// a power of two so the bucket index is a mask instead of a modulo
+		int size = Integer.highestOneBit(wheelSize - 1) << 1;
+		if (wheelSize == 1) {
+			size = 1;
+		}
+		this.wheel = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			wheel[i] = new Bucket();
+		}
+		this.mask = size - 1;
+
+		ThreadFactory factory = new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		this.startTime = System.nanoTime();
+		this.worker = factory.newThread(new Worker());
+		this.worker.start();
+	}
+
+	/**
+	 * Schedules <tt>task</tt> to run once, after <tt>delayMs</tt>
+	 * milliseconds.
+	 */
+	public Timeout newTimeout(Runnable task, long delayMs) {
+		if (task == null) {
+			throw new NullPointerException("task");
+		}
+		if (!running) {
+			throw new IllegalStateException("timer has been stopped");
+		}
+		long deadline = System.nanoTime() - startTime
+				+ TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs));
+		WheelTimeout timeout = new WheelTimeout(task, deadline);
+		pending.incrementAndGet();
+		registrations.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * The number of timeouts scheduled that have neither run nor been
+	 * cancelled, i.e. the depth of the timer queue.
+	 */
+	public int getPendingCount() {
+		return pending.get();
+	}
+
+	/**
+	 * Stops the worker thread. Timeouts that have not run yet never will.
+	 */
+	public void stop() {
+		running = false;
+		worker.interrupt();
+	}
+
+	private final class Worker implements Runnable {
+		private long tick;
+
+		public void run() {
+			while (running) {
+				long now = waitForNextTick();
+				if (now < 0) {
+					break;
+				}
+				removeCancelled();
+				transferRegistrations();
+				wheel[(int) (tick & mask)].expire();
+				tick++;
+			}
+		}
+
+		// sleeps until the end of the current tick, returns the time relative
+		// to startTime or -1 when the timer was stopped
+		private long waitForNextTick() {
+			long deadline = tickNanos * (tick + 1);
+			while (true) {
+				long now = System.nanoTime() - startTime;
+				long sleepMs = (deadline - now + 999999) / 1000000;
+				if (sleepMs <= 0) {
+					return now;
+				}
+				try {
+					Thread.sleep(sleepMs);
+				} catch (InterruptedException e) {
+					if (!running) {
+						return -1;
+					}
+				}
+			}
+		}
+
+		private void removeCancelled() {
+			WheelTimeout timeout;
+			while ((timeout = cancellations.poll()) != null) {
+				if (timeout.bucket != null) {
+					timeout.bucket.remove(timeout);
+				}
+			}
+		}
+
+		private void transferRegistrations() {
+			WheelTimeout timeout;
+			while ((timeout = registrations.poll()) != null) {
+				if (timeout.state.get() != WheelTimeout.PENDING) {
+					continue;
+				}
+				long ticks = timeout.deadline / tickNanos;
+				timeout.remainingRounds = (ticks - tick) / wheel.length;
+				// a deadline already in the past goes into the current bucket
+				long due = Math.max(ticks, tick);
+				wheel[(int) (due & mask)].add(timeout);
+			}
+		}
+	}
+
+	private final class WheelTimeout implements Timeout {
+		static final int PENDING = 0;
+		static final int CANCELLED = 1;
+		static final int EXPIRED = 2;
+
+		final Runnable task;
+		final long deadline;
+		final AtomicInteger state = new AtomicInteger(PENDING);
+
+		// owned by the worker thread
+		long remainingRounds;
+		Bucket bucket;
+		WheelTimeout next;
+		WheelTimeout prev;
+
+		WheelTimeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		public boolean cancel() {
+			if (!state.compareAndSet(PENDING, CANCELLED)) {
+				return false;
+			}
+			pending.decrementAndGet();
+			// the worker unlinks it from its bucket on the next tick
+			cancellations.add(this);
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return state.get() == CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state.get() == EXPIRED;
+		}
+
+		void expire() {
+			if (!state.compareAndSet(PENDING, EXPIRED)) {
+				return;
+			}
+			pending.decrementAndGet();
+			try {
+				task.run();
+			} catch (Throwable t) {
+				logger.warn("timeout task threw an exception", t);
+			}
+		}
+	}
+
+	// doubly linked so that a cancelled timeout can be unlinked in O(1);
+	// only ever touched by the worker thread
+	private static final class Bucket {
+		private WheelTimeout head;
+		private WheelTimeout tail;
+
+		void add(WheelTimeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		void remove(WheelTimeout timeout) {
+			if (timeout.bucket != this) {
+				return;
+			}
+			WheelTimeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if (next != null) {
+				next.prev = timeout.prev;
+			}
+			if (timeout == head) {
+				head = next;
+			}
+			if (timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+
+		void expire() {
+			WheelTimeout timeout = head;
+			while (timeout != null) {
+				WheelTimeout next = timeout.next;
+				if (timeout.remainingRounds <= 0) {
+					// buckets are visited once the tick a timeout hashed to
+					// has passed, so its deadline is always <= now here
+					remove(timeout);
+					timeout.expire();
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.common.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openrtb.common.model.Advertiser;
+import org.openrtb.common.model.AdvertiserBlocklistRequest;
+import org.openrtb.common.model.Identification;
+
+/**
+ * Compares {@link AdvertiserBlocklistRequestTranslator}, with its shared
+ * reader and writer, against the <tt>ObjectMapper</tt> per call and
+ * <tt>String</tt> based translation it replaced.
+ *
+ * Not run as part of the build; start it with
+ * <tt>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openrtb.common.json.AdvertiserBlocklistRequestTranslatorBenchmark</tt>
+ * or from the IDE.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdvertiserBlocklistRequestTranslatorBenchmark {
+
+    private final AdvertiserBlocklistRequestTranslator translator = new AdvertiserBlocklistRequestTranslator();
+
+    private AdvertiserBlocklistRequest request;
+    private String json;
+    private byte[] bytes;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() throws Exception {
+        Identification identification = new Identification("The_DSP", System.currentTimeMillis());
+        identification.setToken("44ab444914088e855ad1f948ec4a1fc7");
+        request = new AdvertiserBlocklistRequest(identification);
+        for (int i = 0; i < 50; i++) {
+            request.addAdvertiser(new Advertiser("advertiser-" + i + ".com", "Advertiser " + i));
+        }
+        json = translator.toJSON(request);
+        bytes = json.getBytes("UTF-8");
+        out = new ByteArrayOutputStream(4096);
+    }
+
+    @Benchmark
+    public AdvertiserBlocklistRequest readMapperPerCall() throws Exception {
+        return new ObjectMapper().readValue(new StringReader(json), AdvertiserBlocklistRequest.class);
+    }
+
+    @Benchmark
+    public AdvertiserBlocklistRequest readString() throws Exception {
+        return translator.fromJSON(json);
+    }
+
+    @Benchmark
+    public AdvertiserBlocklistRequest readBytes() throws Exception {
+        return translator.fromJSON(bytes);
+    }
+
+    @Benchmark
+    public int writeMapperPerCall() throws Exception {
+        StringWriter writer = new StringWriter();
+        new ObjectMapper().writeValue(writer, request);
+        out.reset();
+        out.write(writer.toString().getBytes("UTF-8"));
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeString() throws Exception {
+        out.reset();
+        out.write(translator.toJSON(request).getBytes("UTF-8"));
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeBytes() throws Exception {
+        out.reset();
+        translator.toJSON(out, request);
+        return out.size();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(AdvertiserBlocklistRequestTranslatorBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
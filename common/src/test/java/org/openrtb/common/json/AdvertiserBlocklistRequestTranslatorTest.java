@@ -35,6 +35,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
@@ -96,6 +97,17 @@ public class AdvertiserBlocklistRequestTranslatorTest {
         validateObject(REQUEST, test.fromJSON(PRETTY_VALUE));
     }
 
+    @Test
+    public void serializeObjectToBytes() throws IOException {
+        assertEquals(EXPECTED_VALUE, new String(test.toJSONBytes(REQUEST), "UTF-8"));
+    }
+
+    @Test
+    public void deserializeObjectFromBytes() throws IOException {
+        validateObject(REQUEST, test.fromJSON(PRETTY_VALUE.getBytes("UTF-8")));
+        validateObject(REQUEST, test.fromJSON(new ByteArrayInputStream(PRETTY_VALUE.getBytes("UTF-8"))));
+    }
+
     @Test
     public void serializeEmptyObject() throws IOException {
         assertEquals("{}", test.toJSON(new TestRequest()));
@@ -115,6 +115,24 @@ public class AdvertiserTranslatorTest {
         validateObject(new Advertiser(), test.fromJSON("{}"));
     }
 
+    @Test
+    public void serializeRemovedBlocklist() throws IOException {
+        Advertiser changes = new Advertiser("mycarcompany.com", null, 1234L);
+        changes.addBlocklist(BLOCK1);
+        changes.addRemovedBlocklist(BLOCK2);
+
+        String json = test.toJSON(changes);
+        assertEquals("{\"landingPageTLD\":\"mycarcompany.com\",\"sinceThisTimestamp\":1234," +
+                     "\"blocklist\":[{\"publisherID\":\"h3lLo\",\"publisherName\":\"Welcome_Publisher\"," +
+                     "\"siteID\":\"h3lLo-S1T3\",\"siteName\":\"Home_Page\"}]," +
+                     "\"removedBlocklist\":[{\"publisherID\":\"g00d8ye\",\"publisherName\":\"Adios_Publisher\"}]}",
+                     json);
+
+        Advertiser parsed = test.fromJSON(json);
+        assertEquals(1, parsed.getRemovedBlocklist().size());
+        BlocklistTranslatorTest.validateObject(BLOCK2, parsed.getRemovedBlocklist().get(0));
+    }
+
     private static Map<String, Blocklist> convertListToMap(List<Blocklist> list) {
         Map<String, Blocklist> retval = new HashMap<String, Blocklist>();
 
@@ -31,11 +31,14 @@
  */
 package org.openrtb.common.model;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.codehaus.jackson.annotate.JsonProperty;
 import org.codehaus.jackson.annotate.JsonPropertyOrder;
 import org.codehaus.jackson.map.annotate.JsonSerialize;
@@ -118,6 +121,89 @@ public class SignableTest {
                      MD5_VALIDATION, test.clearToken());
     }
 
+    @Test
+    public void testSignToJSON_works() throws Exception {
+        SignableObject test = new SignableObject(new Identification(IDENT.getOrganization(), IDENT.getTimestamp()), SOME_VALUE);
+        byte[] json = test.signToJSON(SECRET, translator);
+
+        assertEquals("object signing doesn't match expected value",
+                     MD5_VALIDATION, test.getIdentification().getToken());
+        assertArrayEquals("signed JSON should match the translator's",
+                          translator.toJSON(test).getBytes("UTF-8"), json);
+    }
+
+    @Test
+    public void testSignToJSON_emptyIdentification() throws Exception {
+        SignableObject test = new SignableObject(new Identification(), SOME_VALUE);
+        byte[] json = test.signToJSON(SECRET, translator);
+
+        assertArrayEquals("signed JSON should match the translator's",
+                          translator.toJSON(test).getBytes("UTF-8"), json);
+        assertTrue("message should have passed validation",
+                   test.verify(SECRET, translator));
+    }
+
+    @Test
+    public void testSign_matchesStringDigest() throws Exception {
+        // multi-byte characters, including a surrogate pair, and escapes
+        String value = "caf\u00e9 \ud83d\ude00 \"quoted\" }{ \t";
+        SignableObject test = new SignableObject(new Identification("\u00fcber } org", 5L), value);
+        test.sign(SECRET, translator);
+        String token = test.clearToken();
+
+        String expected = DigestUtils.md5Hex("{" + translator.toJSON(test) + ",\"sharedSecret\":"
+                                             + new String(Hex.encodeHex(SECRET)) + "}");
+        assertEquals("streamed digest should match the digest of the JSON string",
+                     expected, token);
+
+        byte[] json = test.signToJSON(SECRET, translator);
+        assertEquals(token, test.getIdentification().getToken());
+        assertArrayEquals("signed JSON should match the translator's",
+                          translator.toJSON(test).getBytes("UTF-8"), json);
+    }
+
+    @Test
+    public void testVerifyJSON_valid() throws Exception {
+        SignableObject test = new SignableObject(new Identification(IDENT.getOrganization(), IDENT.getTimestamp()), SOME_VALUE);
+        byte[] json = test.signToJSON(SECRET, translator);
+
+        assertTrue("message should have passed validation",
+                   Signable.verifyJSON(json, SECRET));
+        assertFalse("message should NOT have passed validation with another secret",
+                    Signable.verifyJSON(json, "another secret".getBytes()));
+    }
+
+    @Test
+    public void testVerifyJSON_invalid() throws Exception {
+        SignableObject test = new SignableObject(new Identification(IDENT.getOrganization(), IDENT.getTimestamp()), SOME_VALUE);
+        String json = new String(test.signToJSON(SECRET, translator), "UTF-8");
+
+        assertFalse("message should NOT have passed validation",
+                    Signable.verifyJSON(json.replace(SOME_VALUE, SOME_VALUE+" too").getBytes("UTF-8"), SECRET));
+    }
+
+    @Test
+    public void testVerifyJSON_noToken() throws Exception {
+        byte[] json = translator.toJSON(new SignableObject(new Identification(IDENT.getOrganization()), SOME_VALUE))
+                                .getBytes("UTF-8");
+        assertFalse("message should have failed validation",
+                    Signable.verifyJSON(json, SECRET));
+    }
+
+    @Test
+    public void testVerifyJSON_anyLayout() throws Exception {
+        // the token is cut out wherever it is, with one of its commas
+        String signed = "{\"someValue\":{\"token\":\"not this one\"}," +
+                        "\"identification\":{\"organization\":\"org\",\"timestamp\":1}}";
+        String token = DigestUtils.md5Hex("{" + signed + ",\"sharedSecret\":" + new String(Hex.encodeHex(SECRET)) + "}");
+
+        String last = signed.replace(",\"timestamp\":1}", ",\"timestamp\":1, \"token\" : \"" + token + "\"}");
+        assertTrue("token last should pass validation", Signable.verifyJSON(last.getBytes("UTF-8"), SECRET));
+
+        String first = signed.replace("{\"organization\"", "{\"token\":\"" + token + "\",\"organization\"");
+        assertTrue("token first should pass validation", Signable.verifyJSON(first.getBytes("UTF-8"), SECRET));
+    }
+
     private static class SignableTranslator extends AbstractJsonTranslator<SignableObject>{
         public SignableTranslator() { super(SignableTranslator.class); }
     }
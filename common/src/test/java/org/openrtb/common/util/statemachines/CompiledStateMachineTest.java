@@ -0,0 +1,129 @@
+package org.openrtb.common.util.statemachines;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openrtb.common.util.statemachines.CompiledStateMachine.Cursor;
+
+public class CompiledStateMachineTest {
+
+	enum Events {
+		START, DONE, CANCEL, FINISH
+	}
+
+	// counts the actions run against it
+	static class Counter {
+		final AtomicInteger finished = new AtomicInteger();
+		final AtomicInteger cancelled = new AtomicInteger();
+	}
+
+	enum States implements FSMAction<Events> {
+		IDLE {
+			public Events exec(Object context) {
+				return Events.START;
+			}
+		},
+		WORKING {
+			public Events exec(Object context) {
+				return Events.DONE;
+			}
+		},
+		WAITING {
+			public Events exec(Object context) {
+				return null;
+			}
+		},
+		FINISHED {
+			public Events exec(Object context) {
+				((Counter) context).finished.incrementAndGet();
+				return null;
+			}
+		},
+		CANCELLED {
+			public Events exec(Object context) {
+				((Counter) context).cancelled.incrementAndGet();
+				return null;
+			}
+		}
+	}
+
+	private static final CompiledStateMachine<States, Events> FSM = CompiledStateMachine
+			.builder(States.class, Events.class)
+			.addTransition(States.IDLE, Events.START, States.WORKING)
+			.addTransition(States.WORKING, Events.DONE, States.WAITING)
+			.addTransition(States.WORKING, Events.CANCEL, States.CANCELLED)
+			.addTransition(States.WAITING, Events.FINISH, States.FINISHED)
+			.addTransition(States.WAITING, Events.CANCEL, States.CANCELLED)
+			.build();
+
+	@Test
+	public void transitionTable() {
+		assertEquals(States.WORKING, FSM.next(States.IDLE, Events.START));
+		assertEquals(States.CANCELLED, FSM.next(States.WAITING, Events.CANCEL));
+		assertNull(FSM.next(States.IDLE, Events.FINISH));
+		assertNull(FSM.next(States.FINISHED, Events.START));
+	}
+
+	@Test
+	public void execFollowsActionsUntilWaiting() {
+		Cursor cursor = new Cursor(States.IDLE);
+		assertEquals(States.WAITING, FSM.exec(cursor, new Counter()));
+		assertEquals(States.WAITING, FSM.current(cursor));
+	}
+
+	@Test
+	public void fireExternalEvent() {
+		Counter counter = new Counter();
+		Cursor cursor = new Cursor(States.IDLE);
+		FSM.exec(cursor, counter);
+
+		assertFalse("no START from WAITING", FSM.fire(cursor, Events.START, counter));
+		assertTrue(FSM.fire(cursor, Events.FINISH, counter));
+		assertEquals(States.FINISHED, FSM.current(cursor));
+		assertEquals(1, counter.finished.get());
+		assertFalse("FINISHED is final", FSM.fire(cursor, Events.CANCEL, counter));
+	}
+
+	@Test(expected = FSMException.class)
+	public void conflictingTransition() {
+		CompiledStateMachine.builder(States.class, Events.class)
+				.addTransition(States.IDLE, Events.START, States.WORKING)
+				.addTransition(States.IDLE, Events.START, States.WAITING);
+	}
+
+	@Test
+	public void racingEventsTakeOneTransition() throws Exception {
+		final int rounds = 2000;
+		for (int i = 0; i < rounds; i++) {
+			final Counter counter = new Counter();
+			final Cursor cursor = new Cursor(States.WAITING);
+			final CountDownLatch go = new CountDownLatch(1);
+			Thread canceller = new Thread() {
+				public void run() {
+					await(go);
+					FSM.fire(cursor, Events.CANCEL, counter);
+				}
+			};
+			canceller.start();
+			go.countDown();
+			FSM.fire(cursor, Events.FINISH, counter);
+			canceller.join();
+			assertEquals("exactly one of the events must win", 1,
+					counter.finished.get() + counter.cancelled.get());
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package org.openrtb.common.util.statemachines;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FiniteStateMachineTest {
+
+	private static final FSMTransition<States, String> EV_OPEN = new FSMTransition<States, String>("Open");
+	private static final FSMTransition<States, String> EV_CLOSE = new FSMTransition<States, String>("Close");
+
+	enum States implements FSMCallback {
+		CLOSED {
+			@SuppressWarnings("rawtypes")
+			public FSMTransition exec(Object context) {
+				return EV_OPEN;
+			}
+		},
+		OPEN {
+			@SuppressWarnings("rawtypes")
+			public FSMTransition exec(Object context) {
+				return null;
+			}
+		},
+		DONE {
+			@SuppressWarnings("rawtypes")
+			public FSMTransition exec(Object context) {
+				return null;
+			}
+		}
+	}
+
+	private static final FSMDefinition<States> DEFINITION = FSMDefinition
+			.<States> builder()
+			.addStates(States.values())
+			.addTransition(States.CLOSED, EV_OPEN, States.OPEN)
+			.addTransition(States.OPEN, EV_CLOSE, States.DONE)
+			.build();
+
+	@Test
+	public void definitionLookup() {
+		assertEquals(States.OPEN, DEFINITION.next(States.CLOSED, "Open"));
+		assertEquals(States.DONE, DEFINITION.next(States.OPEN, "Close"));
+		assertNull(DEFINITION.next(States.CLOSED, "Close"));
+	}
+
+	@Test
+	public void machinesShareOneDefinition() {
+		FiniteStateMachine<States> first = new FiniteStateMachine<States>(DEFINITION);
+		FiniteStateMachine<States> second = new FiniteStateMachine<States>(DEFINITION);
+		first.exec(States.CLOSED, null);
+		assertEquals(States.OPEN, first.getCurrent());
+
+		assertTrue(first.followTransition(EV_CLOSE, null));
+		assertEquals(States.DONE, first.getCurrent());
+		assertNull("the other execution has not started", second.getCurrent());
+
+		second.exec(States.CLOSED, null);
+		assertEquals(States.OPEN, second.getCurrent());
+	}
+
+	@Test
+	public void transitionFromAnotherState() {
+		FiniteStateMachine<States> fsm = new FiniteStateMachine<States>(DEFINITION);
+		fsm.exec(States.CLOSED, null);
+		assertFalse(fsm.followTransition(
+				new FSMTransition<States, String>(States.CLOSED, "Open"), null));
+		assertEquals(States.OPEN, fsm.getCurrent());
+	}
+
+	@Test(expected = FSMException.class)
+	public void illegalTransition() {
+		FiniteStateMachine<States> fsm = new FiniteStateMachine<States>(DEFINITION);
+		fsm.exec(States.CLOSED, null);
+		fsm.followTransition(EV_OPEN, null);
+	}
+
+	@Test(expected = FSMException.class)
+	public void sharedDefinitionCannotChange() {
+		new FiniteStateMachine<States>(DEFINITION).addStates(States.DONE);
+	}
+
+	@Test
+	public void definedInPlace() {
+		FiniteStateMachine<States> fsm = new FiniteStateMachine<States>();
+		fsm.addStates(States.values());
+		fsm.addTransition(States.CLOSED, EV_OPEN, States.OPEN);
+		fsm.exec(States.CLOSED, null);
+		assertEquals(States.OPEN, fsm.getCurrent());
+	}
+}
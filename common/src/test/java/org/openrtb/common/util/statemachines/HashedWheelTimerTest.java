@@ -0,0 +1,105 @@
+package org.openrtb.common.util.statemachines;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrtb.common.util.statemachines.HashedWheelTimer.Timeout;
+
+public class HashedWheelTimerTest {
+
+	private HashedWheelTimer timer;
+
+	@Before
+	public void setUp() {
+		// a small wheel so that timeouts span several rounds
+		timer = new HashedWheelTimer("test-timer", 5, TimeUnit.MILLISECONDS, 8);
+	}
+
+	@After
+	public void tearDown() {
+		timer.stop();
+	}
+
+	@Test
+	public void timeoutFiresAfterDelay() throws Exception {
+		final CountDownLatch fired = new CountDownLatch(1);
+		long start = System.nanoTime();
+		Timeout timeout = timer.newTimeout(new Runnable() {
+			public void run() {
+				fired.countDown();
+			}
+		}, 100);
+
+		assertTrue("timeout should fire", fired.await(2, TimeUnit.SECONDS));
+		long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue("timeout fired early: " + elapsedMs + "ms", elapsedMs >= 100);
+		assertTrue(timeout.isExpired());
+		assertEquals(0, timer.getPendingCount());
+	}
+
+	@Test
+	public void cancelledTimeoutDoesNotFire() throws Exception {
+		final AtomicInteger fired = new AtomicInteger();
+		Runnable task = new Runnable() {
+			public void run() {
+				fired.incrementAndGet();
+			}
+		};
+		Timeout cancelled = timer.newTimeout(task, 50);
+		Timeout kept = timer.newTimeout(task, 50);
+		assertEquals("both timeouts should be pending", 2, timer.getPendingCount());
+
+		assertTrue("first cancel should succeed", cancelled.cancel());
+		assertFalse("second cancel should be a no-op", cancelled.cancel());
+		assertEquals(1, timer.getPendingCount());
+
+		Thread.sleep(200);
+		assertEquals("only the kept timeout should fire", 1, fired.get());
+		assertTrue(cancelled.isCancelled());
+		assertTrue(kept.isExpired());
+		assertFalse("an expired timeout cannot be cancelled", kept.cancel());
+	}
+
+	@Test
+	public void manyTimeouts() throws Exception {
+		int count = 100000;
+		final CountDownLatch fired = new CountDownLatch(count / 2);
+		Runnable task = new Runnable() {
+			public void run() {
+				fired.countDown();
+			}
+		};
+		for (int i = 0; i < count; i++) {
+			Timeout timeout = timer.newTimeout(task, i % 100);
+			if (i % 2 == 1) {
+				timeout.cancel();
+			}
+		}
+		assertTrue("all remaining timeouts should fire", fired.await(5, TimeUnit.SECONDS));
+		assertEquals(0, timer.getPendingCount());
+	}
+
+	@Test
+	public void exceptionDoesNotStopTimer() throws Exception {
+		final CountDownLatch fired = new CountDownLatch(1);
+		timer.newTimeout(new Runnable() {
+			public void run() {
+				throw new FSMException("boom");
+			}
+		}, 10);
+		timer.newTimeout(new Runnable() {
+			public void run() {
+				fired.countDown();
+			}
+		}, 30);
+		assertTrue("later timeout should still fire", fired.await(2, TimeUnit.SECONDS));
+	}
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.client;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.util.ByteBufferInputStream;
+import org.openrtb.dsp.intf.model.RTBAdvertiser;
+import org.openrtb.dsp.intf.model.RTBExchange;
+
+/**
+ * The DSP configuration in Avro binary form, for {@link AvroFileBackedDAO}:
+ * the same data as <tt>dspConf.json</tt>, compiled once by
+ * {@link #convert(File, File)} (or {@link #main(String[])}) so that loading
+ * it is a single pass over the bytes, with no text parsing and no
+ * databinding.
+ *
+ * A snapshot file is the 4 bytes <tt>ORCS</tt> followed by one
+ * <tt>DemandSideConfigSnapshot</tt> record (see {@link #SCHEMA}) in Avro
+ * binary encoding. Records are written and read field by field, straight
+ * from and into the <tt>RTBExchange</tt> and <tt>RTBAdvertiser</tt> objects
+ * the DAO serves, rather than through generated classes.
+ */
+public final class AvroConfigSnapshot {
+
+	public static final Schema SCHEMA;
+	static {
+		InputStream in = AvroConfigSnapshot.class.getResourceAsStream("DemandSideConfigSnapshot.avsc");
+		try {
+			SCHEMA = new Schema.Parser().parse(in);
+		} catch (IOException e) {
+			throw new ExceptionInInitializerError(e);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	static final byte[] MAGIC = { 'O', 'R', 'C', 'S' };
+
+	private AvroConfigSnapshot() {
+	}
+
+	/**
+	 * Compiles the JSON configuration file <tt>json</tt> into the snapshot
+	 * file <tt>avro</tt>, replacing it once complete. The configuration is
+	 * checked as the DAO checks it when loading, so that a file the DSP would
+	 * reject is never written.
+	 */
+	public static void convert(File json, File avro) throws Exception {
+		JsonFileBackedDAO.DSPProps props = new JsonFileBackedDAO().readProps(json);
+		JsonFileBackedDAO.validate(props);
+		write(props, avro);
+	}
+
+	/**
+	 * Usage: <tt>AvroConfigSnapshot dspConf.json dspConf.avro</tt>
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			System.err.println("usage: " + AvroConfigSnapshot.class.getName() + " <json file> <snapshot file>");
+			System.exit(1);
+		}
+		long start = System.currentTimeMillis();
+		convert(new File(args[0]), new File(args[1]));
+		System.out.println("wrote " + args[1] + " in " + (System.currentTimeMillis() - start) + "ms");
+	}
+
+	// written next to the target and renamed over it, so that a DAO
+	// reloading the file never reads half of it
+	static void write(JsonFileBackedDAO.DSPProps props, File file) throws IOException {
+		File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		boolean renamed = false;
+		try {
+			FileOutputStream fos = new FileOutputStream(tmp);
+			try {
+				BufferedOutputStream out = new BufferedOutputStream(fos, 64 * 1024);
+				out.write(MAGIC);
+				BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+				write(props, encoder);
+				encoder.flush();
+				out.flush();
+				fos.getFD().sync();
+			} finally {
+				fos.close();
+			}
+			renamed = tmp.renameTo(file) || (file.delete() && tmp.renameTo(file));
+			if (!renamed) {
+				throw new IOException("unable to replace " + file + " with " + tmp);
+			}
+		} finally {
+			if (!renamed) {
+				tmp.delete();
+			}
+		}
+	}
+
+	static void write(JsonFileBackedDAO.DSPProps props, Encoder out) throws IOException {
+		out.writeInt(props.dspServerPort);
+		out.writeInt(props.defaultReqTimeout);
+		out.writeInt(props.defaultOfferTimeout);
+
+		List<RTBExchange> exchanges = props.exchanges == null
+				? Collections.<RTBExchange> emptyList() : props.exchanges;
+		out.writeArrayStart();
+		out.setItemCount(exchanges.size());
+		for (RTBExchange ex : exchanges) {
+			out.startItem();
+			out.writeString(ex.getOrgName());
+			writeOptional(out, ex.getRtbServiceUrl());
+			writeOptional(out, ex.getRtbContentType());
+			writeOptional(out, ex.getRequestTimeout());
+			writeOptional(out, ex.getOfferTimeout());
+		}
+		out.writeArrayEnd();
+
+		List<RTBAdvertiser> advertisers = props.advertisers == null
+				? Collections.<RTBAdvertiser> emptyList() : props.advertisers;
+		out.writeArrayStart();
+		out.setItemCount(advertisers.size());
+		for (RTBAdvertiser adv : advertisers) {
+			out.startItem();
+			out.writeString(adv.getLandingPage());
+			writeOptional(out, adv.getName());
+			writeOptional(out, adv.getNurl());
+
+			List<String> categories = adv.getCategories() == null
+					? Collections.<String> emptyList() : adv.getCategories();
+			out.writeArrayStart();
+			out.setItemCount(categories.size());
+			for (String category : categories) {
+				out.startItem();
+				out.writeString(category);
+			}
+			out.writeArrayEnd();
+
+			// seats without an id are dropped, a map of strings cannot
+			// hold them
+			Map<String, String> seats = new HashMap<String, String>();
+			if (adv.getSeats() != null) {
+				for (Map.Entry<String, String> seat : adv.getSeats().entrySet()) {
+					if (seat.getKey() != null && seat.getValue() != null) {
+						seats.put(seat.getKey(), seat.getValue());
+					}
+				}
+			}
+			out.writeMapStart();
+			out.setItemCount(seats.size());
+			for (Map.Entry<String, String> seat : seats.entrySet()) {
+				out.startItem();
+				out.writeString(seat.getKey());
+				out.writeString(seat.getValue());
+			}
+			out.writeMapEnd();
+		}
+		out.writeArrayEnd();
+	}
+
+	/**
+	 * Reads a snapshot file into memory first.
+	 */
+	static JsonFileBackedDAO.DSPProps read(File file) throws IOException {
+		long length = file.length();
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException(file + " is too large");
+		}
+		byte[] bytes = new byte[(int) length];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int read = 0;
+			while (read < bytes.length) {
+				int n = in.read(bytes, read, bytes.length - read);
+				if (n < 0) {
+					throw new IOException(file + " was truncated while read");
+				}
+				read += n;
+			}
+		} finally {
+			in.close();
+		}
+		checkMagic(file, bytes);
+		BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(bytes, MAGIC.length,
+				bytes.length - MAGIC.length, null);
+		JsonFileBackedDAO.DSPProps props;
+		try {
+			props = read(decoder, bytes.length - MAGIC.length);
+		} catch (RuntimeException e) {
+			throw corrupt(file, e);
+		}
+		checkEnd(file, decoder.isEnd());
+		return props;
+	}
+
+	/**
+	 * Reads a snapshot file through a memory mapping of it, leaving the
+	 * caching of its pages to the operating system.
+	 */
+	static JsonFileBackedDAO.DSPProps map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		ByteBuffer buffer;
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to be mapped");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+		byte[] head = new byte[Math.min(MAGIC.length, buffer.remaining())];
+		buffer.get(head);
+		checkMagic(file, head);
+		// the direct decoder reads no more of the buffer than it decodes
+		InputStream in = new ByteBufferInputStream(Collections.singletonList(buffer));
+		JsonFileBackedDAO.DSPProps props;
+		try {
+			props = read(DecoderFactory.get().directBinaryDecoder(in, null), buffer.remaining());
+		} catch (RuntimeException e) {
+			throw corrupt(file, e);
+		}
+		checkEnd(file, !buffer.hasRemaining());
+		return props;
+	}
+
+	/**
+	 * Reads a snapshot record of at most <tt>length</tt> bytes; counts that
+	 * could not fit in them are rejected before anything is sized from them.
+	 */
+	static JsonFileBackedDAO.DSPProps read(Decoder in, long length) throws IOException {
+		JsonFileBackedDAO.DSPProps props = new JsonFileBackedDAO.DSPProps();
+		props.dspServerPort = in.readInt();
+		props.defaultReqTimeout = in.readInt();
+		props.defaultOfferTimeout = in.readInt();
+
+		long n = count(in.readArrayStart(), length);
+		List<RTBExchange> exchanges = new ArrayList<RTBExchange>((int) n);
+		for (; n != 0; n = count(in.arrayNext(), length)) {
+			for (long i = 0; i < n; i++) {
+				exchanges.add(new RTBExchange(in.readString(), readOptionalString(in),
+						readOptionalString(in), readOptionalLong(in), readOptionalLong(in)));
+			}
+		}
+		props.exchanges = exchanges;
+
+		n = count(in.readArrayStart(), length);
+		List<RTBAdvertiser> advertisers = new ArrayList<RTBAdvertiser>((int) n);
+		for (; n != 0; n = count(in.arrayNext(), length)) {
+			for (long i = 0; i < n; i++) {
+				String landingPage = in.readString();
+				String name = readOptionalString(in);
+				String nurl = readOptionalString(in);
+
+				long c = count(in.readArrayStart(), length);
+				List<String> categories = new ArrayList<String>((int) c);
+				for (; c != 0; c = count(in.arrayNext(), length)) {
+					for (long j = 0; j < c; j++) {
+						categories.add(in.readString());
+					}
+				}
+				long s = count(in.readMapStart(), length);
+				Map<String, String> seats = new HashMap<String, String>();
+				for (; s != 0; s = count(in.mapNext(), length)) {
+					for (long j = 0; j < s; j++) {
+						seats.put(in.readString(), in.readString());
+					}
+				}
+				advertisers.add(new RTBAdvertiser(landingPage, name, nurl, categories, seats));
+			}
+		}
+		props.advertisers = advertisers;
+		return props;
+	}
+
+	// a block count read from the file; every item takes at least a byte
+	private static long count(long n, long length) throws IOException {
+		if (n < 0 || n > length) {
+			throw new IOException("corrupt count of " + n + " items in a snapshot of " + length + " bytes");
+		}
+		return n;
+	}
+
+	private static IOException corrupt(File file, RuntimeException e) {
+		return new IOException(file + " is a corrupt configuration snapshot: " + e, e);
+	}
+
+	// head: the first bytes of the file, at least MAGIC.length if it has them
+	private static void checkMagic(File file, byte[] head) throws IOException {
+		boolean matches = head.length >= MAGIC.length;
+		for (int i = 0; matches && i < MAGIC.length; i++) {
+			matches = head[i] == MAGIC[i];
+		}
+		if (!matches) {
+			throw new IOException(file + " is not a configuration snapshot");
+		}
+	}
+
+	private static void checkEnd(File file, boolean end) throws IOException {
+		if (!end) {
+			throw new IOException(file + " has data after the configuration snapshot");
+		}
+	}
+
+	private static void writeOptional(Encoder out, String value) throws IOException {
+		if (value == null) {
+			out.writeIndex(0);
+			out.writeNull();
+		} else {
+			out.writeIndex(1);
+			out.writeString(value);
+		}
+	}
+
+	private static void writeOptional(Encoder out, Long value) throws IOException {
+		if (value == null) {
+			out.writeIndex(0);
+			out.writeNull();
+		} else {
+			out.writeIndex(1);
+			out.writeLong(value.longValue());
+		}
+	}
+
+	private static String readOptionalString(Decoder in) throws IOException {
+		if (in.readIndex() == 0) {
+			in.readNull();
+			return null;
+		}
+		return in.readString();
+	}
+
+	private static Long readOptionalLong(Decoder in) throws IOException {
+		if (in.readIndex() == 0) {
+			in.readNull();
+			return null;
+		}
+		return in.readLong();
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.client;
+
+import java.io.File;
+
+/**
+ * A {@link JsonFileBackedDAO} that loads the configuration from an Avro
+ * binary snapshot (see {@link AvroConfigSnapshot}) compiled from the JSON
+ * file, rather than from the JSON file itself. Loading is a single decoding
+ * pass with no databinding, which is what dominates the startup of a DSP
+ * with a large advertiser catalog.
+ *
+ * The snapshot is read into memory before decoding, or decoded straight
+ * from a memory mapping of the file when <tt>mapped</tt> is set. Validation,
+ * publication and reloading are those of {@link JsonFileBackedDAO}.
+ */
+public class AvroFileBackedDAO extends JsonFileBackedDAO {
+
+	private volatile boolean mapped;
+
+	public AvroFileBackedDAO() {
+		super();
+	}
+
+	public AvroFileBackedDAO(boolean mapped) {
+		this.mapped = mapped;
+	}
+
+	public boolean isMapped() {
+		return mapped;
+	}
+
+	public void setMapped(boolean mapped) {
+		this.mapped = mapped;
+	}
+
+	@Override
+	String defaultFileName() {
+		return "dspConf.avro";
+	}
+
+	@Override
+	DSPProps readProps(File file) throws Exception {
+		return mapped ? AvroConfigSnapshot.map(file) : AvroConfigSnapshot.read(file);
+	}
+}
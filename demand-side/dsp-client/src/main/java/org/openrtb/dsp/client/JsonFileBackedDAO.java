@@ -32,8 +32,12 @@
 package org.openrtb.dsp.client;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 
 import org.codehaus.jackson.annotate.JsonProperty;
@@ -43,7 +47,9 @@ import org.codehaus.jackson.map.annotate.JsonSerialize;
 import org.codehaus.jackson.map.annotate.JsonSerialize.Inclusion;
 import org.openrtb.common.util.StringUtils;
 import org.openrtb.dsp.intf.model.DSPException;
+import org.openrtb.dsp.intf.model.DemandSideConfig;
 import org.openrtb.dsp.intf.model.DemandSideDAO;
+import org.openrtb.dsp.intf.model.DemandSideSnapshot;
 import org.openrtb.dsp.intf.model.RTBAdvertiser;
 import org.openrtb.dsp.intf.model.RTBExchange;
 import org.slf4j.Logger;
@@ -65,10 +71,9 @@ public class JsonFileBackedDAO implements DemandSideDAO {
 
 	private final ObjectMapper mapper = new ObjectMapper();
 	
-	// data
-	private final ConcurrentMap<String, Integer> properties = new ConcurrentHashMap<String, Integer>();	
-	private final ConcurrentMap<String, RTBExchange> exchanges = new ConcurrentHashMap<String, RTBExchange>();
-	private final ConcurrentMap<String, RTBAdvertiser> advertisers = new ConcurrentHashMap<String, RTBAdvertiser>();
+	// everything loaded from the file, replaced as a whole by loadData
+	private volatile Loaded loaded = new Loaded(Collections.<String, Integer> emptyMap(),
+			DemandSideSnapshot.EMPTY);
 	
 	// encapsulate all the config properties in the Json file backed data store in a temporary class
 	// this is used by a Jackson object mapper to load data from a JSON file.
@@ -139,45 +144,100 @@ public class JsonFileBackedDAO implements DemandSideDAO {
 		}
 	}
 	
+	// the data of one load, never changed once published; readers take the
+	// current one with a single volatile read, and never lock. The snapshot
+	// holds the only copy of the maps, the ConcurrentMap getters see them
+	// through read-only views
+	private static final class Loaded {
+		final Map<String, Integer> properties;
+		final DemandSideSnapshot snapshot;
+		final ConcurrentMap<String, RTBExchange> exchanges;
+		final ConcurrentMap<String, RTBAdvertiser> advertisers;
+
+		Loaded(Map<String, Integer> properties, DemandSideSnapshot snapshot) {
+			this.properties = properties;
+			this.snapshot = snapshot;
+			this.exchanges = new ReadOnlyConcurrentMap<String, RTBExchange>(snapshot.getExchanges());
+			this.advertisers = new ReadOnlyConcurrentMap<String, RTBAdvertiser>(snapshot.getAdvertisers());
+		}
+	}
+	
 	public synchronized void reload() throws DSPException {
 		this.loadData(dbLocation);
 	}
 	
-	// the get method of ConcurrentMap is not blocking, hence make this synchronized
-	
-	public synchronized long getServerPort() {
-		return properties.get("server_port");
+	/**
+	 * The file last loaded, or being loaded.
+	 */
+	public String getDbLocation() {
+		return dbLocation;
 	}
 
-	
+	public long getServerPort() {
+		return loaded.snapshot.getServerPort();
+	}
+
+	/**
+	 * A read-only view of the exchanges of the last load; a reload publishes
+	 * new ones rather than changing these.
+	 * @deprecated use {@link #getSnapshot()}
+	 */
+	@Deprecated
 	public ConcurrentMap<String, RTBExchange> getExchanges() {
-		return exchanges;
+		return loaded.exchanges;
 	}
 
+	/**
+	 * A read-only view of the advertisers of the last load; a reload
+	 * publishes new ones rather than changing these.
+	 * @deprecated use {@link #getSnapshot()}
+	 */
+	@Deprecated
 	public ConcurrentMap<String, RTBAdvertiser> getAdvertisers() {
-		return advertisers;
+		return loaded.advertisers;
+	}
+
+	public DemandSideSnapshot getSnapshot() {
+		return loaded.snapshot;
+	}
+
+	public DemandSideConfig getConfig() {
+		return loaded.snapshot.getConfig();
 	}
 
+	// loads are serialized, and build everything off to the side before
+	// publishing it with a single volatile write: readers see either the
+	// previous load or this one, and a failed load leaves the previous one
 	public synchronized void loadData(String dbLocation) throws DSPException {
 		try {			
 			if ((dbLocation != null) && (dbLocation != "")) {
 				this.dbLocation = dbLocation;
 			} else {  // otherwise use a default location and filename relative to this class
-				this.dbLocation = getClass().getResource("dspConf.json").getFile();
+				this.dbLocation = getClass().getResource(defaultFileName()).getFile();
 			}
 			//mapper.enableDefaultTyping();
 			// read the properties as an object using ObjectMapper
-			DSPProps props = mapper.readValue(new File(this.dbLocation), DSPProps.class);
+			DSPProps props = readProps(new File(this.dbLocation));
+			validate(props);
 			
-			this.properties.put("server_port", props.dspServerPort);
-			this.properties.put("request_timeout", props.defaultReqTimeout);
-			this.properties.put("offer_timeout", props.defaultOfferTimeout);			
+			Map<String, Integer> properties = new HashMap<String, Integer>();
+			properties.put("server_port", props.dspServerPort);
+			properties.put("request_timeout", props.defaultReqTimeout);
+			properties.put("offer_timeout", props.defaultOfferTimeout);			
+			// keyed for the snapshot, which keeps its own copy
+			Map<String, RTBExchange> exchanges = new HashMap<String, RTBExchange>();
 			for (RTBExchange ex : props.exchanges) {
-				this.exchanges.put(ex.getOrgName(), ex);
+				exchanges.put(ex.getOrgName(), ex);
 			}
+			Map<String, RTBAdvertiser> advertisers = new HashMap<String, RTBAdvertiser>();
 			for (RTBAdvertiser adv : props.advertisers) {
-				this.advertisers.put(adv.getLandingPage(), adv);
+				advertisers.put(adv.getLandingPage(), adv);
 			}
+			DemandSideSnapshot snapshot = new DemandSideSnapshot(this.loaded.snapshot.getVersion() + 1,
+					exchanges, advertisers, props.dspServerPort,
+					props.defaultReqTimeout, props.defaultOfferTimeout);
+			
+			this.loaded = new Loaded(Collections.unmodifiableMap(properties), snapshot);
 			
 		} catch (Exception e) {
 			logger.error("JsonFileBackedDAO-Error in loading Configuration data : " + StringUtils.stackTraceToString(e));
@@ -185,8 +245,40 @@ public class JsonFileBackedDAO implements DemandSideDAO {
 		}
 	}
 	
-	public synchronized long getDefaultTimeout(String string) {
-		return properties.get(string);
+	public long getDefaultTimeout(String string) {
+		return loaded.properties.get(string);
 	}	
+
+	// the file loaded when no location is given, next to this class
+	String defaultFileName() {
+		return "dspConf.json";
+	}
+
+	// parses the file, subclasses may read other formats of the same data
+	DSPProps readProps(File file) throws Exception {
+		return mapper.readValue(file, DSPProps.class);
+	}
+
+	// checks what the parser does not, before anything is published or
+	// compiled into a snapshot
+	static void validate(DSPProps props) throws DSPException {
+		if (props.exchanges == null || props.advertisers == null) {
+			throw new DSPException("exchanges and advertisers are required");
+		}
+		Set<String> orgNames = new HashSet<String>();
+		for (int i = 0; i < props.exchanges.size(); i++) {
+			RTBExchange ex = props.exchanges.get(i);
+			if (ex == null || ex.getOrgName() == null || !orgNames.add(ex.getOrgName())) {
+				throw new DSPException("exchange #" + i + " has no orgname, or a duplicate one");
+			}
+		}
+		Set<String> landingPages = new HashSet<String>();
+		for (int i = 0; i < props.advertisers.size(); i++) {
+			RTBAdvertiser adv = props.advertisers.get(i);
+			if (adv == null || adv.getLandingPage() == null || !landingPages.add(adv.getLandingPage())) {
+				throw new DSPException("advertiser #" + i + " has no landingPage, or a duplicate one");
+			}
+		}
+	}
 	
 }
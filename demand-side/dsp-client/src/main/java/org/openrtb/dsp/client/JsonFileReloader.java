@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.client;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openrtb.dsp.intf.model.DSPException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reloads a {@link JsonFileBackedDAO} when its configuration file changes,
+ * so that new exchanges and advertisers are picked up without restarting the
+ * DSP.
+ *
+ * The file is polled every <tt>pollInterval</tt> milliseconds for a change of
+ * its modification time or length (file system notifications need Java 7).
+ * A change is only loaded once the file has stayed the same for
+ * <tt>debounce</tt> milliseconds, so that a file still being written, or
+ * written several times in a row, is loaded once and complete.
+ *
+ * The DAO validates the file and builds the new configuration before
+ * publishing it, so a file that does not parse or validate is never served:
+ * the previous configuration stays in place, the failure is logged and
+ * counted, and the file is not retried until it changes again.
+ */
+public class JsonFileReloader {
+
+	public static final long DEFAULT_POLL_INTERVAL = 2000;
+	public static final long DEFAULT_DEBOUNCE = 1000;
+
+	private static final Logger logger = LoggerFactory.getLogger(JsonFileReloader.class);
+
+	private final JsonFileBackedDAO dao;
+	private final long pollInterval;
+	private final long debounce;
+	private final AtomicLong reloads = new AtomicLong();
+	private final AtomicLong failedReloads = new AtomicLong();
+	private volatile long lastReloadLatency = -1;
+	private volatile long lastReloadTime;
+	private ScheduledExecutorService poller;
+
+	// only touched by the polling thread
+	private File file;
+	private Stamp loaded;
+	private Stamp pending;
+	private long pendingSince;
+
+	public JsonFileReloader(JsonFileBackedDAO dao) {
+		this(dao, DEFAULT_POLL_INTERVAL, DEFAULT_DEBOUNCE);
+	}
+
+	public JsonFileReloader(JsonFileBackedDAO dao, long pollInterval, long debounce) {
+		if (pollInterval <= 0 || debounce < 0) {
+			throw new IllegalArgumentException("invalid poll interval or debounce: "
+					+ pollInterval + ", " + debounce);
+		}
+		this.dao = dao;
+		this.pollInterval = pollInterval;
+		this.debounce = debounce;
+	}
+
+	/**
+	 * Starts watching the file the DAO was loaded from; the DAO must have
+	 * been loaded first.
+	 */
+	public synchronized void start() {
+		if (poller != null) {
+			return;
+		}
+		watch();
+		poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "dsp-config-reloader");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		poller.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					poll();
+				} catch (RuntimeException e) {
+					// keep polling, the next change may be fine
+					logger.error("configuration reload failed", e);
+				}
+			}
+		}, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+		logger.info("watching " + file + " for changes every " + pollInterval + "ms");
+	}
+
+	public synchronized void shutdown() {
+		if (poller != null) {
+			poller.shutdownNow();
+			poller = null;
+		}
+	}
+
+	// takes the current state of the DAO's file as the loaded one
+	void watch() {
+		if (dao.getDbLocation() == null) {
+			throw new IllegalStateException("the DAO has not been loaded yet");
+		}
+		file = new File(dao.getDbLocation());
+		loaded = Stamp.of(file);
+		pending = null;
+	}
+
+	/**
+	 * Checks the file once, and reloads it if it changed and has settled.
+	 *
+	 * @return <tt>true</tt> if a new configuration was published.
+	 */
+	boolean poll() {
+		if (!file.exists()) {
+			// being replaced, or removed: keep what is loaded
+			return false;
+		}
+		Stamp current = Stamp.of(file);
+		long now = System.currentTimeMillis();
+		if (current.equals(loaded)) {
+			pending = null;
+			return false;
+		}
+		if (!current.equals(pending)) {
+			pending = current;
+			pendingSince = now;
+		}
+		if (now - pendingSince < debounce) {
+			return false;
+		}
+
+		pending = null;
+		loaded = current;
+		long start = System.nanoTime();
+		try {
+			dao.loadData(file.getPath());
+		} catch (DSPException e) {
+			failedReloads.incrementAndGet();
+			logger.error("not reloading " + file + ", keeping version " + dao.getSnapshot().getVersion()
+					+ " of the configuration: " + e.getMessage());
+			return false;
+		}
+		lastReloadLatency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		lastReloadTime = now;
+		reloads.incrementAndGet();
+		logger.info("reloaded " + file + " as version " + dao.getSnapshot().getVersion()
+				+ " of the configuration in " + lastReloadLatency + "ms");
+		return true;
+	}
+
+	/**
+	 * Number of times a changed file has been loaded and published.
+	 */
+	public long getReloadCount() {
+		return reloads.get();
+	}
+
+	/**
+	 * Number of times a changed file was rejected, and the previous
+	 * configuration kept.
+	 */
+	public long getFailedReloadCount() {
+		return failedReloads.get();
+	}
+
+	/**
+	 * How long, in milliseconds, the last successful reload took to load and
+	 * publish the file; <tt>-1</tt> before the first one.
+	 */
+	public long getLastReloadLatency() {
+		return lastReloadLatency;
+	}
+
+	/**
+	 * When the last successful reload happened, <tt>0</tt> before the first
+	 * one.
+	 */
+	public long getLastReloadTime() {
+		return lastReloadTime;
+	}
+
+	// what tells a changed file from the one loaded
+	private static final class Stamp {
+		final long lastModified;
+		final long length;
+
+		Stamp(long lastModified, long length) {
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+
+		static Stamp of(File file) {
+			return new Stamp(file.lastModified(), file.length());
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Stamp)) {
+				return false;
+			}
+			Stamp other = (Stamp) o;
+			return lastModified == other.lastModified && length == other.length;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (lastModified ^ (lastModified >>> 32)) * 31 + (int) length;
+		}
+	}
+}
@@ -36,10 +36,6 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import org.apache.avro.AvroRemoteException;
 import org.openrtb.common.api.Bid;
@@ -49,10 +45,12 @@ import org.openrtb.common.api.Impression;
 import org.openrtb.common.api.OpenRTBAPI;
 import org.openrtb.common.api.SeatBid;
 import org.openrtb.common.util.StringUtils;
-import org.openrtb.common.util.statemachines.FSMCallback;
+import org.openrtb.common.util.statemachines.CompiledStateMachine;
+import org.openrtb.common.util.statemachines.CompiledStateMachine.Cursor;
+import org.openrtb.common.util.statemachines.FSMAction;
 import org.openrtb.common.util.statemachines.FSMException;
-import org.openrtb.common.util.statemachines.FSMTransition;
-import org.openrtb.common.util.statemachines.FiniteStateMachine;
+import org.openrtb.common.util.statemachines.HashedWheelTimer;
+import org.openrtb.common.util.statemachines.HashedWheelTimer.Timeout;
 import org.openrtb.dsp.intf.model.RTBAdvertiser;
 import org.openrtb.dsp.intf.model.RTBRequestWrapper;
 import org.slf4j.Logger;
@@ -65,11 +63,29 @@ public class StatefulBidder implements OpenRTBAPI {
 
 	// SL4J Logger, ConcurrentMap and ConcurrentHashMap are threadsafe
 	private final Logger logger = LoggerFactory.getLogger(StatefulBidder.class);
-	private final ConcurrentMap<String, TSMController> transactions = new ConcurrentHashMap<String, TSMController>();
+	public static final int DEFAULT_MAX_TRANSACTIONS = 100000;
+
+	// request and offer expiry for all transactions share one timer thread
+	private final HashedWheelTimer timer;
+	// open transactions by BidRequest id, so that notifications reach them
+	private final TransactionRegistry<TSMController> transactions;
 
 	public StatefulBidder() {
+		this(HashedWheelTimer.getShared(), DEFAULT_MAX_TRANSACTIONS);
+	}
+
+	public StatefulBidder(HashedWheelTimer timer, int maxTransactions) {
 		numBids = 0L;
 		numResponses = 0L;
+		this.timer = timer;
+		this.transactions = new TransactionRegistry<TSMController>(maxTransactions, timer);
+	}
+
+	/**
+	 * The number of request/offer timers currently outstanding.
+	 */
+	public int getPendingTimers() {
+		return timer.getPendingCount();
 	}
 
 	private synchronized long nextBidNum() {
@@ -165,141 +181,180 @@ public class StatefulBidder implements OpenRTBAPI {
 		RTBRequestWrapper transaction = (RTBRequestWrapper) request;
 		// create a new state machine controller to execute this transaction
 		TSMController controller = new TSMController(this, transaction);
-		transactions.put(transaction.getSSPName(), controller);
+		String id = controller.getId();
+		// the transaction can live until its offer expires at the latest,
+		// by then it will have been evicted
+		if (id == null || !transactions.register(id, controller,
+				transaction.getRequestTO() + transaction.getOfferTO())) {
+			logger.warn("StatefulBidder: cannot open a transaction for request "
+					+ id + ", not bidding");
+			return null;
+		}
+		TSMStates state;
 		try {
-			controller.exec(TSMStates.TXN_CLOSED);
+			state = controller.exec();
 		} catch (Exception e) {
+			transactions.remove(id);
 			logger.error("StatefulBidder: Exception in process method : " + StringUtils.stackTraceToString(e));
 			throw new AvroRemoteException(e.getMessage());
 		}
+		// only transactions with bids on offer wait for further events; any
+		// other state (including a request that expired meanwhile) is final
+		if (state != TSMStates.TXN_WAIT_BIDSOFFERED) {
+			transactions.remove(id);
+			return null;
+		}
 		// transaction.setRequestHistory(controller.getHistory());
 		return controller.response;
 	}
 
-	// use type inference to avoid having to type long generic type names
-	// *not* pseudo typedefs
-	private static <A extends FSMCallback, B> FSMTransition<A, B> newTransition(
-			B event) {
-		return new FSMTransition<A, B>(event);
+	/**
+	 * Delivers a win notification to the transaction for the given request.
+	 * 
+	 * @return <tt>false</tt> if no bids are on offer for that request (any
+	 *         more).
+	 */
+	public boolean notifyWin(String bidRequestId) {
+		TSMController controller = transactions.get(bidRequestId);
+		if (controller == null) {
+			return false;
+		}
+		return controller.notifyWin();
+	}
+
+	/**
+	 * The number of transactions still open, i.e. with bids on offer.
+	 */
+	public int getOpenTransactions() {
+		return transactions.size();
 	}
 
-	public static final FSMTransition<TSMStates, String> EV_NEWREQUEST = StatefulBidder
-			.newTransition("NewRequest");
-	private static final FSMTransition<TSMStates, String> EV_FORMATERROR = StatefulBidder
-			.newTransition("FormatError");
-	private static final FSMTransition<TSMStates, String> EV_NOTSUPPORTED = StatefulBidder
-			.newTransition("NotSupported");
-	private static final FSMTransition<TSMStates, String> EV_SELECTBIDS = StatefulBidder
-			.newTransition("SelectBids");
-	private static final FSMTransition<TSMStates, String> EV_REQUEST_EXPIRED = StatefulBidder
-			.newTransition("RequestExpired");
-	private static final FSMTransition<TSMStates, String> EV_BIDSOFFERED = StatefulBidder
-			.newTransition("BidsOffered");
-	private static final FSMTransition<TSMStates, String> EV_NOMATCHINGBIDS = StatefulBidder
-			.newTransition("NoMatchingBids");
-	private static final FSMTransition<TSMStates, String> EV_OFFER_EXPIRED = StatefulBidder
-			.newTransition("OfferExpired");
-	private static final FSMTransition<TSMStates, String> EV_WIN_NOTIFICATION = StatefulBidder
-	.newTransition("WinNotification");	
-
-	private class TSMController {
+	/**
+	 * The number of requests not bid on because too many transactions were
+	 * open.
+	 */
+	public long getRejectedTransactions() {
+		return transactions.getRejectedCount();
+	}
+
+	private void endTransaction(TSMController controller) {
+		transactions.remove(controller.getId());
+	}
+
+	public enum TSMEvents {
+		NEW_REQUEST, FORMAT_ERROR, NOT_SUPPORTED, SELECT_BIDS, REQUEST_EXPIRED,
+		BIDS_OFFERED, NO_MATCHING_BIDS, OFFER_EXPIRED, WIN_NOTIFICATION
+	}
+
+	// the transaction state machine, shared by all transactions
+	private static final CompiledStateMachine<TSMStates, TSMEvents> TSM = CompiledStateMachine
+			.builder(TSMStates.class, TSMEvents.class)
+			.addTransition(TSMStates.TXN_CLOSED, TSMEvents.NEW_REQUEST, TSMStates.TXN_WAIT_NEW)
+			.addTransition(TSMStates.TXN_WAIT_NEW, TSMEvents.FORMAT_ERROR, TSMStates.TXN_FORMATERROR)
+			.addTransition(TSMStates.TXN_WAIT_NEW, TSMEvents.REQUEST_EXPIRED, TSMStates.TXN_REQUESTEXPIRED)
+			.addTransition(TSMStates.TXN_WAIT_NEW, TSMEvents.SELECT_BIDS, TSMStates.TXN_WAIT_OPEN)
+			.addTransition(TSMStates.TXN_WAIT_OPEN, TSMEvents.FORMAT_ERROR, TSMStates.TXN_FORMATERROR)
+			.addTransition(TSMStates.TXN_WAIT_OPEN, TSMEvents.REQUEST_EXPIRED, TSMStates.TXN_REQUESTEXPIRED)
+			.addTransition(TSMStates.TXN_WAIT_OPEN, TSMEvents.NOT_SUPPORTED, TSMStates.TXN_NOBID)
+			.addTransition(TSMStates.TXN_WAIT_OPEN, TSMEvents.NO_MATCHING_BIDS, TSMStates.TXN_NOBID)
+			.addTransition(TSMStates.TXN_WAIT_OPEN, TSMEvents.BIDS_OFFERED, TSMStates.TXN_WAIT_BIDSOFFERED)
+			.addTransition(TSMStates.TXN_WAIT_BIDSOFFERED, TSMEvents.OFFER_EXPIRED, TSMStates.TXN_OFFEREXPIRED)
+			.addTransition(TSMStates.TXN_WAIT_BIDSOFFERED, TSMEvents.WIN_NOTIFICATION, TSMStates.TXN_COMPLETE)
+			.build();
+
+	// a transaction is its own cursor over the shared TSM
+	private class TSMController extends Cursor {
 		StatefulBidder bidder;
 		RTBRequestWrapper request;
 		BidResponse response;
-		FiniteStateMachine<TSMStates> tsm;
-		private final Timer requestTimer = new Timer();
-		private final Timer offerTimer = new Timer();
+		private Timeout requestTimeout;
+		private Timeout offerTimeout;
 	
 		TSMController(StatefulBidder statefulBidder, RTBRequestWrapper wReq) {
+			super(TSMStates.TXN_CLOSED);
 			this.bidder = statefulBidder;
 			this.request = wReq;
 			this.response = null;
-			this.tsm = new FiniteStateMachine<TSMStates>();
-			tsm.addStates(TSMStates.values());
-			tsm.addTransition(TSMStates.TXN_CLOSED, EV_NEWREQUEST, TSMStates.TXN_WAIT_NEW);
-			tsm.addTransition(TSMStates.TXN_WAIT_NEW, EV_FORMATERROR, TSMStates.TXN_FORMATERROR);
-			tsm.addTransition(TSMStates.TXN_WAIT_NEW, EV_REQUEST_EXPIRED, TSMStates.TXN_REQUESTEXPIRED);
-			tsm.addTransition(TSMStates.TXN_WAIT_NEW, EV_SELECTBIDS, TSMStates.TXN_WAIT_OPEN);
-			tsm.addTransition(TSMStates.TXN_WAIT_OPEN, EV_FORMATERROR, TSMStates.TXN_FORMATERROR);
-			tsm.addTransition(TSMStates.TXN_WAIT_OPEN, EV_REQUEST_EXPIRED, TSMStates.TXN_REQUESTEXPIRED);
-			tsm.addTransition(TSMStates.TXN_WAIT_OPEN, EV_NOTSUPPORTED, TSMStates.TXN_NOBID);
-			tsm.addTransition(TSMStates.TXN_WAIT_OPEN, EV_NOMATCHINGBIDS, TSMStates.TXN_NOBID);		
-			tsm.addTransition(TSMStates.TXN_WAIT_OPEN, EV_BIDSOFFERED, TSMStates.TXN_WAIT_BIDSOFFERED);
-			tsm.addTransition(TSMStates.TXN_WAIT_BIDSOFFERED, EV_OFFER_EXPIRED, TSMStates.TXN_OFFEREXPIRED);
-			tsm.addTransition(TSMStates.TXN_WAIT_BIDSOFFERED, EV_WIN_NOTIFICATION, TSMStates.TXN_COMPLETE);
-			
 		}
-		public void exec(TSMStates startState) {
-			tsm.exec(startState, this);
+
+		public TSMStates exec() {
+			return TSM.exec(this, this);
+		}
+
+		String getId() {
+			CharSequence id = request.getRequest().getId();
+			return id == null ? null : id.toString();
 		}
 
-		private final TimerTask requestTimerTask = new TimerTask() {
-			@Override
+		boolean notifyWin() {
+			return TSM.fire(this, TSMEvents.WIN_NOTIFICATION, this);
+		}
+
+		// run on the shared timer's worker thread; if the transaction moved
+		// on in the meantime the event no longer applies and is dropped
+		private final Runnable requestExpired = new Runnable() {
 			public void run() {
-				EV_REQUEST_EXPIRED.setState(tsm.getCurrent());
-				tsm.followTransition(EV_REQUEST_EXPIRED, this);
+				TSM.fire(TSMController.this, TSMEvents.REQUEST_EXPIRED,
+						TSMController.this);
 			}
 		};
 
-		private final TimerTask offerTimerTask = new TimerTask() {
-			@Override
+		private final Runnable offerExpired = new Runnable() {
 			public void run() {
-				EV_OFFER_EXPIRED.setState(tsm.getCurrent());
-				tsm.followTransition(EV_OFFER_EXPIRED, this);
+				TSM.fire(TSMController.this, TSMEvents.OFFER_EXPIRED,
+						TSMController.this);
 			}
 		};
 
-		public void setRequestTimer() {
-			//requestTimer.cancel();
-			requestTimer.schedule(requestTimerTask, request.getRequestTO());
+		public synchronized void setRequestTimer() {
+			requestTimeout = bidder.timer.newTimeout(requestExpired, request.getRequestTO());
 		}
 
-		public void cancelRequestTimer() {
-			requestTimer.cancel();
+		public synchronized void cancelRequestTimer() {
+			if (requestTimeout != null) {
+				requestTimeout.cancel();
+			}
 		}
 
 		public synchronized void setOfferTimer() {
 			if (!request.isOfferTimerActive()) {
-				offerTimer.schedule(offerTimerTask, request.getOfferTO());
+				offerTimeout = bidder.timer.newTimeout(offerExpired, request.getOfferTO());
 				request.setOfferTimerActive(true);
 			}
 		}
 
 		public synchronized void cancelOfferTimer() {
-			offerTimer.cancel();
+			if (offerTimeout != null) {
+				offerTimeout.cancel();
+			}
 		}
 	}
 
-	public enum TSMStates implements FSMCallback {
+	public enum TSMStates implements FSMAction<TSMEvents> {
 		TXN_CLOSED {
-			public synchronized FSMTransition<TSMStates, String> exec(Object ctx)
-					throws FSMException {
+			public TSMEvents exec(Object ctx) throws FSMException {
 				TSMController context = (TSMController) ctx;
 				context.bidder.logger.info("New Request");				
 				context.setRequestTimer();
-				EV_NEWREQUEST.setState(this);
-				return EV_NEWREQUEST;
+				return TSMEvents.NEW_REQUEST;
 			}
 		},
 
 		TXN_WAIT_NEW {
-			public synchronized FSMTransition<TSMStates, String> exec(Object ctx)
-					throws FSMException {
+			public TSMEvents exec(Object ctx) throws FSMException {
 				TSMController context = (TSMController) ctx;
 				context.bidder.logger.info("Validating Request Message Format");
 				boolean valid = context.bidder.validateRequest(context.request
 						.getRequest());
 				if (!valid) {
-					EV_FORMATERROR.setState(this);
-					return EV_FORMATERROR;
+					return TSMEvents.FORMAT_ERROR;
 				}
-				return EV_SELECTBIDS;
+				return TSMEvents.SELECT_BIDS;
 			}
 		},
 
 		TXN_FORMATERROR {
-			public synchronized FSMTransition<TSMStates, String> exec(Object ctx)
-					throws FSMException {
+			public TSMEvents exec(Object ctx) throws FSMException {
 				TSMController context = (TSMController) ctx;
 				context.bidder.logger
 						.error("Terminating transaction due to Format Error");
@@ -310,25 +365,23 @@ public class StatefulBidder implements OpenRTBAPI {
 		},
 
 		TXN_WAIT_OPEN {
-			public synchronized FSMTransition<TSMStates, String> exec(Object ctx)
-					throws FSMException {
+			public TSMEvents exec(Object ctx) throws FSMException {
 				TSMController context = (TSMController) ctx;
 				context.bidder.logger.info("Finding matching Bids");
 				context.response = context.bidder.selectBids(context.request,
 						context.response);
-				if (context.response == null) {
-					EV_NOMATCHINGBIDS.setState(this);
-					return EV_NOMATCHINGBIDS;
+				if (context.response == null
+						|| context.response.getSeatbid() == null
+						|| context.response.getSeatbid().isEmpty()) {
+					context.response = null;
+					return TSMEvents.NO_MATCHING_BIDS;
 				}
-				EV_BIDSOFFERED.setState(this);
-				context.cancelRequestTimer();
-				return null; //this should be end state
+				return TSMEvents.BIDS_OFFERED;
 			}
 		},
 
 		TXN_NOBID {
-			public synchronized FSMTransition<TSMStates, String> exec(Object ctx)
-					throws FSMException {
+			public TSMEvents exec(Object ctx) throws FSMException {
 				TSMController context = (TSMController) ctx;
 				context.bidder.logger
 						.info("No matching bids were found, there will be no response");
@@ -338,8 +391,7 @@ public class StatefulBidder implements OpenRTBAPI {
 		},
 
 		TXN_WAIT_BIDSOFFERED {
-			public synchronized FSMTransition<TSMStates, String> exec(Object ctx)
-					throws FSMException {
+			public TSMEvents exec(Object ctx) throws FSMException {
 				TSMController context = (TSMController) ctx;
 				context.bidder.logger
 						.info("Waiting for Notification on Bids for BidRequest id: "
@@ -347,14 +399,13 @@ public class StatefulBidder implements OpenRTBAPI {
 										.toString());
 				context.cancelRequestTimer();
 				context.setOfferTimer();
-				EV_BIDSOFFERED.setState(this);
-				return EV_BIDSOFFERED;
+				// wait for the win notification or the offer to expire
+				return null;
 			}
 		},
 
 		TXN_REQUESTEXPIRED {
-			public synchronized FSMTransition<TSMStates, String> exec(Object ctx)
-					throws FSMException {
+			public TSMEvents exec(Object ctx) throws FSMException {
 				TSMController context = (TSMController) ctx;
 				context.bidder.logger
 						.info("Request timed out. Terminating state machine.");
@@ -364,20 +415,21 @@ public class StatefulBidder implements OpenRTBAPI {
 		},
 
 		TXN_OFFEREXPIRED {
-			public synchronized FSMTransition<TSMStates, String> exec(Object ctx)
-					throws FSMException {
+			public TSMEvents exec(Object ctx) throws FSMException {
 				StatefulBidder.TSMController context = (StatefulBidder.TSMController) ctx;
 				context.bidder.logger
 						.info("Offer timed out. Terminating state machine.");
 				context.cancelOfferTimer();
+				context.bidder.endTransaction(context);
 				return null; // this is an end state
 			}
 		},
 		
 		TXN_COMPLETE {
-			public synchronized FSMTransition<TSMStates, String> exec(Object ctx)
-					throws FSMException {
+			public TSMEvents exec(Object ctx) throws FSMException {
 				TSMController context = (TSMController) ctx;
+				context.cancelOfferTimer();
+				context.bidder.endTransaction(context);
 				context.response = null;
 				return null; // this is an end state
 			}
@@ -93,4 +93,14 @@ public class StaticAdvertiserService implements AdvertiserService {
         }
     }
 
+    @Override
+    public void updateAdvertiserBlocklists(SupplySidePlatform ssp,
+                                           Collection<Advertiser> advertisers) {
+        for(Advertiser advertiser : advertisers) {
+            log.info("received advertiser ["+advertiser.getLandingPage()+"] changes since ["+advertiser.getTimestamp()+"]: " +
+                     "["+advertiser.getBlocklist().size()+"] blocklist entries added, " +
+                     "["+advertiser.getRemovedBlocklist().size()+"] removed");
+        }
+    }
+
 }
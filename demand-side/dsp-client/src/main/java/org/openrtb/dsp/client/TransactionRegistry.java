@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openrtb.common.util.statemachines.HashedWheelTimer;
+import org.openrtb.common.util.statemachines.HashedWheelTimer.Timeout;
+
+/**
+ * A bounded table of in-flight bidding transactions, keyed by
+ * <tt>BidRequest</tt> id.
+ *
+ * Every entry is registered with a time to live and is evicted by the timer
+ * once it elapses, unless it was removed before (e.g. because the transaction
+ * reached an end state), so the table cannot grow with abandoned
+ * transactions. The table also holds at most <tt>capacity</tt> entries: when
+ * it is full {@link #register(String, Object, long)} refuses new
+ * transactions, which the caller should answer with a no-bid rather than
+ * queue up.
+ */
+public class TransactionRegistry<T> {
+
+	private final ConcurrentMap<String, Entry<T>> entries = new ConcurrentHashMap<String, Entry<T>>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong evicted = new AtomicLong();
+	private final int capacity;
+	private final HashedWheelTimer timer;
+
+	public TransactionRegistry(int capacity, HashedWheelTimer timer) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		this.timer = timer;
+	}
+
+	/**
+	 * Adds a transaction that is evicted after <tt>ttlMs</tt> milliseconds
+	 * unless removed first.
+	 * 
+	 * @return <tt>false</tt> if the table is full or a transaction with the
+	 *         same id is already registered.
+	 */
+	public boolean register(final String id, T transaction, long ttlMs) {
+		if (!reserve()) {
+			rejected.incrementAndGet();
+			return false;
+		}
+		final Entry<T> entry = new Entry<T>(transaction);
+		if (entries.putIfAbsent(id, entry) != null) {
+			size.decrementAndGet();
+			rejected.incrementAndGet();
+			return false;
+		}
+		entry.eviction = timer.newTimeout(new Runnable() {
+			public void run() {
+				if (entries.remove(id, entry)) {
+					size.decrementAndGet();
+					evicted.incrementAndGet();
+				}
+			}
+		}, ttlMs);
+		return true;
+	}
+
+	public T get(String id) {
+		Entry<T> entry = entries.get(id);
+		return entry == null ? null : entry.transaction;
+	}
+
+	/**
+	 * Removes the transaction, cancelling its eviction.
+	 * 
+	 * @return the removed transaction, or <tt>null</tt> if there was none.
+	 */
+	public T remove(String id) {
+		Entry<T> entry = entries.remove(id);
+		if (entry == null) {
+			return null;
+		}
+		size.decrementAndGet();
+		Timeout eviction = entry.eviction;
+		if (eviction != null) {
+			eviction.cancel();
+		}
+		return entry.transaction;
+	}
+
+	public int size() {
+		return size.get();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Number of transactions refused because the table was full (or the id
+	 * was already in use).
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * Number of transactions dropped because their time to live elapsed.
+	 */
+	public long getEvictedCount() {
+		return evicted.get();
+	}
+
+	private boolean reserve() {
+		while (true) {
+			int current = size.get();
+			if (current >= capacity) {
+				return false;
+			}
+			if (size.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private static final class Entry<T> {
+		final T transaction;
+		volatile Timeout eviction;
+
+		Entry(T transaction) {
+			this.transaction = transaction;
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openrtb.dsp.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrtb.dsp.intf.model.DSPException;
+import org.openrtb.dsp.intf.model.DemandSideSnapshot;
+import org.openrtb.dsp.intf.model.RTBAdvertiser;
+import org.openrtb.dsp.intf.model.RTBExchange;
+
+/**
+ * Test that the Avro snapshot of a JSON configuration loads as the JSON
+ * file itself does.
+ */
+public class AvroFileBackedDAOTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String json;
+	private File avro;
+
+	@Before
+	public void setUp() throws Exception {
+		json = getClass().getResource("/jsonFileForConcurrencyTest.json").getPath();
+		avro = new File(folder.getRoot(), "dspConf.avro");
+		AvroConfigSnapshot.convert(new File(json), avro);
+	}
+
+	@Test
+	public void loadsAsJson() throws DSPException {
+		JsonFileBackedDAO expected = new JsonFileBackedDAO();
+		expected.loadData(json);
+		assertSame(expected.getSnapshot(), load(false));
+		assertSame(expected.getSnapshot(), load(true));
+	}
+
+	@Test
+	public void isAvroBinary() throws IOException {
+		byte[] bytes = read(avro);
+		GenericRecord record = new GenericDatumReader<GenericRecord>(AvroConfigSnapshot.SCHEMA).read(null,
+				DecoderFactory.get().binaryDecoder(bytes, 4, bytes.length - 4, null));
+		assertEquals(8888, record.get("serverport"));
+		assertEquals(1, ((List<?>) record.get("exchanges")).size());
+		GenericRecord exchange = (GenericRecord) ((List<?>) record.get("exchanges")).get(0);
+		assertEquals(300L, exchange.get("requestTO"));
+		assertNull(exchange.get("offerTO"));
+		GenericRecord advertiser = (GenericRecord) ((List<?>) record.get("advertisers")).get(0);
+		assertEquals("MyPage1", advertiser.get("landingPage").toString());
+		assertEquals(3, ((List<?>) advertiser.get("categories")).size());
+	}
+
+	@Test
+	public void rejectsOtherFiles() throws IOException {
+		for (boolean mapped : new boolean[] { false, true }) {
+			try {
+				new AvroFileBackedDAO(mapped).loadData(json);
+				fail("a JSON file is not a snapshot");
+			} catch (DSPException e) {
+				assertTrue(e.getMessage().contains("not a configuration snapshot"));
+			}
+		}
+
+		byte[] bytes = read(avro);
+		File truncated = folder.newFile("truncated.avro");
+		FileOutputStream out = new FileOutputStream(truncated);
+		try {
+			out.write(bytes, 0, bytes.length - 10);
+		} finally {
+			out.close();
+		}
+		for (boolean mapped : new boolean[] { false, true }) {
+			try {
+				new AvroFileBackedDAO(mapped).loadData(truncated.getPath());
+				fail("a truncated file is not a snapshot");
+			} catch (DSPException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void rejectsCorruptCounts() throws IOException {
+		File corrupt = folder.newFile("corrupt.avro");
+		FileOutputStream out = new FileOutputStream(corrupt);
+		try {
+			out.write(AvroConfigSnapshot.MAGIC);
+			BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+			encoder.writeInt(8888);
+			encoder.writeInt(100);
+			encoder.writeInt(200);
+			// the exchange count, far more than the file holds
+			encoder.writeLong(1L << 40);
+			encoder.flush();
+		} finally {
+			out.close();
+		}
+		for (boolean mapped : new boolean[] { false, true }) {
+			try {
+				new AvroFileBackedDAO(mapped).loadData(corrupt.getPath());
+				fail("the count cannot be right");
+			} catch (DSPException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("corrupt"));
+			}
+		}
+	}
+
+	@Test
+	public void convertValidates() throws Exception {
+		File invalid = folder.newFile("invalid.json");
+		FileOutputStream out = new FileOutputStream(invalid);
+		try {
+			out.write(("{\"serverport\":8888,\"exchanges\":[{\"rtbUrl\":\"http://no.org/rtb\"}],"
+					+ "\"advertisers\":[]}").getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		File target = new File(folder.getRoot(), "invalid.avro");
+		try {
+			AvroConfigSnapshot.convert(invalid, target);
+			fail("an exchange needs an orgname");
+		} catch (DSPException e) {
+			assertTrue(e.getMessage().contains("orgname"));
+		}
+		assertFalse("nothing is written", target.exists());
+	}
+
+	private DemandSideSnapshot load(boolean mapped) throws DSPException {
+		AvroFileBackedDAO dao = new AvroFileBackedDAO(mapped);
+		dao.loadData(avro.getPath());
+		return dao.getSnapshot();
+	}
+
+	private static void assertSame(DemandSideSnapshot expected, DemandSideSnapshot actual) {
+		assertEquals(expected.getServerPort(), actual.getServerPort());
+		assertEquals(expected.getRequestTimeout(), actual.getRequestTimeout());
+		assertEquals(expected.getOfferTimeout(), actual.getOfferTimeout());
+		assertEquals(expected.getExchanges().keySet(), actual.getExchanges().keySet());
+		for (RTBExchange ex : expected.getExchanges().values()) {
+			RTBExchange other = actual.getExchange(ex.getOrgName());
+			assertEquals(ex.getRtbServiceUrl(), other.getRtbServiceUrl());
+			assertEquals(ex.getRtbContentType(), other.getRtbContentType());
+			assertEquals(ex.getRequestTimeout(), other.getRequestTimeout());
+			assertEquals(ex.getOfferTimeout(), other.getOfferTimeout());
+		}
+		assertEquals(expected.getAdvertisers().keySet(), actual.getAdvertisers().keySet());
+		for (RTBAdvertiser adv : expected.getAdvertisers().values()) {
+			RTBAdvertiser other = actual.getAdvertiser(adv.getLandingPage());
+			assertEquals(adv.getName(), other.getName());
+			assertEquals(adv.getNurl(), other.getNurl());
+			assertEquals(adv.getCategories(), other.getCategories());
+			assertEquals(adv.getSeats(), other.getSeats());
+		}
+	}
+
+	private static byte[] read(File file) throws IOException {
+		byte[] bytes = new byte[(int) file.length()];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			assertEquals(bytes.length, in.read(bytes));
+		} finally {
+			in.close();
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openrtb.dsp.client;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openrtb.dsp.intf.model.DemandSideSnapshot;
+import org.openrtb.dsp.intf.model.RTBAdvertiser;
+import org.openrtb.dsp.intf.model.RTBExchange;
+
+/**
+ * Compares loading the same configuration from the JSON file with
+ * {@link JsonFileBackedDAO}, and from its Avro snapshot with
+ * {@link AvroFileBackedDAO}, read into memory or memory-mapped: complete
+ * loads, up to the published snapshot, and the parsing alone.
+ *
+ * Not run as part of the build; start it through {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigLoadBenchmark {
+
+	private static final int EXCHANGES = 20;
+	private static final int CATEGORIES = 400;
+
+	@Param({"10000", "100000"})
+	int advertiserCount;
+
+	private File json;
+	private File avro;
+
+	@Setup
+	public void setup() throws Exception {
+		Random random = new Random(42);
+		JsonFileBackedDAO.DSPProps props = new JsonFileBackedDAO.DSPProps();
+		props.dspServerPort = 8080;
+		props.defaultReqTimeout = 120;
+		props.defaultOfferTimeout = 200;
+		props.exchanges = new ArrayList<RTBExchange>();
+		for (int e = 0; e < EXCHANGES; e++) {
+			props.exchanges.add(new RTBExchange("Exchange" + e, "http://exchange" + e + ".com/rtb", "application/json"));
+		}
+		props.advertisers = new ArrayList<RTBAdvertiser>();
+		for (int i = 0; i < advertiserCount; i++) {
+			List<String> categories = new ArrayList<String>();
+			for (int c = 0; c < 3; c++) {
+				categories.add("IAB" + random.nextInt(CATEGORIES));
+			}
+			Map<String, String> seats = new HashMap<String, String>();
+			for (int s = 0; s < 3; s++) {
+				seats.put("Exchange" + random.nextInt(EXCHANGES), "seat" + i + "-" + s);
+			}
+			props.advertisers.add(new RTBAdvertiser("brand" + i + ".com", "Brand " + i,
+					"http://brand" + i + ".com/nurl", categories, seats));
+		}
+
+		json = File.createTempFile("dspConf", ".json");
+		avro = File.createTempFile("dspConf", ".avro");
+		new ObjectMapper().writeValue(json, props);
+		AvroConfigSnapshot.convert(json, avro);
+	}
+
+	@TearDown
+	public void tearDown() {
+		json.delete();
+		avro.delete();
+	}
+
+	@Benchmark
+	public DemandSideSnapshot json() throws Exception {
+		JsonFileBackedDAO dao = new JsonFileBackedDAO();
+		dao.loadData(json.getPath());
+		return dao.getSnapshot();
+	}
+
+	@Benchmark
+	public DemandSideSnapshot avro() throws Exception {
+		AvroFileBackedDAO dao = new AvroFileBackedDAO(false);
+		dao.loadData(avro.getPath());
+		return dao.getSnapshot();
+	}
+
+	@Benchmark
+	public DemandSideSnapshot avroMapped() throws Exception {
+		AvroFileBackedDAO dao = new AvroFileBackedDAO(true);
+		dao.loadData(avro.getPath());
+		return dao.getSnapshot();
+	}
+
+	// the parsing alone, without building and publishing the snapshot
+	@Benchmark
+	public Object parseJson() throws Exception {
+		return new JsonFileBackedDAO().readProps(json);
+	}
+
+	@Benchmark
+	public Object parseAvro() throws Exception {
+		return AvroConfigSnapshot.read(avro);
+	}
+
+	@Benchmark
+	public Object parseAvroMapped() throws Exception {
+		return AvroConfigSnapshot.map(avro);
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(ConfigLoadBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -1,14 +1,21 @@
 package org.openrtb.dsp.client;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 
 import java.io.FileNotFoundException;
 import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 
 import org.junit.Test;
 import org.openrtb.dsp.intf.model.DSPException;
+import org.openrtb.dsp.intf.model.DemandSideSnapshot;
 import org.openrtb.dsp.intf.model.RTBAdvertiser;
 import org.openrtb.dsp.intf.model.RTBExchange;
 
@@ -75,12 +82,86 @@ public class JsonFileBackedDAOTest
     {
         URL url = this.getClass().getResource(jsonFile);
         dao.loadData(url.getPath());
-        ConcurrentMap<String, RTBAdvertiser> advertisers = dao.getAdvertisers();
+        Map<String, RTBAdvertiser> advertisers = dao.getSnapshot().getAdvertisers();
         assertTrue("expected size of advertisers is", advertisers.size() == 1);
-        ConcurrentMap<String, RTBExchange> exchanges = dao.getExchanges();
+        Map<String, RTBExchange> exchanges = dao.getSnapshot().getExchanges();
         assertTrue("expected size of exchange is", exchanges.size() == 1);
     }
 
+    /**
+	 * This method test that the deprecated map getters are read-only views of
+	 * the snapshot, which holds the only copy.
+	 */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void mapGettersAreReadOnlyViews() throws DSPException
+    {
+        dao.loadData(getClass().getResource(jsonFile).getPath());
+        ConcurrentMap<String, RTBAdvertiser> advertisers = dao.getAdvertisers();
+        assertEquals(dao.getSnapshot().getAdvertisers(), advertisers);
+        assertEquals(dao.getSnapshot().getExchanges(), dao.getExchanges());
+        RTBAdvertiser adv = advertisers.values().iterator().next();
+        try
+        {
+            advertisers.put("another", adv);
+            fail("the view is read-only");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            assertNull(dao.getSnapshot().getAdvertiser("another"));
+        }
+        try
+        {
+            advertisers.putIfAbsent("another", adv);
+            fail("the view is read-only");
+        }
+        catch (UnsupportedOperationException e)
+        {
+        }
+        try
+        {
+            dao.getExchanges().clear();
+            fail("the view is read-only");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            assertEquals(1, dao.getSnapshot().getExchanges().size());
+        }
+    }
+
+    /**
+	 * This method test that a reload replaces the data as a whole, and that a
+	 * failed one leaves the previous data published.
+	 */
+    @Test
+    public void reloadReplacesSnapshot() throws DSPException
+    {
+        dao.loadData(getClass().getResource(jsonFile).getPath());
+        DemandSideSnapshot first = dao.getSnapshot();
+        Map<String, RTBAdvertiser> firstAdvertisers = first.getAdvertisers();
+
+        dao.loadData(getClass().getResource(jsonFileForConcurrencyTest).getPath());
+        assertEquals(first.getVersion() + 1, dao.getSnapshot().getVersion());
+        assertEquals(Collections.singleton("MyPage1"), dao.getSnapshot().getAdvertisers().keySet());
+        assertTrue("the previous load is left as it was", firstAdvertisers.containsKey("MyPage"));
+        assertEquals(300, dao.getConfig().forExchange("BigAdExchange1").getRequestTimeout());
+        assertEquals(2000, dao.getConfig().forExchange("BigAdExchange1").getOfferTimeout());
+        assertEquals(4500, dao.getConfig().forExchange("OtherExchange").getRequestTimeout());
+
+        DemandSideSnapshot second = dao.getSnapshot();
+        try
+        {
+            dao.loadData(getClass().getResource(incorrectFormatProperties).getPath());
+            fail("the file is not valid");
+        }
+        catch (DSPException e)
+        {
+            assertSame(second, dao.getSnapshot());
+            assertEquals(second.getServerPort(), dao.getServerPort());
+            assertEquals(second.getRequestTimeout(), dao.getDefaultTimeout("request_timeout"));
+        }
+    }
+
     /**
 	 * This method test the Validate loadData property for Concurrency Test .
 	 */
@@ -104,8 +185,9 @@ public class JsonFileBackedDAOTest
             {
                 URL url = getClass().getResource(jsonFileForConcurrencyTest);
         		dao.loadData(url.getPath());
-                ConcurrentMap<String, RTBAdvertiser> advertisers = dao.getAdvertisers();
-                assertTrue("expected size of advertisers is ", advertisers.size() == 2);
+                Map<String, RTBAdvertiser> advertisers = dao.getSnapshot().getAdvertisers();
+                assertTrue("expected size of advertisers is ", advertisers.size() == 1);
+                assertTrue("the advertisers of the file only", advertisers.containsKey("MyPage1"));
             }
             catch (DSPException e)
             {
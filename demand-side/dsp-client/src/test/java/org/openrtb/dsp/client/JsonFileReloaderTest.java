@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openrtb.dsp.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrtb.dsp.intf.model.DSPException;
+
+/**
+ * Test that the JsonFileReloader reloads changed files once they settle, and
+ * keeps the loaded configuration when a file is rejected.
+ */
+public class JsonFileReloaderTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+	private JsonFileBackedDAO dao;
+
+	@Before
+	public void setUp() throws IOException, DSPException {
+		file = new File(folder.getRoot(), "dspConf.json");
+		copy("/properties.json", 0);
+		dao = new JsonFileBackedDAO();
+		dao.loadData(file.getPath());
+	}
+
+	@Test
+	public void reloadsChangedFile() throws IOException {
+		JsonFileReloader reloader = new JsonFileReloader(dao, 1000, 0);
+		reloader.watch();
+		assertFalse("nothing changed", reloader.poll());
+		assertEquals(-1, reloader.getLastReloadLatency());
+
+		long version = dao.getSnapshot().getVersion();
+		copy("/jsonFileForConcurrencyTest.json", 2000);
+		assertTrue(reloader.poll());
+		assertEquals(version + 1, dao.getSnapshot().getVersion());
+		assertTrue(dao.getSnapshot().getAdvertisers().containsKey("MyPage1"));
+		assertEquals(1, reloader.getReloadCount());
+		assertTrue(reloader.getLastReloadLatency() >= 0);
+		assertFalse("loaded once", reloader.poll());
+	}
+
+	@Test
+	public void waitsForFileToSettle() throws IOException {
+		JsonFileReloader reloader = new JsonFileReloader(dao, 1000, 60000);
+		reloader.watch();
+		copy("/jsonFileForConcurrencyTest.json", 2000);
+		assertFalse(reloader.poll());
+		assertFalse(reloader.poll());
+		assertEquals(0, reloader.getReloadCount());
+		assertTrue(dao.getSnapshot().getAdvertisers().containsKey("MyPage"));
+	}
+
+	@Test
+	public void keepsConfigurationOnError() throws IOException {
+		JsonFileReloader reloader = new JsonFileReloader(dao, 1000, 0);
+		reloader.watch();
+		long version = dao.getSnapshot().getVersion();
+
+		copy("/incorrectFormatProperties.json", 2000);
+		assertFalse(reloader.poll());
+		assertEquals(1, reloader.getFailedReloadCount());
+		assertEquals(version, dao.getSnapshot().getVersion());
+		assertTrue(dao.getSnapshot().getAdvertisers().containsKey("MyPage"));
+		assertFalse("not retried until changed", reloader.poll());
+		assertEquals(1, reloader.getFailedReloadCount());
+
+		copy("/jsonFileForConcurrencyTest.json", 4000);
+		assertTrue(reloader.poll());
+		assertEquals(version + 1, dao.getSnapshot().getVersion());
+	}
+
+	@Test
+	public void rejectsDuplicateAdvertisers() throws IOException {
+		String json = "{\"serverport\": 8888, \"requestTO\": 4500, \"offerTO\": 2000, \"exchanges\": [], "
+				+ "\"advertisers\": [ {\"landingPage\": \"MyPage\"}, {\"landingPage\": \"MyPage\"} ] }";
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(json.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		try {
+			dao.loadData(file.getPath());
+			fail("duplicates are rejected");
+		} catch (DSPException e) {
+			assertTrue(e.getMessage().contains("advertiser #1"));
+		}
+	}
+
+	// replaces the file with a test resource, moving its modification time on
+	private void copy(String resource, long later) throws IOException {
+		long lastModified = file.lastModified();
+		InputStream in = getClass().getResourceAsStream(resource);
+		OutputStream out = new FileOutputStream(file);
+		try {
+			byte[] buffer = new byte[4096];
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+				out.write(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+			out.close();
+		}
+		if (later > 0) {
+			file.setLastModified(lastModified + later);
+		}
+	}
+}
@@ -266,4 +266,30 @@ public class StatefulBidderTest {
 		assertTrue("Response should have valid response ID ", response.getId()=="ad1d762d6d9719b6b3c9e09f6433a76d9b593738");
 	}
 
+	/**
+	 * This method test that a win notification reaches the transaction holding the offered bids
+	 */
+	@Test
+	public void notifyWinTest() throws AvroRemoteException {
+		RTBRequestWrapper wReq = new RTBRequestWrapper(request);
+		RTBExchange exchange = new RTBExchange("BigAdExchange",
+				"http://bigadex.com/rtb", "application/json");
+		Map<String, String> seats = new HashMap<String, String>();
+		seats.put("BigAdExchange", "1001");
+		RTBAdvertiser adv = new RTBAdvertiser("MyPage", "BigBrandIndia",
+				"http://bigbrand-adserver.com/nurl", new ArrayList<String>(), seats);
+		Map<String, RTBAdvertiser> advertisers = new HashMap<String, RTBAdvertiser>();
+		advertisers.put(adv.getLandingPage(), adv);
+		wReq.setContext(exchange, advertisers, 2000, 5000);
+		BidResponse response = bidder.process(wReq);
+		assertNotNull("Response should not be empty ", response);
+		assertTrue("Offer should be open", bidder.getOpenTransactions() == 1);
+
+		assertTrue("Win should be accepted",
+				bidder.notifyWin("ad1d762d6d9719b6b3c9e09f6433a76d9b593738"));
+		assertTrue("Transaction should be complete", bidder.getOpenTransactions() == 0);
+		assertTrue("Second win should be ignored",
+				!bidder.notifyWin("ad1d762d6d9719b6b3c9e09f6433a76d9b593738"));
+	}
+
 }
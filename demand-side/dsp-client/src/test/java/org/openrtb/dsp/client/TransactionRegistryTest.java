@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openrtb.dsp.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrtb.common.util.statemachines.HashedWheelTimer;
+
+/**
+ * Test that the TransactionRegistry bounds and expires its entries.
+ */
+public class TransactionRegistryTest {
+	private HashedWheelTimer timer;
+	private TransactionRegistry<String> registry;
+
+	@Before
+	public void setUp() {
+		timer = new HashedWheelTimer("registry-test", 5, TimeUnit.MILLISECONDS, 16);
+		registry = new TransactionRegistry<String>(2, timer);
+	}
+
+	@After
+	public void tearDown() {
+		timer.stop();
+	}
+
+	/**
+	 * This method test that a full registry refuses new transactions
+	 */
+	@Test
+	public void capacityTest() {
+		assertTrue(registry.register("req1", "txn1", 10000));
+		assertTrue(registry.register("req2", "txn2", 10000));
+		assertFalse("registry should be full", registry.register("req3", "txn3", 10000));
+		assertEquals(2, registry.size());
+		assertEquals(1, registry.getRejectedCount());
+
+		assertEquals("txn1", registry.remove("req1"));
+		assertTrue("room after a removal", registry.register("req3", "txn3", 10000));
+		assertEquals("txn3", registry.get("req3"));
+	}
+
+	/**
+	 * This method test that an id cannot be registered twice
+	 */
+	@Test
+	public void duplicateIdTest() {
+		assertTrue(registry.register("req1", "txn1", 10000));
+		assertFalse(registry.register("req1", "other", 10000));
+		assertEquals("txn1", registry.get("req1"));
+		assertEquals(1, registry.size());
+	}
+
+	/**
+	 * This method test that transactions are evicted once their time to live elapses
+	 */
+	@Test
+	public void evictionTest() throws InterruptedException {
+		assertTrue(registry.register("req1", "txn1", 50));
+		Thread.sleep(300);
+		assertNull("transaction should have been evicted", registry.get("req1"));
+		assertEquals(0, registry.size());
+		assertEquals(1, registry.getEvictedCount());
+		assertEquals("no eviction timer left behind", 0, timer.getPendingCount());
+	}
+
+	/**
+	 * This method test that removing a transaction cancels its eviction
+	 */
+	@Test
+	public void removeCancelsEvictionTest() throws InterruptedException {
+		assertTrue(registry.register("req1", "txn1", 50));
+		assertEquals(1, timer.getPendingCount());
+		assertEquals("txn1", registry.remove("req1"));
+		assertNull(registry.remove("req1"));
+		assertEquals(0, timer.getPendingCount());
+		Thread.sleep(150);
+		assertEquals(0, registry.getEvictedCount());
+	}
+}
@@ -31,16 +31,30 @@
  */
 package org.openrtb.dsp.core;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.HttpException;
-import org.apache.commons.httpclient.HttpStatus;
-import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.commons.httpclient.methods.StringRequestEntity;
 import org.openrtb.common.json.AdvertiserBlocklistRequestTranslator;
 import org.openrtb.common.json.AdvertiserBlocklistResponseTranslator;
 import org.openrtb.common.model.Advertiser;
@@ -48,9 +62,12 @@ import org.openrtb.common.model.AdvertiserBlocklistRequest;
 import org.openrtb.common.model.AdvertiserBlocklistResponse;
 import org.openrtb.common.model.Blocklist;
 import org.openrtb.common.model.Identification;
+import org.openrtb.common.model.Signable;
 import org.openrtb.dsp.intf.model.SupplySidePlatform;
 import org.openrtb.dsp.intf.service.AdvertiserService;
+import org.openrtb.dsp.intf.service.BlocklistSink;
 import org.openrtb.dsp.intf.service.IdentificationService;
+import org.openrtb.dsp.intf.service.StreamingAdvertiserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,8 +82,27 @@ import org.slf4j.LoggerFactory;
  * Advertisers will be sent to the SSP based upon the DSP's implementation of
  * the {@link AdvertiserService#getAdvertiserList()} implementation. For more
  * information, please refer to the {@link #requestAllBlocklists()} method.</li>
+ * <li>Incremental Blocklist Sync<br/>
+ * With <tt>incrementalSync</tt> set, each Advertiser is sent with the time of
+ * its last successful synchronization with that SSP, and SSPs that support it
+ * answer with only the blocklist entries added and removed since then. Those
+ * are handed to
+ * {@link AdvertiserService#updateAdvertiserBlocklists(SupplySidePlatform, Collection)}
+ * ; Advertisers the SSP answers with complete blocklists still go to
+ * {@link AdvertiserService#replaceBlocklists(SupplySidePlatform, Collection)}.
+ * </li>
+ * <li>Streaming<br/>
+ * If the {@link AdvertiserService} is a {@link StreamingAdvertiserService},
+ * responses are never held in memory whole: their blocklists are read into
+ * the service's {@link BlocklistSink} in chunks of <tt>chunkSize</tt>
+ * entries, and the sink is committed once the response has been verified.</li>
  * </ul>
  * 
+ * The SSPs are synchronized in parallel on a small pool of
+ * <tt>syncThreads</tt> threads, and each one is given <tt>sspTimeout</tt>
+ * milliseconds from the time its request starts. Results are handed to the
+ * {@link AdvertiserService} one at a time, as each SSP completes.
+ * 
  * @since 1.0
  */
 public class AdvertiserBlocklistRequester {
@@ -82,13 +118,122 @@ public class AdvertiserBlocklistRequester {
         RESPONSE_TRANSFORM = new AdvertiserBlocklistResponseTranslator();
     }
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+
+    public static final int DEFAULT_SYNC_THREADS = 8;
+    public static final long DEFAULT_SSP_TIMEOUT = 20000;
+
     private AdvertiserService advertiserService;
     private IdentificationService identificationService;
+    private final BlocklistTransport transport;
+    private boolean ownsTransport;
+
+    private final ThreadPoolExecutor executor;
+    private volatile long sspTimeout = DEFAULT_SSP_TIMEOUT;
+    // set while a synchronization runs, so that overlapping runs are skipped
+    private final AtomicBoolean syncing = new AtomicBoolean();
+    private volatile boolean incrementalSync;
+    private volatile int chunkSize = StreamingBlocklistResponseReader.DEFAULT_CHUNK_SIZE;
+    // SSP organization -> advertiser landing page -> last sync time (SSP clock)
+    private final ConcurrentMap<String, ConcurrentMap<String, Long>> syncTimes =
+        new ConcurrentHashMap<String, ConcurrentMap<String, Long>>();
 
     public AdvertiserBlocklistRequester(AdvertiserService advertiserService,
                                         IdentificationService identificationService) {
+        this(advertiserService, identificationService, new HttpBlocklistTransport());
+        ownsTransport = true;
+    }
+
+    public AdvertiserBlocklistRequester(AdvertiserService advertiserService,
+                                        IdentificationService identificationService,
+                                        BlocklistTransport transport) {
         this.advertiserService = advertiserService;
         this.identificationService = identificationService;
+        this.transport = transport;
+        this.executor = new ThreadPoolExecutor(DEFAULT_SYNC_THREADS, DEFAULT_SYNC_THREADS,
+                                               60, TimeUnit.SECONDS,
+                                               new LinkedBlockingQueue<Runnable>(),
+                                               new SyncThreadFactory());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * The number of SSPs synchronized at the same time.
+     */
+    public void setSyncThreads(int syncThreads) {
+        if (syncThreads <= 0) {
+            throw new IllegalArgumentException("syncThreads must be positive: " + syncThreads);
+        }
+        if (syncThreads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(syncThreads);
+            executor.setCorePoolSize(syncThreads);
+        } else {
+            executor.setCorePoolSize(syncThreads);
+            executor.setMaximumPoolSize(syncThreads);
+        }
+    }
+
+    public int getSyncThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * The time, in milliseconds, an SSP is given to answer once its request
+     * has started; slower SSPs are abandoned until the next run.
+     */
+    public void setSspTimeout(long sspTimeout) {
+        this.sspTimeout = sspTimeout;
+    }
+
+    public long getSspTimeout() {
+        return sspTimeout;
+    }
+
+    /**
+     * Whether to request only the blocklist changes since each Advertiser's
+     * last synchronization, rather than complete blocklists.
+     */
+    public void setIncrementalSync(boolean incrementalSync) {
+        this.incrementalSync = incrementalSync;
+    }
+
+    public boolean isIncrementalSync() {
+        return incrementalSync;
+    }
+
+    /**
+     * The number of blocklist entries handed to a {@link BlocklistSink} at a
+     * time, when streaming.
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Forgets all synchronization times, so that the next run requests
+     * complete blocklists again.
+     */
+    public void resetSyncTimes() {
+        syncTimes.clear();
+    }
+
+    /**
+     * Stops the synchronization threads, and the transport if it was created
+     * by this requester.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        if (ownsTransport) {
+            ((HttpBlocklistTransport)transport).shutdown();
+        }
     }
 
     /**
@@ -104,88 +249,378 @@ public class AdvertiserBlocklistRequester {
             return;
         }
 
+        if (!syncing.compareAndSet(false, true)) {
+            logger.warn("Blocklist synchronization still running from a previous run; skipping this one.");
+            return;
+        }
+        try {
+            syncAll(advertisers);
+        } finally {
+            syncing.set(false);
+        }
+    }
+
+    private void syncAll(Collection<Advertiser> advertisers) {
+        CompletionService<AdvertiserBlocklistResponse> completion =
+            new ExecutorCompletionService<AdvertiserBlocklistResponse>(executor);
+        Map<Future<AdvertiserBlocklistResponse>, SyncTask> pending =
+            new HashMap<Future<AdvertiserBlocklistResponse>, SyncTask>();
         for(SupplySidePlatform ssp : identificationService.getServiceEndpoints()) {
+            SyncTask task = new SyncTask(ssp, advertisers);
+            pending.put(completion.submit(task), task);
+        }
 
-            String organization = ssp.getDemandSideName();
-            if (organization == null) {
-                organization = identificationService.getOrganizationIdentifier();
+        try {
+            while (!pending.isEmpty()) {
+                Future<AdvertiserBlocklistResponse> done =
+                    completion.poll(nextDeadline(pending.values()), TimeUnit.MILLISECONDS);
+                if (done != null) {
+                    SyncTask task = pending.remove(done);
+                    if (task != null) {
+                        apply(task, done);
+                    }
+                }
+                expire(pending);
             }
-            Identification dsp = new Identification(organization);
-            
+        } catch (InterruptedException e) {
+            logger.warn("Blocklist synchronization interrupted; abandoning "+pending.size()+" supply-side platform(s)");
+            for (Map.Entry<Future<AdvertiserBlocklistResponse>, SyncTask> entry : pending.entrySet()) {
+                entry.getKey().cancel(true);
+                entry.getValue().abandon();
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
 
-            AdvertiserBlocklistRequest request = new AdvertiserBlocklistRequest(dsp, advertisers);
-            try {
-                request.sign(ssp.getSharedSecret(), REQUEST_TRANSFORM);
-            } catch (IOException e) {
-                logger.error("Unable to sign json request for ["+ssp.getOrganization()+"] due to exception", e);
-                continue;
+    // the time to wait for the next result: until the earliest running task
+    // is due, or a full timeout if all are still queued
+    private long nextDeadline(Collection<SyncTask> tasks) {
+        long now = System.currentTimeMillis();
+        long wait = sspTimeout;
+        for (SyncTask task : tasks) {
+            long started = task.started;
+            if (started != 0) {
+                wait = Math.min(wait, started + sspTimeout - now);
             }
+        }
+        return Math.max(wait, 1);
+    }
 
-            AdvertiserBlocklistResponse response = null;
+    private void expire(Map<Future<AdvertiserBlocklistResponse>, SyncTask> pending) {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Future<AdvertiserBlocklistResponse>, SyncTask>> itr = pending.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<Future<AdvertiserBlocklistResponse>, SyncTask> entry = itr.next();
+            long started = entry.getValue().started;
+            if (started != 0 && now - started >= sspTimeout) {
+                entry.getKey().cancel(true);
+                entry.getValue().abandon();
+                itr.remove();
+                logger.error("Request for blocklists from ["+entry.getValue().ssp.getOrganization()+"] " +
+                             "did not complete within ["+sspTimeout+"]ms; skipping it for this run");
+            }
+        }
+    }
+
+    private void apply(SyncTask task, Future<AdvertiserBlocklistResponse> done) {
+        SupplySidePlatform ssp = task.ssp;
+        AdvertiserBlocklistResponse response;
+        try {
+            response = done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            logger.error("Unable to sync blocklists with ["+ssp.getOrganization()+"] due to exception", e.getCause());
+            return;
+        }
+        if (response == null) {
+            return;
+        }
+
+        BlocklistSink sink = task.takeSink();
+        if (sink != null) {
             try {
-                response = makeRequest(ssp, REQUEST_TRANSFORM.toJSON(request));
-                if (response != null) {
-                    if (response.verify(ssp.getSharedSecret(), RESPONSE_TRANSFORM)) {
-                        advertiserService.replaceBlocklists(ssp, response.getAdvertisers());
-                    } else {
-                        logger.error("Verification of response from ["+ssp.getOrganization()+"] failed");
-                        continue;
+                sink.commit();
+            } catch (RuntimeException e) {
+                logger.error("Unable to commit blocklists from ["+ssp.getOrganization()+"] due to exception", e);
+                return;
+            }
+        } else {
+            replaceOrUpdate(ssp, response);
+        }
+
+        if (incrementalSync) {
+            recordSyncTimes(task, response);
+        }
+    }
+
+    private void replaceOrUpdate(SupplySidePlatform ssp, AdvertiserBlocklistResponse response) {
+        // advertisers returned with a timestamp only carry the changes since
+        List<Advertiser> complete = new ArrayList<Advertiser>();
+        List<Advertiser> changes = new ArrayList<Advertiser>();
+        for (Advertiser advertiser : response.getAdvertisers()) {
+            if (advertiser.getTimestamp() == null) {
+                complete.add(advertiser);
+            } else {
+                changes.add(advertiser);
+            }
+        }
+        if (!complete.isEmpty() || changes.isEmpty()) {
+            advertiserService.replaceBlocklists(ssp, complete);
+        }
+        if (!changes.isEmpty()) {
+            advertiserService.updateAdvertiserBlocklists(ssp, changes);
+        }
+    }
+
+    private void recordSyncTimes(SyncTask task, AdvertiserBlocklistResponse response) {
+        // the SSP's time, taken before it looked up the blocklists, so
+        // that nothing changed meanwhile is missed next time
+        long syncTime = response.getIdentification().getTimestamp();
+        if (syncTime <= 0) {
+            syncTime = task.started;
+        }
+        ConcurrentMap<String, Long> times = syncTimes(task.ssp);
+        for (Advertiser advertiser : response.getAdvertisers()) {
+            times.put(advertiser.getLandingPage(), syncTime);
+        }
+    }
+
+    private ConcurrentMap<String, Long> syncTimes(SupplySidePlatform ssp) {
+        ConcurrentMap<String, Long> times = syncTimes.get(ssp.getOrganization());
+        if (times == null) {
+            ConcurrentMap<String, Long> created = new ConcurrentHashMap<String, Long>();
+            times = syncTimes.putIfAbsent(ssp.getOrganization(), created);
+            if (times == null) {
+                times = created;
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Copies of the <tt>advertisers</tt> stamped with the time each was last
+     * synchronized with the SSP, if ever.
+     */
+    private Collection<Advertiser> sinceLastSync(SupplySidePlatform ssp,
+                                                 Collection<Advertiser> advertisers) {
+        Map<String, Long> times = syncTimes(ssp);
+        List<Advertiser> stamped = new ArrayList<Advertiser>(advertisers.size());
+        for (Advertiser advertiser : advertisers) {
+            stamped.add(new Advertiser(advertiser.getLandingPage(), advertiser.getName(),
+                                       times.get(advertiser.getLandingPage())));
+        }
+        return stamped;
+    }
+
+    /**
+     * Requests and verifies the blocklists of one SSP.
+     *
+     * @return the verified response, or <tt>null</tt> if there is nothing
+     *         to apply.
+     */
+    AdvertiserBlocklistResponse requestBlocklists(SupplySidePlatform ssp,
+                                                  Collection<Advertiser> advertisers) {
+        byte[] request = signedRequest(ssp, advertisers);
+        if (request == null) {
+            return null;
+        }
+
+        return makeRequest(ssp, request);
+    }
+
+    /**
+     * Requests the blocklists of one SSP, reading them into <tt>sink</tt> as
+     * they arrive.
+     *
+     * @return the verified response, without its blocklists, or
+     *         <tt>null</tt> if the exchange or verification failed, in which
+     *         case <tt>sink</tt> must be aborted.
+     */
+    AdvertiserBlocklistResponse streamBlocklists(final SupplySidePlatform ssp,
+                                                 Collection<Advertiser> advertisers,
+                                                 final BlocklistSink sink) {
+        byte[] request = signedRequest(ssp, advertisers);
+        if (request == null) {
+            return null;
+        }
+        logRequest(ssp, request);
+
+        final StreamingBlocklistResponseReader reader = new StreamingBlocklistResponseReader(chunkSize);
+        try {
+            AdvertiserBlocklistResponse response =
+                transport.post(ssp.getBatchServiceUrl(), CONTENT_TYPE, request,
+                               new BlocklistTransport.ResponseHandler<AdvertiserBlocklistResponse>() {
+                    public AdvertiserBlocklistResponse handle(InputStream body) throws IOException {
+                        return reader.read(body, ssp.getSharedSecret(), sink);
                     }
-                }
-            } catch (IOException e) {
-                logger.error("Unable to verify json response from ["+ssp.getOrganization()+"] due to exception", e);
-                continue;
+                });
+            if (response == null) {
+                logger.error("Verification of response from ["+ssp.getOrganization()+"] failed");
+            } else {
+                logResponse(response);
             }
+            return response;
+        } catch (BlocklistException e) {
+            logger.error("Request for blocklists failed for supply-side platform ["+ssp.getOrganization()+"] " +
+                         "w/ url ["+ssp.getBatchServiceUrl()+"]", e);
+            return null;
+        }
+    }
+
+    // the signed request, as UTF-8 encoded JSON, or null if it could not be signed
+    private byte[] signedRequest(SupplySidePlatform ssp, Collection<Advertiser> advertisers) {
+        String organization = ssp.getDemandSideName();
+        if (organization == null) {
+            organization = identificationService.getOrganizationIdentifier();
+        }
+        Identification dsp = new Identification(organization);
+
+        if (incrementalSync) {
+            advertisers = sinceLastSync(ssp, advertisers);
+        }
+        AdvertiserBlocklistRequest request = new AdvertiserBlocklistRequest(dsp, advertisers);
+        try {
+            return request.signToJSON(ssp.getSharedSecret(), REQUEST_TRANSFORM);
+        } catch (IOException e) {
+            logger.error("Unable to sign json request for ["+ssp.getOrganization()+"] due to exception", e);
+            return null;
         }
     }
 
     /**
-     * @param ssp
-     * @param request
-     * @return
+     * Sends the signed <tt>request</tt> to the SSP over the transport. The
+     * response is verified against the bytes received, before it is parsed.
+     *
+     * @return the parsed and verified response, or <tt>null</tt> if the
+     *         exchange or verification failed.
      */
-    AdvertiserBlocklistResponse makeRequest(SupplySidePlatform ssp, String request) {
+    AdvertiserBlocklistResponse makeRequest(final SupplySidePlatform ssp, byte[] request) {
+        logRequest(ssp, request);
+
+        try {
+            return transport.post(ssp.getBatchServiceUrl(), CONTENT_TYPE, request,
+                                  new BlocklistTransport.ResponseHandler<AdvertiserBlocklistResponse>() {
+                public AdvertiserBlocklistResponse handle(InputStream body) throws IOException {
+                    byte[] json = readFully(body);
+                    if (!Signable.verifyJSON(json, ssp.getSharedSecret())) {
+                        logger.error("Verification of response from ["+ssp.getOrganization()+"] failed");
+                        return null;
+                    }
+                    AdvertiserBlocklistResponse response = RESPONSE_TRANSFORM.fromJSON(json);
+                    logResponse(response);
+                    return response;
+                }
+            });
+        } catch (BlocklistException e) {
+            logger.error("Request for blocklists failed for supply-side platform ["+ssp.getOrganization()+"] " +
+                         "w/ url ["+ssp.getBatchServiceUrl()+"]", e);
+            return null;
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
 
+    private static void logRequest(SupplySidePlatform ssp, byte[] request) {
         if (logger.isDebugEnabled()) {
             logger.debug("Organization Name ["+ssp.getOrganization()+"]");
             logger.debug("Organization Endpoint ["+ssp.getBatchServiceUrl()+"]");
             logger.debug("Organization Secret ["+new String(ssp.getSharedSecret())+"]");
-            logger.debug("Organization Request: " + request);
+            logger.debug("Organization Request: " + new String(request, UTF8));
         }
+    }
 
-        HttpClient client = new HttpClient();
-        PostMethod post = new PostMethod(ssp.getBatchServiceUrl());
-        try {
-            post.setRequestEntity(new StringRequestEntity(request, "application/json", null));
-        } catch (UnsupportedEncodingException e) {
-            logger.error("Unable to set ["+ssp.getOrganization()+"] request's encoding type: application/json", e);
-            return null;
+    // responses can be large; only summarize them
+    private static void logResponse(AdvertiserBlocklistResponse response) {
+        if (logger.isDebugEnabled() && response != null) {
+            List<Advertiser> advertisers = response.getAdvertisers();
+            logger.debug("Organization Response: ["+(advertisers == null ? 0 : advertisers.size())+"] advertiser(s)");
         }
+    }
 
-        AdvertiserBlocklistResponse response = null;
-        try {
-            int statusCode = client.executeMethod(post);
-            if (statusCode != HttpStatus.SC_OK) {
-                logger.error("Request for blocklists failed w/ code ["+statusCode+"] " +
-                             "for supply-side platform ["+ssp.getOrganization()+"] " +
-                             "w/ url ["+ssp.getBatchServiceUrl()+"]");
-                return null;
+    private class SyncTask implements Callable<AdvertiserBlocklistResponse> {
+        final SupplySidePlatform ssp;
+        final Collection<Advertiser> advertisers;
+        // when the request started, 0 while still queued
+        volatile long started;
+
+        // a streamed response's sink, awaiting commit; guarded by this
+        private BlocklistSink sink;
+        private boolean finished;
+        private boolean abandoned;
+
+        SyncTask(SupplySidePlatform ssp, Collection<Advertiser> advertisers) {
+            this.ssp = ssp;
+            this.advertisers = advertisers;
+        }
+
+        public AdvertiserBlocklistResponse call() {
+            started = System.currentTimeMillis();
+            if (!(advertiserService instanceof StreamingAdvertiserService)) {
+                return requestBlocklists(ssp, advertisers);
             }
-            response = RESPONSE_TRANSFORM.fromJSON(new InputStreamReader(post.getResponseBodyAsStream()));
-            if (logger.isDebugEnabled()) {
-                logger.debug("Organization Response: " + RESPONSE_TRANSFORM.toJSON(response));
+
+            BlocklistSink opened = ((StreamingAdvertiserService)advertiserService).openBlocklistSink(ssp);
+            AdvertiserBlocklistResponse response = null;
+            try {
+                response = streamBlocklists(ssp, advertisers, opened);
+            } finally {
+                synchronized (this) {
+                    finished = true;
+                    if (response != null && !abandoned) {
+                        sink = opened;
+                        opened = null;
+                    }
+                }
+                if (opened != null) {
+                    opened.abort();
+                }
+            }
+            return opened == null ? response : null;
+        }
+
+        /**
+         * The sink to commit, if this task streamed its response; the caller
+         * becomes responsible for it.
+         */
+        synchronized BlocklistSink takeSink() {
+            BlocklistSink taken = sink;
+            sink = null;
+            return taken;
+        }
+
+        /**
+         * Called once the result of this task is no longer wanted; whichever
+         * of this and the task finishing comes last aborts the sink.
+         */
+        void abandon() {
+            BlocklistSink abandonedSink;
+            synchronized (this) {
+                abandoned = true;
+                abandonedSink = finished ? takeSink() : null;
+            }
+            if (abandonedSink != null) {
+                abandonedSink.abort();
             }
-        } catch (HttpException e) {
-            logger.error("Unable to send JSON request to ["+ssp.getOrganization()+"] " +
-                         "at ["+ssp.getBatchServiceUrl()+"]", e);
-            return null;
-        } catch (IOException e) {
-            logger.error("Unable to process JSON response from ["+ssp.getOrganization()+"]", e);
-            return null;
-        } finally {
-            post.releaseConnection();
         }
+    }
 
-        return response;
+    private static class SyncThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "blocklist-sync-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+
+/**
+ * Per-thread pool of the Avro {@link BinaryDecoder}, {@link BinaryEncoder} and
+ * response buffer used on the binary bid path.
+ *
+ * The Avro factories accept a previously built decoder/encoder and re-point it
+ * at a new stream instead of allocating a new one (and its internal buffers).
+ * Each thread keeps the last instance it used and hands it back to the factory
+ * on the next request, so a steady stream of requests allocates nothing but
+ * the decoded records themselves.
+ */
+public class BidBufferPool {
+
+	// responses above this size are not kept around once written, so a single
+	// oversized response does not pin a large array to the thread forever
+	public static final int DEFAULT_MAX_RETAINED_BYTES = 64 * 1024;
+
+	private static final int INITIAL_BUFFER_BYTES = 4 * 1024;
+
+	private final DecoderFactory decoderFactory;
+	private final EncoderFactory encoderFactory;
+	private final int maxRetainedBytes;
+
+	private final ThreadLocal<Slot> slots = new ThreadLocal<Slot>() {
+		@Override
+		protected Slot initialValue() {
+			return new Slot();
+		}
+	};
+
+	public BidBufferPool(DecoderFactory decoderFactory,
+			EncoderFactory encoderFactory) {
+		this(decoderFactory, encoderFactory, DEFAULT_MAX_RETAINED_BYTES);
+	}
+
+	public BidBufferPool(DecoderFactory decoderFactory,
+			EncoderFactory encoderFactory, int maxRetainedBytes) {
+		this.decoderFactory = decoderFactory;
+		this.encoderFactory = encoderFactory;
+		this.maxRetainedBytes = maxRetainedBytes;
+	}
+
+	/**
+	 * Returns the calling thread's decoder, re-initialized to read from
+	 * <tt>in</tt>.
+	 */
+	public BinaryDecoder decoder(InputStream in) {
+		Slot slot = slots.get();
+		slot.decoder = decoderFactory.binaryDecoder(in, slot.decoder);
+		return slot.decoder;
+	}
+
+	/**
+	 * Returns the calling thread's encoder, re-initialized to write to
+	 * <tt>out</tt>. The encoder buffers internally and must be flushed.
+	 */
+	public BinaryEncoder encoder(OutputStream out) {
+		Slot slot = slots.get();
+		slot.encoder = encoderFactory.binaryEncoder(out, slot.encoder);
+		return slot.encoder;
+	}
+
+	/**
+	 * Returns the calling thread's response buffer, emptied and ready to be
+	 * written to. The contents are only valid until the next call on the same
+	 * thread.
+	 */
+	public ResponseBuffer buffer() {
+		Slot slot = slots.get();
+		if (slot.buffer == null || slot.buffer.capacity() > maxRetainedBytes) {
+			slot.buffer = new ResponseBuffer(Math.min(INITIAL_BUFFER_BYTES,
+					maxRetainedBytes));
+		}
+		slot.buffer.reset();
+		return slot.buffer;
+	}
+
+	private static final class Slot {
+		BinaryDecoder decoder;
+		BinaryEncoder encoder;
+		ResponseBuffer buffer;
+	}
+
+	/**
+	 * A {@link ByteArrayOutputStream} that exposes its capacity so the pool can
+	 * drop buffers that grew past the retention limit. Use
+	 * {@link #writeTo(OutputStream)} to hand the bytes on without copying;
+	 * {@link #toByteArray()} makes the one right-sized copy needed when the
+	 * caller wants an array.
+	 */
+	public static final class ResponseBuffer extends ByteArrayOutputStream {
+
+		ResponseBuffer(int size) {
+			super(size);
+		}
+
+		int capacity() {
+			return buf.length;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.protobuf.ProtobufDatumReader;
+import org.apache.avro.protobuf.ProtobufDatumWriter;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.thrift.ThriftDatumReader;
+import org.apache.avro.thrift.ThriftDatumWriter;
+import org.openrtb.common.api.BidRequest;
+import org.openrtb.common.api.BidResponse;
+
+/**
+ * Keeps the Avro {@link DatumReader}s and {@link DatumWriter}s used to decode
+ * {@link BidRequest}s and encode {@link BidResponse}s, keyed by content type.
+ *
+ * Building a reader or writer resolves the record schema, which is far more
+ * expensive than the decode/encode work of a single bid request. The instances
+ * are not guaranteed to be thread safe, so each thread builds its own the
+ * first time it sees a content type and reuses it from then on. Lookups are
+ * counted as hits (instance reused) or misses (instance built) so the
+ * effectiveness of the cache can be monitored.
+ */
+public class BidCodecRegistry {
+
+	private final ConcurrentMap<String, ThreadLocal<DatumReader<BidRequest>>> readers = new ConcurrentHashMap<String, ThreadLocal<DatumReader<BidRequest>>>();
+	private final ConcurrentMap<String, ThreadLocal<DatumWriter<BidResponse>>> writers = new ConcurrentHashMap<String, ThreadLocal<DatumWriter<BidResponse>>>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Returns the calling thread's reader for <tt>contentType</tt>, building it
+	 * on first use.
+	 *
+	 * @return the reader, or <tt>null</tt> if the content type is not a
+	 *         supported binary encoding.
+	 */
+	public DatumReader<BidRequest> getDatumReader(String contentType) {
+		if (!isSupported(contentType)) {
+			return null;
+		}
+		ThreadLocal<DatumReader<BidRequest>> local = readers.get(contentType);
+		if (local == null) {
+			readers.putIfAbsent(contentType, new ThreadLocal<DatumReader<BidRequest>>());
+			local = readers.get(contentType);
+		}
+		DatumReader<BidRequest> reader = local.get();
+		if (reader == null) {
+			misses.incrementAndGet();
+			reader = newDatumReader(contentType);
+			local.set(reader);
+		} else {
+			hits.incrementAndGet();
+		}
+		return reader;
+	}
+
+	/**
+	 * Returns the calling thread's writer for <tt>contentType</tt>, building it
+	 * on first use.
+	 *
+	 * @return the writer, or <tt>null</tt> if the content type is not a
+	 *         supported binary encoding.
+	 */
+	public DatumWriter<BidResponse> getDatumWriter(String contentType) {
+		if (!isSupported(contentType)) {
+			return null;
+		}
+		ThreadLocal<DatumWriter<BidResponse>> local = writers.get(contentType);
+		if (local == null) {
+			writers.putIfAbsent(contentType, new ThreadLocal<DatumWriter<BidResponse>>());
+			local = writers.get(contentType);
+		}
+		DatumWriter<BidResponse> writer = local.get();
+		if (writer == null) {
+			misses.incrementAndGet();
+			writer = newDatumWriter(contentType);
+			local.set(writer);
+		} else {
+			hits.incrementAndGet();
+		}
+		return writer;
+	}
+
+	/**
+	 * Number of lookups that were served by an already built reader or writer.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Number of lookups that had to build a new reader or writer.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	// only cache known content types, the value comes from the remote side
+	// and would otherwise let the maps grow without bound
+	protected boolean isSupported(String contentType) {
+		return DemandSideServer.AVRO_BINARY_CONTENT_TYPE.equals(contentType)
+				|| DemandSideServer.PROTOBUF_CONTENT_TYPE.equals(contentType)
+				|| DemandSideServer.THRIFT_CONTENT_TYPE.equals(contentType);
+	}
+
+	protected DatumReader<BidRequest> newDatumReader(String contentType) {
+		DatumReader<BidRequest> reader = null;
+		if (contentType.equals(DemandSideServer.AVRO_BINARY_CONTENT_TYPE)) {
+			reader = new SpecificDatumReader<BidRequest>(BidRequest.SCHEMA$);
+		} else if (contentType.equals(DemandSideServer.PROTOBUF_CONTENT_TYPE)) {
+			reader = new ProtobufDatumReader<BidRequest>(BidRequest.class);
+		} else if (contentType.equals(DemandSideServer.THRIFT_CONTENT_TYPE)) {
+			reader = new ThriftDatumReader<BidRequest>(BidRequest.SCHEMA$);
+		}
+		return reader;
+	}
+
+	protected DatumWriter<BidResponse> newDatumWriter(String contentType) {
+		DatumWriter<BidResponse> writer = null;
+		if (contentType.equals(DemandSideServer.AVRO_BINARY_CONTENT_TYPE)) {
+			writer = new SpecificDatumWriter<BidResponse>(BidResponse.SCHEMA$);
+		} else if (contentType.equals(DemandSideServer.PROTOBUF_CONTENT_TYPE)) {
+			writer = new ProtobufDatumWriter<BidResponse>(BidResponse.class);
+		} else if (contentType.equals(DemandSideServer.THRIFT_CONTENT_TYPE)) {
+			writer = new ThriftDatumWriter<BidResponse>(BidResponse.class);
+		}
+		return writer;
+	}
+}
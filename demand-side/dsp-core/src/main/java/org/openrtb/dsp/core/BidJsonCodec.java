@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.specific.SpecificData;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.openrtb.common.api.BidRequest;
+import org.openrtb.common.api.BidResponse;
+
+/**
+ * Reads and writes {@link BidRequest}s and {@link BidResponse}s as JSON using
+ * the Jackson streaming API, driven by the Avro schema of the records.
+ *
+ * Because the mapping comes from the schema, the JSON field names are the
+ * same ones used by the binary encodings, and reading and writing are
+ * symmetric: anything written by this codec reads back into an equal record.
+ * Null fields are omitted on write, unknown fields are skipped on read, and
+ * field names are matched case-insensitively on read so that e.g.
+ * <tt>"id"</tt> fills the <tt>Id</tt> field of a <tt>User</tt>. Numbers sent
+ * as strings (and the reverse) are coerced the same way the object mapper
+ * used to.
+ *
+ * A single instance is thread safe and is meant to be shared; the underlying
+ * {@link JsonFactory} is created once and the per-record field lookups are
+ * resolved when the codec is built.
+ */
+public class BidJsonCodec {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	static {
+		// the caller owns the streams, e.g. the servlet request/response
+		JSON_FACTORY.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+		JSON_FACTORY.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+	}
+
+	// schemas compare structurally, the lookups are keyed by instance
+	private final Map<Schema, Map<String, Field>> fieldsBySchema = new IdentityHashMap<Schema, Map<String, Field>>();
+
+	public BidJsonCodec() {
+		index(BidRequest.SCHEMA$);
+		index(BidResponse.SCHEMA$);
+	}
+
+	public BidRequest readBidRequest(InputStream in) throws IOException {
+		return (BidRequest) read(in, BidRequest.SCHEMA$);
+	}
+
+	public BidResponse readBidResponse(InputStream in) throws IOException {
+		return (BidResponse) read(in, BidResponse.SCHEMA$);
+	}
+
+	public void writeBidRequest(BidRequest request, OutputStream out)
+			throws IOException {
+		write(request, out);
+	}
+
+	public void writeBidResponse(BidResponse response, OutputStream out)
+			throws IOException {
+		write(response, out);
+	}
+
+	private Object read(InputStream in, Schema schema) throws IOException {
+		JsonParser parser = JSON_FACTORY.createJsonParser(in);
+		try {
+			if (parser.nextToken() == null) {
+				throw new JsonParseException("No content to map",
+						parser.getCurrentLocation());
+			}
+			return readValue(parser, schema);
+		} finally {
+			parser.close();
+		}
+	}
+
+	private void write(IndexedRecord record, OutputStream out)
+			throws IOException {
+		JsonGenerator generator = JSON_FACTORY.createJsonGenerator(out,
+				JsonEncoding.UTF8);
+		try {
+			writeValue(generator, record.getSchema(), record);
+		} finally {
+			// flushes the generator's buffer into the target
+			generator.close();
+		}
+	}
+
+	// expects the parser positioned on the first token of the value
+	private Object readValue(JsonParser parser, Schema schema)
+			throws IOException {
+		JsonToken token = parser.getCurrentToken();
+		switch (schema.getType()) {
+		case UNION:
+			if (token == JsonToken.VALUE_NULL) {
+				return null;
+			}
+			return readValue(parser, nonNullBranch(schema));
+		case RECORD:
+			expect(parser, JsonToken.START_OBJECT);
+			return readRecord(parser, schema);
+		case ARRAY:
+			expect(parser, JsonToken.START_ARRAY);
+			List<Object> items = new ArrayList<Object>();
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				items.add(readValue(parser, schema.getElementType()));
+			}
+			return items;
+		case STRING:
+			if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+				throw new JsonParseException("Expected a string but was "
+						+ token, parser.getCurrentLocation());
+			}
+			return token == JsonToken.VALUE_NULL ? null : parser.getText();
+		case INT:
+			return token == JsonToken.VALUE_STRING ? Integer.valueOf(parser
+					.getText().trim()) : Integer.valueOf(parser.getIntValue());
+		case LONG:
+			return token == JsonToken.VALUE_STRING ? Long.valueOf(parser
+					.getText().trim()) : Long.valueOf(parser.getLongValue());
+		case FLOAT:
+			return token == JsonToken.VALUE_STRING ? Float.valueOf(parser
+					.getText().trim()) : Float.valueOf(parser.getFloatValue());
+		case DOUBLE:
+			return token == JsonToken.VALUE_STRING ? Double.valueOf(parser
+					.getText().trim()) : Double.valueOf(parser
+					.getDoubleValue());
+		case BOOLEAN:
+			return token == JsonToken.VALUE_STRING ? Boolean.valueOf(parser
+					.getText().trim()) : Boolean.valueOf(parser
+					.getBooleanValue());
+		case NULL:
+			return null;
+		default:
+			throw new JsonParseException("Unsupported schema type "
+					+ schema.getType(), parser.getCurrentLocation());
+		}
+	}
+
+	private Object readRecord(JsonParser parser, Schema schema)
+			throws IOException {
+		IndexedRecord record = (IndexedRecord) SpecificData.get().newRecord(
+				null, schema);
+		Map<String, Field> fields = fieldsBySchema.get(schema);
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			Field field = fields.get(name);
+			if (field == null) {
+				field = fields.get(name.toLowerCase());
+			}
+			parser.nextToken();
+			if (field == null) {
+				parser.skipChildren();
+				continue;
+			}
+			record.put(field.pos(), readValue(parser, field.schema()));
+		}
+		return record;
+	}
+
+	private void writeValue(JsonGenerator generator, Schema schema,
+			Object value) throws IOException {
+		switch (schema.getType()) {
+		case UNION:
+			if (value == null) {
+				generator.writeNull();
+			} else {
+				writeValue(generator, nonNullBranch(schema), value);
+			}
+			break;
+		case RECORD:
+			IndexedRecord record = (IndexedRecord) value;
+			generator.writeStartObject();
+			for (Field field : schema.getFields()) {
+				Object fieldValue = record.get(field.pos());
+				if (fieldValue != null) {
+					generator.writeFieldName(field.name());
+					writeValue(generator, field.schema(), fieldValue);
+				}
+			}
+			generator.writeEndObject();
+			break;
+		case ARRAY:
+			generator.writeStartArray();
+			for (Object item : (Collection<?>) value) {
+				writeValue(generator, schema.getElementType(), item);
+			}
+			generator.writeEndArray();
+			break;
+		case STRING:
+			generator.writeString(value.toString());
+			break;
+		case INT:
+			generator.writeNumber(((Integer) value).intValue());
+			break;
+		case LONG:
+			generator.writeNumber(((Long) value).longValue());
+			break;
+		case FLOAT:
+			generator.writeNumber(((Float) value).floatValue());
+			break;
+		case DOUBLE:
+			generator.writeNumber(((Double) value).doubleValue());
+			break;
+		case BOOLEAN:
+			generator.writeBoolean(((Boolean) value).booleanValue());
+			break;
+		case NULL:
+			generator.writeNull();
+			break;
+		default:
+			throw new IOException("Unsupported schema type " + schema.getType());
+		}
+	}
+
+	// the OpenRTB schema only uses unions to make a field optional
+	private static Schema nonNullBranch(Schema union) {
+		for (Schema branch : union.getTypes()) {
+			if (branch.getType() != Schema.Type.NULL) {
+				return branch;
+			}
+		}
+		return union.getTypes().get(0);
+	}
+
+	private static void expect(JsonParser parser, JsonToken expected)
+			throws JsonParseException {
+		if (parser.getCurrentToken() != expected) {
+			throw new JsonParseException("Expected " + expected + " but was "
+					+ parser.getCurrentToken(), parser.getCurrentLocation());
+		}
+	}
+
+	// builds the name -> field lookups once, for every record reachable from
+	// the root schema
+	private void index(Schema schema) {
+		switch (schema.getType()) {
+		case RECORD:
+			if (fieldsBySchema.containsKey(schema)) {
+				return;
+			}
+			Map<String, Field> fields = new HashMap<String, Field>();
+			fieldsBySchema.put(schema, fields);
+			for (Field field : schema.getFields()) {
+				fields.put(field.name().toLowerCase(), field);
+			}
+			// exact names win over lower-cased ones
+			for (Field field : schema.getFields()) {
+				fields.put(field.name(), field);
+				index(field.schema());
+			}
+			break;
+		case UNION:
+			for (Schema branch : schema.getTypes()) {
+				index(branch);
+			}
+			break;
+		case ARRAY:
+			index(schema.getElementType());
+			break;
+		case MAP:
+			index(schema.getValueType());
+			break;
+		default:
+			break;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openrtb.dsp.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The channel {@link AdvertiserBlocklistRequester} uses to exchange
+ * blocklist messages with supply-side platforms. Implementations are shared
+ * by all synchronization threads and must be thread-safe.
+ * 
+ * @see HttpBlocklistTransport
+ */
+public interface BlocklistTransport {
+
+    public static final String SPRING_NAME = "dsp.core.BlocklistTransport";
+
+    /**
+     * Consumes the body of a successful response.
+     */
+    public interface ResponseHandler<T> {
+        public T handle(InputStream body) throws IOException;
+    }
+
+    /**
+     * Posts <tt>body</tt> to <tt>url</tt> and hands the response body to
+     * <tt>handler</tt>, releasing the connection once the handler returns.
+     *
+     * @param contentType
+     *            the content type of <tt>body</tt>, e.g.
+     *            <tt>application/json; charset=UTF-8</tt>.
+     * @return whatever the <tt>handler</tt> returned.
+     * @throws BlocklistException
+     *             if the request could not be sent, the SSP did not answer
+     *             with a <tt>200</tt>, or the handler failed.
+     */
+    public <T> T post(String url, String contentType, byte[] body,
+                      ResponseHandler<T> handler) throws BlocklistException;
+
+}
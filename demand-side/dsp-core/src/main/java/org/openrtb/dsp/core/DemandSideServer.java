@@ -31,12 +31,10 @@
  */
 package org.openrtb.dsp.core;
 
-import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
 
 import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.DatumWriter;
@@ -44,26 +42,21 @@ import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.io.Encoder;
 import org.apache.avro.io.EncoderFactory;
-import org.apache.avro.protobuf.ProtobufDatumReader;
-import org.apache.avro.protobuf.ProtobufDatumWriter;
-import org.apache.avro.specific.SpecificDatumReader;
-import org.apache.avro.specific.SpecificDatumWriter;
-import org.apache.avro.thrift.ThriftDatumReader;
-import org.apache.avro.thrift.ThriftDatumWriter;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.openrtb.common.api.BidRequest;
 import org.openrtb.common.api.BidResponse;
 import org.openrtb.common.api.OpenRTBAPI;
 import org.openrtb.common.util.StringUtils;
 import org.openrtb.dsp.intf.model.DSPException;
 import org.openrtb.dsp.intf.model.DemandSideDAO;
+import org.openrtb.dsp.intf.model.RTBExchange;
 import org.openrtb.dsp.intf.model.RTBRequestWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
 
 public class DemandSideServer {
+	public static final String SPRING_NAME = "dsp.core.DemandSideServer";
+
 	public DemandSideServer() {
 		super();
 	}
@@ -78,6 +71,13 @@ public class DemandSideServer {
 	// and returns a new instance of BidResponse object or null
 	private OpenRTBAPI bidder = null;
 
+	private final BidCodecRegistry codecs = new BidCodecRegistry();
+
+	private final BidJsonCodec jsonCodec = new BidJsonCodec();
+
+	private final BidBufferPool buffers = new BidBufferPool(DECODER_FACTORY,
+			ENCODER_FACTORY);
+
 	// TODO: private BlocklistAPI blocklistRequester = null;
 
 	public DemandSideServer(OpenRTBAPI bidder, DemandSideDAO dao) {
@@ -89,28 +89,17 @@ public class DemandSideServer {
 		dspDAO.loadData(dbLocation);
 	}
 
-	// DemandSideDAO requires ConcurrentMap implementation for storing Exchanges
-	// hence, get() access to this is threadsafe
+	// the DAO's snapshot is immutable, so looking the exchange up in it needs
+	// no locking
 	public boolean authorizeRemoteService(String sspOrgName) {
-		if (dspDAO.getExchanges().get(sspOrgName) != null) {
-			return true;
-		}
-		return false;
+		return dspDAO.getSnapshot().getExchange(sspOrgName) != null;
 	}
 
-	// Though access to ConcurrentMap.get() is thread-safe, accessing underlying
-	// object's methods
-	// is not guaranteed to be thread safe, hence synchronized access to this
-	// method
-	public synchronized boolean verifyContentType(String sspName,
+	public boolean verifyContentType(String sspName,
 			String contentType) throws DSPException {
-		if (authorizeRemoteService(sspName)) {
-			if (dspDAO.getExchanges().get(sspName).getRtbContentType()
-					.equals(contentType)) {
-				return true;
-			}
-		}
-		return false;
+		RTBExchange exchange = dspDAO.getSnapshot().getExchange(sspName);
+		return exchange != null
+				&& exchange.getRtbContentType().equals(contentType);
 	}
 
 	// we dont use avro / ipc - just use basic avro.io classes to translate
@@ -121,28 +110,59 @@ public class DemandSideServer {
 		try {			
 			// create a new BidRequest object by decoding the input stream
 			BidRequest bidRequest = readRequest(inStream, requestContentType);
+			BidResponse bidResponse = process(sspName, bidRequest);
+			// encode the resulting BidResponse object in the expected encoding
+			// format
+			return writeResponse(bidResponse, requestContentType);
+		} catch (DSPException e) {
+			throw e;
+		} catch (Exception e) {
+			logger.error(StringUtils.stackTraceToString(e));
+			throw new DSPException(e);
+		}
+	}
+
+	/**
+	 * Runs an already decoded request through the bidder. This is the part of
+	 * {@link #respond(String, InputStream, String)} that sits between decoding
+	 * and encoding, for front ends that handle the wire format themselves.
+	 *
+	 * @return the bidder's response, or <tt>null</tt> for no bid.
+	 */
+	public BidResponse process(String sspName, BidRequest bidRequest)
+			throws DSPException {
+		try {
 			// wrap this request object with additional info from the DAO
 			RTBRequestWrapper wReq = new RTBRequestWrapper(bidRequest);
-			long reqTimeout = dspDAO.getDefaultTimeout("request_timeout");
-			long offerTimeout = dspDAO.getDefaultTimeout("offer_timeout");
-
-			// copy the context into the newly created wrapped request,
-			// the bidder always reads from this local copy of the context
-			wReq.setContext(dspDAO.getExchanges().get(sspName),
-					dspDAO.getAdvertisers(), reqTimeout, offerTimeout);
+			// point the request at the current snapshot of the DAO, the
+			// bidder sees this one version even if the DAO reloads meanwhile
+			wReq.setContext(sspName, dspDAO.getSnapshot());
 
 			// process the request in the bidder implementation instance
-			BidResponse bidResponse = bidder.process(wReq);			
-			// encode the resulting BidResponse object in the expected encoding
-			// format
-			
-			return writeResponse(bidResponse, requestContentType);
+			return bidder.process(wReq);
 		} catch (Exception e) {
 			logger.error(StringUtils.stackTraceToString(e));
 			throw new DSPException(e);
 		}
 	}
 
+	/**
+	 * The configured time, in milliseconds, an exchange waits for a response
+	 * when the request itself does not carry a <tt>tmax</tt>.
+	 */
+	public long getRequestTimeout() {
+		return dspDAO.getSnapshot().getRequestTimeout();
+	}
+
+	/**
+	 * The time, in milliseconds, the exchange waits for a response when the
+	 * request does not carry a <tt>tmax</tt>: its own setting if it has one,
+	 * the configured default otherwise.
+	 */
+	public long getRequestTimeout(String sspName) {
+		return dspDAO.getConfig().forExchange(sspName).getRequestTimeout();
+	}
+
 	protected static DecoderFactory DECODER_FACTORY = DecoderFactory.get();
 	protected static EncoderFactory ENCODER_FACTORY = EncoderFactory.get();
 	protected static final String JSON_CONTENT_TYPE = "application/json";
@@ -150,40 +170,30 @@ public class DemandSideServer {
 	protected static final String PROTOBUF_CONTENT_TYPE = "application/x-protobuf";
 	protected static final String AVRO_BINARY_CONTENT_TYPE = "avro/binary";
 
+	// the decoder and encoder are recycled per thread through the buffer pool
+	// instead of being allocated (with their internal buffers) per request
 	protected Decoder getBidRequestDecoder(InputStream is, String contentType)
 			throws IOException {
-		Decoder decoder = null;		
-		return decoder = DECODER_FACTORY.binaryDecoder(is, null);		
+		return buffers.decoder(is);
 	}
 
 	protected Encoder getBidResponseEncoder(OutputStream out, String contentType)
 			throws IOException {
-		Encoder encoder = null;		
-		return	encoder = ENCODER_FACTORY.binaryEncoder(out, null);	
+		return buffers.encoder(out);
 	}
 
+	// readers and writers are built once per content type (and thread) rather
+	// than once per request
 	protected DatumReader<BidRequest> getDatumReader(String contentType) {
-		DatumReader<BidRequest> reader = null;
-		if (contentType.equals(AVRO_BINARY_CONTENT_TYPE)){
-			reader = new SpecificDatumReader<BidRequest>(BidRequest.SCHEMA$);
-		} else if (contentType.equals(PROTOBUF_CONTENT_TYPE)) {
-			reader = new ProtobufDatumReader<BidRequest>(BidRequest.class);
-		} else if (contentType.equals(THRIFT_CONTENT_TYPE)) {
-			reader = new ThriftDatumReader<BidRequest>(BidRequest.SCHEMA$);
-		}
-		return reader;
+		return codecs.getDatumReader(contentType);
 	}
 
 	protected DatumWriter<BidResponse> getDatumWriter(String contentType) {
-		DatumWriter<BidResponse> writer = null;
-		if (contentType.equals(AVRO_BINARY_CONTENT_TYPE)) {
-			writer = new SpecificDatumWriter<BidResponse>(BidResponse.SCHEMA$);
-		} else if (contentType.equals(PROTOBUF_CONTENT_TYPE)) {
-			writer = new ProtobufDatumWriter<BidResponse>(BidResponse.class);
-		} else if (contentType.equals(THRIFT_CONTENT_TYPE)) {
-			writer = new ThriftDatumWriter<BidResponse>(BidResponse.class);
-		}
-		return writer;
+		return codecs.getDatumWriter(contentType);
+	}
+
+	public BidCodecRegistry getCodecRegistry() {
+		return codecs;
 	}
 
 	public BidRequest readRequest(InputStream is, String contentType)
@@ -192,7 +202,7 @@ public class DemandSideServer {
 		if(contentType.equals(JSON_CONTENT_TYPE))			
 		{
 			try{			
-				bidRequest = (BidRequest)new ObjectMapper().readValue(is,BidRequest.class);			
+				bidRequest = jsonCodec.readBidRequest(is);
 			}catch(Exception ex)
 			{
 				logger.error("Json Mapping Exception : " + StringUtils.stackTraceToString(ex));
@@ -218,38 +228,38 @@ public class DemandSideServer {
 	}
 	protected byte[] writeResponse(BidResponse bidResponse, String contentType)
 			throws DSPException {
-		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		// encode into the thread's pooled buffer, the returned array is the
+		// only copy made of the serialized response
+		BidBufferPool.ResponseBuffer os = buffers.buffer();
+		writeResponse(bidResponse, contentType, os);
+		return os.toByteArray();
+	}
+
+	/**
+	 * Encodes <tt>bidResponse</tt> straight into <tt>out</tt>, e.g. the servlet
+	 * response stream, without materializing an intermediate array.
+	 */
+	public void writeResponse(BidResponse bidResponse, String contentType,
+			OutputStream out) throws DSPException {
 		if(contentType.equals(JSON_CONTENT_TYPE))
-		{		
-	        try {	        		        				
-				Gson gson = new Gson();
-				String jsonResponse = gson.toJson(bidResponse);				
-				os.write(jsonResponse.getBytes());						       
-		        return os.toByteArray();
-	        } catch (Exception ex) {
-				logger.error("Error in writing Json response : " + StringUtils.stackTraceToString(ex));	
-				throw new DSPException(ex);
-			}			
-		}	
-		else{
-			try {			
-				Encoder out = getBidResponseEncoder(os, contentType);
-				DatumWriter<BidResponse> writer = getDatumWriter(contentType);
-				writer.write(bidResponse, out);
-				out.flush();		
-			 // for all binary output, the data needs to be serialized
-				ByteBuffer serialized = ByteBuffer
-						.allocate(os.toByteArray().length);
-				serialized.put(os.toByteArray());
-				return serialized.array();
+		{
+			try {
+				jsonCodec.writeBidResponse(bidResponse, out);
 			} catch (Exception ex) {
-				logger.error("Error in writing response buffer: " +StringUtils.stackTraceToString(ex));
+				logger.error("Error in writing Json response : " + StringUtils.stackTraceToString(ex));
 				throw new DSPException(ex);
 			}
+			return;
+		}
+		try {			
+			Encoder encoder = getBidResponseEncoder(out, contentType);
+			DatumWriter<BidResponse> writer = getDatumWriter(contentType);
+			writer.write(bidResponse, encoder);
+			encoder.flush();		
+		} catch (Exception ex) {
+			logger.error("Error in writing response buffer: " +StringUtils.stackTraceToString(ex));
+			throw new DSPException(ex);
 		}
 	}
-	
-	
-	
 
 }
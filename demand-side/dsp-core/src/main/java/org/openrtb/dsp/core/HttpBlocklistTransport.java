@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openrtb.dsp.core;
+
+import java.io.IOException;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+
+/**
+ * A {@link BlocklistTransport} over pooled HTTP/1.1 connections.
+ *
+ * One {@link HttpClient} and its {@link MultiThreadedHttpConnectionManager}
+ * are shared by all requests, so connections to an SSP are kept alive and
+ * reused from one synchronization run to the next instead of being opened
+ * (and handshaken) per request. Connections left idle for longer than
+ * <tt>idleTimeout</tt> are closed in the background.
+ */
+public class HttpBlocklistTransport implements BlocklistTransport {
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 2;
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 20;
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    public static final int DEFAULT_READ_TIMEOUT = 20000;
+    public static final long DEFAULT_IDLE_TIMEOUT = 120000;
+
+    private final MultiThreadedHttpConnectionManager connectionManager;
+    private final HttpClient client;
+    private final IdleConnectionTimeoutThread idleReaper;
+
+    public HttpBlocklistTransport() {
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setDefaultMaxConnectionsPerHost(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        params.setMaxTotalConnections(DEFAULT_MAX_TOTAL_CONNECTIONS);
+        params.setConnectionTimeout(DEFAULT_CONNECT_TIMEOUT);
+        params.setSoTimeout(DEFAULT_READ_TIMEOUT);
+        // pooled connections may have been closed by the SSP meanwhile
+        params.setStaleCheckingEnabled(true);
+        client = new HttpClient(connectionManager);
+
+        idleReaper = new IdleConnectionTimeoutThread();
+        idleReaper.setName("blocklist-idle-connections");
+        idleReaper.setConnectionTimeout(DEFAULT_IDLE_TIMEOUT);
+        idleReaper.setTimeoutInterval(DEFAULT_IDLE_TIMEOUT / 2);
+        idleReaper.addConnectionManager(connectionManager);
+        idleReaper.start();
+    }
+
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        connectionManager.getParams().setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+    }
+
+    public void setMaxTotalConnections(int maxTotalConnections) {
+        connectionManager.getParams().setMaxTotalConnections(maxTotalConnections);
+    }
+
+    /**
+     * The time, in milliseconds, to establish a connection.
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        connectionManager.getParams().setConnectionTimeout(connectTimeout);
+    }
+
+    /**
+     * The time, in milliseconds, to wait for data from an open connection.
+     */
+    public void setReadTimeout(int readTimeout) {
+        connectionManager.getParams().setSoTimeout(readTimeout);
+    }
+
+    /**
+     * The time, in milliseconds, after which an unused connection is closed.
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        idleReaper.setConnectionTimeout(idleTimeout);
+        idleReaper.setTimeoutInterval(Math.max(idleTimeout / 2, 1));
+    }
+
+    /**
+     * Closes all connections and stops the idle connection thread.
+     */
+    public void shutdown() {
+        idleReaper.shutdown();
+        connectionManager.shutdown();
+    }
+
+    @Override
+    public <T> T post(String url, String contentType, byte[] body,
+                      ResponseHandler<T> handler) throws BlocklistException {
+        PostMethod post = new PostMethod(url);
+        post.setRequestEntity(new ByteArrayRequestEntity(body, contentType));
+        try {
+            int statusCode = client.executeMethod(post);
+            if (statusCode != HttpStatus.SC_OK) {
+                // drain what is left so the connection can be reused
+                post.getResponseBody();
+                throw new BlocklistException("Request failed w/ code ["+statusCode+"] " +
+                                             "for url ["+url+"]");
+            }
+            return handler.handle(post.getResponseBodyAsStream());
+        } catch (IOException e) {
+            throw new BlocklistException("Unable to exchange blocklists with ["+url+"]", e);
+        } finally {
+            post.releaseConnection();
+        }
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openrtb.dsp.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openrtb.common.model.Advertiser;
+import org.openrtb.common.model.AdvertiserBlocklistResponse;
+import org.openrtb.common.model.Blocklist;
+import org.openrtb.common.model.Identification;
+import org.openrtb.common.model.Status;
+import org.openrtb.common.model.Signable;
+import org.openrtb.dsp.intf.service.BlocklistSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads an {@link AdvertiserBlocklistResponse} from its JSON form one token
+ * at a time, handing the {@link Blocklist} entries to a {@link BlocklistSink}
+ * in chunks instead of building the response's object graph.
+ * 
+ * The signature is checked on the fly, the way
+ * {@link Signable#verifyJSON(byte[], byte[])} checks it: the raw bytes read
+ * are fed to the digest as they pass, except for the identification's
+ * <tt>token</tt> member and one adjoining comma, so the response verifies
+ * whatever its formatting or escaping. Bytes are held back only until the
+ * parser is past them and they cannot belong to the token, so memory use is
+ * bounded by the chunk size and the parser's buffer, whatever the size of the
+ * response.
+ * 
+ * The advertiser fields must precede its blocklists, as they do in the
+ * property order of {@link Advertiser}.
+ */
+public class StreamingBlocklistResponseReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingBlocklistResponseReader.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory FACTORY = MAPPER.getJsonFactory();
+    static {
+        FACTORY.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+    }
+
+    private final int chunkSize;
+
+    public StreamingBlocklistResponseReader() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public StreamingBlocklistResponseReader(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Reads the response from <tt>in</tt>, to its end, passing its blocklists
+     * to <tt>sink</tt>. The sink is neither committed nor aborted; that is up
+     * to the caller, depending on the outcome.
+     * 
+     * @return the response without its blocklists (identification, status and
+     *         the advertisers themselves) if its signature matches
+     *         <tt>sharedSecret</tt>, <tt>null</tt> otherwise.
+     * @throws IOException
+     *             if the response cannot be read or is not valid JSON.
+     */
+    public AdvertiserBlocklistResponse read(InputStream in, byte[] sharedSecret,
+                                            BlocklistSink sink) throws IOException {
+        MessageDigest md5 = Signable.signatureDigest();
+        DigestingInputStream digesting = new DigestingInputStream(in, md5);
+        JsonParser parser = FACTORY.createJsonParser(digesting);
+        AdvertiserBlocklistResponse response = new AdvertiserBlocklistResponse();
+        String token = null;
+        boolean identified = false;
+        try {
+            expect(parser.nextToken(), JsonToken.START_OBJECT, parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if ("identification".equals(field) && !identified) {
+                    identified = true;
+                    Identification identification = new Identification();
+                    token = readIdentification(parser, digesting, identification);
+                    response.setIdentification(identification);
+                    continue;
+                }
+                digesting.release(offset(parser));
+                if ("status".equals(field)) {
+                    parser.nextToken();
+                    response.setStatus(MAPPER.readValue(parser, Status.class));
+                } else if ("advertisers".equals(field)) {
+                    readAdvertisers(parser, digesting, sink, response);
+                } else {
+                    parser.nextToken();
+                    parser.skipChildren();
+                }
+            }
+            // whatever follows the object is signed too
+            digesting.drain();
+        } finally {
+            parser.close();
+        }
+
+        if (token == null) {
+            logger.warn("This response has not been signed; nothing to verify");
+            return null;
+        }
+        String verification = Signable.token(md5, sharedSecret);
+        if (!token.equals(verification)) {
+            logger.error("Signature verification value ["+verification+"] does not match supplied value ["+token+"]");
+            return null;
+        }
+        response.setToken(token);
+        return response;
+    }
+
+    // reads the identification, cutting its token out of the digest, and
+    // returns the token
+    private String readIdentification(JsonParser parser, DigestingInputStream digesting,
+                                      Identification identification) throws IOException {
+        expect(parser.nextToken(), JsonToken.START_OBJECT, parser);
+        String token = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            // a field name's location may include its separator
+            long start = offset(parser);
+            parser.nextToken();
+            if ("token".equals(field) && token == null) {
+                if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+                    throw new JsonParseException("token is not a string", parser.getCurrentLocation());
+                }
+                token = parser.getText();
+                // the current location is that of the closing quote
+                digesting.cut(start, parser.getCurrentLocation().getCharOffset() + 1);
+                continue;
+            }
+            parser.skipChildren();
+            if ("organization".equals(field)) {
+                identification.setOrganization(parser.getText());
+            } else if ("timestamp".equals(field)) {
+                identification.setTimestamp(parser.getLongValue());
+            }
+        }
+        return token;
+    }
+
+    private void readAdvertisers(JsonParser parser, DigestingInputStream digesting, BlocklistSink sink,
+                                 AdvertiserBlocklistResponse response) throws IOException {
+        expect(parser.nextToken(), JsonToken.START_ARRAY, parser);
+        List<Blocklist> chunk = new ArrayList<Blocklist>(chunkSize);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            Advertiser advertiser = new Advertiser();
+            boolean started = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                boolean added = "blocklist".equals(field);
+                if (added || "removedBlocklist".equals(field)) {
+                    if (!started) {
+                        sink.startAdvertiser(advertiser);
+                        started = true;
+                    }
+                    readBlocklists(parser, digesting, sink, chunk, added);
+                    continue;
+                }
+                if (started) {
+                    throw new JsonParseException("advertiser field ["+field+"] follows its blocklists",
+                                                 parser.getCurrentLocation());
+                }
+                parser.nextToken();
+                parser.skipChildren();
+                if ("landingPageTLD".equals(field)) {
+                    advertiser.setLandingPage(parser.getText());
+                } else if ("name".equals(field)) {
+                    advertiser.setName(parser.getText());
+                } else if ("sinceThisTimestamp".equals(field)) {
+                    advertiser.setTimestamp(parser.getCurrentToken() == JsonToken.VALUE_NULL
+                                            ? null : parser.getLongValue());
+                }
+            }
+            if (!started) {
+                sink.startAdvertiser(advertiser);
+            }
+            sink.endAdvertiser();
+            response.addAdvertiser(advertiser);
+            digesting.release(offset(parser));
+        }
+        expect(parser.getCurrentToken(), JsonToken.END_ARRAY, parser);
+    }
+
+    private void readBlocklists(JsonParser parser, DigestingInputStream digesting, BlocklistSink sink,
+                                List<Blocklist> chunk, boolean added) throws IOException {
+        expect(parser.nextToken(), JsonToken.START_ARRAY, parser);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            Blocklist blocklist = new Blocklist();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                parser.skipChildren();
+                if ("publisherID".equals(field)) {
+                    blocklist.setPublisherId(parser.getText());
+                } else if ("publisherName".equals(field)) {
+                    blocklist.setPublisherName(parser.getText());
+                } else if ("siteID".equals(field)) {
+                    blocklist.setSiteId(parser.getText());
+                } else if ("siteName".equals(field)) {
+                    blocklist.setSiteName(parser.getText());
+                }
+            }
+            chunk.add(blocklist);
+            if (chunk.size() >= chunkSize) {
+                flush(sink, chunk, added);
+                digesting.release(offset(parser));
+            }
+        }
+        expect(parser.getCurrentToken(), JsonToken.END_ARRAY, parser);
+        flush(sink, chunk, added);
+    }
+
+    private static void flush(BlocklistSink sink, List<Blocklist> chunk, boolean added) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        if (added) {
+            sink.blocklistsAdded(chunk);
+        } else {
+            sink.blocklistsRemoved(chunk);
+        }
+        chunk.clear();
+    }
+
+    // for byte input, the char offsets are byte offsets
+    private static long offset(JsonParser parser) {
+        return parser.getTokenLocation().getCharOffset();
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected, JsonParser parser)
+            throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException("expected "+expected+" but found "+actual,
+                                         parser.getCurrentLocation());
+        }
+    }
+
+    /**
+     * Feeds the bytes read through it to a digest, less the span passed to
+     * {@link #cut(long, long)}. Until the cut is made, bytes are held back
+     * from the digest; {@link #release(long)} passes on those the parser is
+     * past.
+     */
+    private static class DigestingInputStream extends FilterInputStream {
+        private final MessageDigest digest;
+        // bytes read but not yet digested, from offset heldStart
+        private byte[] held = new byte[8192];
+        private int heldLength = 0;
+        private long heldStart = 0;
+        private boolean cut = false;
+        // after a cut without a preceding comma: looking for the following
+        // one, holding back the whitespace before it
+        private boolean seekingComma = false;
+        private final ByteArrayOutputStream whitespace = new ByteArrayOutputStream();
+
+        DigestingInputStream(InputStream in, MessageDigest digest) {
+            super(in);
+            this.digest = digest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int read = read(one, 0, 1);
+            return read < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                consume(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int read = read(buffer, 0, buffer.length);
+            return read < 0 ? 0 : read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        // reads, and digests, the rest of the stream
+        void drain() throws IOException {
+            byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // digested as read
+            }
+            if (!cut) {
+                release(heldStart + heldLength);
+            }
+            digest.update(whitespace.toByteArray());
+            whitespace.reset();
+        }
+
+        // digests the held bytes before offset
+        void release(long offset) {
+            if (cut || offset <= heldStart) {
+                return;
+            }
+            int count = (int) Math.min(offset - heldStart, heldLength);
+            digest.update(held, 0, count);
+            System.arraycopy(held, count, held, 0, heldLength - count);
+            heldLength -= count;
+            heldStart += count;
+        }
+
+        /**
+         * Leaves the member from the field name at <tt>start</tt> (which may
+         * point at its separator) to the closing quote before <tt>end</tt> out
+         * of the digest, with the comma before it or, failing that, the one
+         * after it.
+         */
+        void cut(long start, long end) throws IOException {
+            int from = (int) (start - heldStart);
+            int to = (int) (end - heldStart);
+            if (from < 0 || to > heldLength) {
+                throw new IOException("token is outside the bytes held back");
+            }
+            while (from < to && held[from] != '"') {
+                from++;
+            }
+            if (from == to || held[to - 1] != '"') {
+                throw new IOException("unable to locate the token");
+            }
+            int before = from - 1;
+            while (before >= 0 && isWhitespace(held[before])) {
+                before--;
+            }
+            boolean precededByComma = before >= 0 && held[before] == ',';
+            if (precededByComma) {
+                from = before;
+            }
+            digest.update(held, 0, from);
+            cut = true;
+            seekingComma = !precededByComma;
+            int rest = heldLength - to;
+            byte[] after = held;
+            held = null;
+            heldLength = 0;
+            consume(after, to, rest);
+        }
+
+        private void consume(byte[] b, int off, int len) {
+            if (!cut) {
+                if (heldLength + len > held.length) {
+                    byte[] grown = new byte[Math.max(held.length * 2, heldLength + len)];
+                    System.arraycopy(held, 0, grown, 0, heldLength);
+                    held = grown;
+                }
+                System.arraycopy(b, off, held, heldLength, len);
+                heldLength += len;
+                return;
+            }
+            if (seekingComma) {
+                int i = off;
+                while (i < off + len && isWhitespace(b[i])) {
+                    i++;
+                }
+                whitespace.write(b, off, i - off);
+                if (i == off + len) {
+                    return;
+                }
+                seekingComma = false;
+                if (b[i] == ',') {
+                    // the comma goes with the token, and so does the
+                    // whitespace before it
+                    i++;
+                } else {
+                    digest.update(whitespace.toByteArray());
+                }
+                whitespace.reset();
+                len -= i - off;
+                off = i;
+            }
+            digest.update(b, off, len);
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+        }
+    }
+}
@@ -32,7 +32,7 @@ public class AdvertiserBlocklistNeverRequest extends
     }
 
     @Override
-    AdvertiserBlocklistResponse makeRequest(SupplySidePlatform ssp, String request) {
+    AdvertiserBlocklistResponse makeRequest(SupplySidePlatform ssp, byte[] request) {
         return response;
     }
 
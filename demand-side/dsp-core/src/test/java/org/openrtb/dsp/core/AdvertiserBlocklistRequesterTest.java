@@ -31,23 +31,46 @@
  */
 package org.openrtb.dsp.core;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.openrtb.common.json.AdvertiserBlocklistRequestTranslator;
+import org.openrtb.common.json.AdvertiserBlocklistResponseTranslator;
 import org.openrtb.common.model.Advertiser;
+import org.openrtb.common.model.AdvertiserBlocklistRequest;
 import org.openrtb.common.model.AdvertiserBlocklistResponse;
+import org.openrtb.common.model.Blocklist;
+import org.openrtb.common.model.Identification;
 import org.openrtb.dsp.intf.model.SupplySidePlatform;
 import org.openrtb.dsp.intf.service.AdvertiserService;
+import org.openrtb.dsp.intf.service.BlocklistSink;
 import org.openrtb.dsp.intf.service.IdentificationService;
+import org.openrtb.dsp.intf.service.StreamingAdvertiserService;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
@@ -100,7 +123,7 @@ public class AdvertiserBlocklistRequesterTest {
 
         AdvertiserBlocklistRequester test = new AdvertiserBlocklistRequester(aService, iService) {
             @Override
-            AdvertiserBlocklistResponse makeRequest(SupplySidePlatform ssp, String request) {
+            AdvertiserBlocklistResponse makeRequest(SupplySidePlatform ssp, byte[] request) {
                 return null;
             }
         };
@@ -110,6 +133,275 @@ public class AdvertiserBlocklistRequesterTest {
         verify(aService, never()).replaceBlocklists(null, null);
     }
 
+    @Test
+    public void requestAllBlocklists_parallel() throws Exception {
+        final List<SupplySidePlatform> ssps = ssps(4);
+        // every request must be in flight at once for any of them to go on
+        final CyclicBarrier allInFlight = new CyclicBarrier(ssps.size());
+        final AtomicBoolean serialized = new AtomicBoolean();
+        AdvertiserService aService = advertiserService();
+        AdvertiserBlocklistRequester test = new AdvertiserBlocklistRequester(aService, identificationService(ssps)) {
+            @Override
+            AdvertiserBlocklistResponse makeRequest(SupplySidePlatform ssp, byte[] request) {
+                try {
+                    allInFlight.await(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    serialized.set(true);
+                    return null;
+                }
+                return signedResponse(ssp);
+            }
+        };
+        test.setSyncThreads(4);
+        test.setSspTimeout(60000);
+
+        test.requestAllBlocklists();
+        test.shutdown();
+
+        assertFalse("SSPs should be synced in parallel", serialized.get());
+        for (SupplySidePlatform ssp : ssps) {
+            verify(aService).replaceBlocklists(eq(ssp), anyAdvertisers());
+        }
+    }
+
+    @Test
+    public void requestAllBlocklists_sspTimeout() throws Exception {
+        final List<SupplySidePlatform> ssps = ssps(2);
+        // the first SSP never answers
+        final CountDownLatch never = new CountDownLatch(1);
+        final AtomicBoolean answered = new AtomicBoolean();
+        AdvertiserService aService = advertiserService();
+        AdvertiserBlocklistRequester test = new AdvertiserBlocklistRequester(aService, identificationService(ssps)) {
+            @Override
+            AdvertiserBlocklistResponse makeRequest(SupplySidePlatform ssp, byte[] request) {
+                if (ssp == ssps.get(0)) {
+                    try {
+                        never.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return null;
+                    }
+                    answered.set(true);
+                }
+                return signedResponse(ssp);
+            }
+        };
+        test.setSspTimeout(500);
+
+        try {
+            // returns only if the request that never ends is abandoned
+            test.requestAllBlocklists();
+            assertFalse("the slow SSP never answered", answered.get());
+            verify(aService, never()).replaceBlocklists(eq(ssps.get(0)), anyAdvertisers());
+            verify(aService).replaceBlocklists(eq(ssps.get(1)), anyAdvertisers());
+        } finally {
+            test.shutdown();
+            never.countDown();
+        }
+    }
+
+    @Test
+    public void requestAllBlocklists_overlappingRuns() throws Exception {
+        final List<SupplySidePlatform> ssps = ssps(1);
+        final CountDownLatch requested = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger requests = new AtomicInteger();
+        AdvertiserService aService = advertiserService();
+        final AdvertiserBlocklistRequester test = new AdvertiserBlocklistRequester(aService, identificationService(ssps)) {
+            @Override
+            AdvertiserBlocklistResponse makeRequest(SupplySidePlatform ssp, byte[] request) {
+                requests.incrementAndGet();
+                requested.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return signedResponse(ssp);
+            }
+        };
+
+        Thread first = new Thread() {
+            public void run() {
+                test.requestAllBlocklists();
+            }
+        };
+        first.start();
+        assertTrue(requested.await(5, TimeUnit.SECONDS));
+
+        test.requestAllBlocklists();
+        assertEquals("overlapping run should be skipped", 1, requests.get());
+
+        release.countDown();
+        first.join();
+        test.shutdown();
+        verify(aService, times(1)).replaceBlocklists(eq(ssps.get(0)), anyAdvertisers());
+    }
+
+    @Test
+    public void requestAllBlocklists_transport() throws Exception {
+        final List<SupplySidePlatform> ssps = ssps(2);
+        AdvertiserService aService = advertiserService();
+        InProcessBlocklistTransport transport = new InProcessBlocklistTransport();
+        // only the first SSP is reachable
+        final SupplySidePlatform ssp = ssps.get(0);
+        transport.register(ssp.getBatchServiceUrl(), new InProcessBlocklistTransport.Responder() {
+            public byte[] respond(String contentType, byte[] body) throws BlocklistException {
+                try {
+                    AdvertiserBlocklistRequest request =
+                        new AdvertiserBlocklistRequestTranslator().fromJSON(new String(body, "UTF-8"));
+                    if (!request.verify(ssp.getSharedSecret(), new AdvertiserBlocklistRequestTranslator())) {
+                        throw new BlocklistException("Request failed w/ code [403]");
+                    }
+                    return new AdvertiserBlocklistResponseTranslator().toJSON(signedResponse(ssp)).getBytes("UTF-8");
+                } catch (IOException e) {
+                    throw new BlocklistException("bad request", e);
+                }
+            }
+        });
+        AdvertiserBlocklistRequester test = new AdvertiserBlocklistRequester(aService, identificationService(ssps), transport);
+
+        test.requestAllBlocklists();
+        test.shutdown();
+
+        assertEquals(2, transport.getRequestCount());
+        verify(aService).replaceBlocklists(eq(ssp), anyAdvertisers());
+        verify(aService, never()).replaceBlocklists(eq(ssps.get(1)), anyAdvertisers());
+    }
+
+    @Test
+    public void requestAllBlocklists_incremental() throws Exception {
+        final List<SupplySidePlatform> ssps = ssps(1);
+        final SupplySidePlatform ssp = ssps.get(0);
+        final List<Long> requestedSince = Collections.synchronizedList(new ArrayList<Long>());
+        AdvertiserService aService = advertiserService();
+        InProcessBlocklistTransport transport = new InProcessBlocklistTransport();
+        transport.register(ssp.getBatchServiceUrl(), new InProcessBlocklistTransport.Responder() {
+            public byte[] respond(String contentType, byte[] body) throws BlocklistException {
+                try {
+                    AdvertiserBlocklistRequest request =
+                        new AdvertiserBlocklistRequestTranslator().fromJSON(new String(body, "UTF-8"));
+                    Advertiser requested = request.getAdvertisers().iterator().next();
+                    requestedSince.add(requested.getTimestamp());
+
+                    // answer with changes when asked for them, as of SSP time 5000
+                    AdvertiserBlocklistResponse response =
+                        new AdvertiserBlocklistResponse(new Identification(ssp.getOrganization(), 5000L), null);
+                    Advertiser advertiser = new Advertiser(requested.getLandingPage(), null, requested.getTimestamp());
+                    if (requested.getTimestamp() != null) {
+                        advertiser.addRemovedBlocklist(new Blocklist("3422", "Joe's News"));
+                    }
+                    response.addAdvertiser(advertiser);
+                    response.sign(ssp.getSharedSecret(), new AdvertiserBlocklistResponseTranslator());
+                    return new AdvertiserBlocklistResponseTranslator().toJSON(response).getBytes("UTF-8");
+                } catch (IOException e) {
+                    throw new BlocklistException("bad request", e);
+                }
+            }
+        });
+        AdvertiserBlocklistRequester test = new AdvertiserBlocklistRequester(aService, identificationService(ssps), transport);
+        test.setIncrementalSync(true);
+
+        test.requestAllBlocklists();
+        verify(aService).replaceBlocklists(eq(ssp), anyAdvertisers());
+
+        test.requestAllBlocklists();
+        verify(aService).updateAdvertiserBlocklists(eq(ssp), anyAdvertisers());
+        test.shutdown();
+
+        assertEquals("first sync is complete", null, requestedSince.get(0));
+        assertEquals("second sync is since the SSP's time of the first", Long.valueOf(5000L), requestedSince.get(1));
+    }
+
+    @Test
+    public void requestAllBlocklists_streaming() throws Exception {
+        List<SupplySidePlatform> ssps = ssps(2);
+        final SupplySidePlatform good = ssps.get(0);
+        final SupplySidePlatform forged = ssps.get(1);
+        StreamingAdvertiserService aService = mock(StreamingAdvertiserService.class);
+        when(aService.getAdvertiserList()).thenReturn(Collections.<Advertiser>singletonList(new Advertiser("a-cool-advertiser.com")));
+        BlocklistSink goodSink = mock(BlocklistSink.class);
+        BlocklistSink forgedSink = mock(BlocklistSink.class);
+        when(aService.openBlocklistSink(good)).thenReturn(goodSink);
+        when(aService.openBlocklistSink(forged)).thenReturn(forgedSink);
+
+        InProcessBlocklistTransport transport = new InProcessBlocklistTransport();
+        transport.register(good.getBatchServiceUrl(), new InProcessBlocklistTransport.Responder() {
+            public byte[] respond(String contentType, byte[] body) throws BlocklistException {
+                return responseBytes(signedResponse(good));
+            }
+        });
+        // signed with the other SSP's secret
+        transport.register(forged.getBatchServiceUrl(), new InProcessBlocklistTransport.Responder() {
+            public byte[] respond(String contentType, byte[] body) throws BlocklistException {
+                return responseBytes(signedResponse(good));
+            }
+        });
+        AdvertiserBlocklistRequester test = new AdvertiserBlocklistRequester(aService, identificationService(ssps), transport);
+        test.setChunkSize(1);
+
+        test.requestAllBlocklists();
+        test.shutdown();
+
+        verify(goodSink).blocklistsAdded(anyBlocklists());
+        verify(goodSink).commit();
+        verify(goodSink, never()).abort();
+        verify(forgedSink).abort();
+        verify(forgedSink, never()).commit();
+        verify(aService, never()).replaceBlocklists(any(SupplySidePlatform.class), anyAdvertisers());
+    }
+
+    private static Collection<Advertiser> anyAdvertisers() {
+        return anyObject();
+    }
+
+    private static List<Blocklist> anyBlocklists() {
+        return anyObject();
+    }
+
+    private static List<SupplySidePlatform> ssps(int count) {
+        List<SupplySidePlatform> ssps = new ArrayList<SupplySidePlatform>();
+        for (int i = 0; i < count; i++) {
+            ssps.add(new SupplySidePlatform("ssp-" + i, "http://ssp-" + i + ".com/blocklists",
+                                            "dsp", ("secret " + i).getBytes()));
+        }
+        return ssps;
+    }
+
+    private static AdvertiserService advertiserService() {
+        AdvertiserService aService = mock(AdvertiserService.class);
+        when(aService.getAdvertiserList()).thenReturn(Collections.<Advertiser>singletonList(new Advertiser("a-cool-advertiser.com")));
+        return aService;
+    }
+
+    private static IdentificationService identificationService(List<SupplySidePlatform> ssps) {
+        IdentificationService iService = mock(IdentificationService.class);
+        when(iService.getOrganizationIdentifier()).thenReturn("organization-identifier");
+        when(iService.getServiceEndpoints()).thenReturn(ssps);
+        return iService;
+    }
+
+    private static AdvertiserBlocklistResponse signedResponse(SupplySidePlatform ssp) {
+        AdvertiserBlocklistResponse response = new AdvertiserBlocklistResponse(new Identification(ssp.getOrganization()), null);
+        Advertiser advertiser = new Advertiser("a-cool-advertiser.com");
+        advertiser.addBlocklist(new Blocklist("3422", "Joe's News"));
+        response.addAdvertiser(advertiser);
+        try {
+            response.sign(ssp.getSharedSecret(), new AdvertiserBlocklistResponseTranslator());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return response;
+    }
+
+    private static byte[] responseBytes(AdvertiserBlocklistResponse response) throws BlocklistException {
+        try {
+            return new AdvertiserBlocklistResponseTranslator().toJSON(response).getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new BlocklistException("bad response", e);
+        }
+    }
+
     @Test @Ignore
     public void requestAllBlocklists_integration() throws Exception {
         ApplicationContext ictx = new ClassPathXmlApplicationContext(new String[] {"dsp-core.xml",
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifies the {@link BidBufferPool} recycles its decoder, encoder and buffer.
+ */
+public class BidBufferPoolTest {
+
+    private BidBufferPool test;
+
+    @Before
+    public void setup() {
+        test = new BidBufferPool(DecoderFactory.get(), EncoderFactory.get(), 1024);
+    }
+
+    @Test
+    public void encoderAndDecoderAreReused() throws Exception {
+        BidBufferPool.ResponseBuffer buffer = test.buffer();
+        BinaryEncoder encoder = test.encoder(buffer);
+        encoder.writeString("first");
+        encoder.flush();
+
+        BinaryDecoder decoder = test.decoder(new ByteArrayInputStream(buffer.toByteArray()));
+        assertEquals("first", decoder.readString(null).toString());
+
+        buffer = test.buffer();
+        assertEquals("buffer should be emptied between uses", 0, buffer.size());
+        assertSame("encoder should be recycled", encoder, test.encoder(buffer));
+        encoder.writeString("second");
+        encoder.flush();
+
+        assertSame("decoder should be recycled", decoder,
+                   test.decoder(new ByteArrayInputStream(buffer.toByteArray())));
+        assertEquals("recycled decoder should read the new stream",
+                     "second", decoder.readString(null).toString());
+    }
+
+    @Test
+    public void oversizedBufferIsDropped() throws Exception {
+        BidBufferPool.ResponseBuffer buffer = test.buffer();
+        assertSame("small buffer should be kept", buffer, test.buffer());
+
+        buffer.write(new byte[8 * 1024]);
+        assertNotSame("oversized buffer should not be retained", buffer, test.buffer());
+    }
+}
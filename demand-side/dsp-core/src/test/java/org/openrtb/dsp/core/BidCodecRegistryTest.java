@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrtb.common.api.BidRequest;
+import org.openrtb.common.api.BidResponse;
+
+/**
+ * Verifies the {@link BidCodecRegistry} builds readers and writers once per
+ * content type and thread.
+ */
+public class BidCodecRegistryTest {
+
+    private BidCodecRegistry test;
+
+    @Before
+    public void setup() {
+        test = new BidCodecRegistry();
+    }
+
+    @Test
+    public void readerIsReusedOnSameThread() {
+        DatumReader<BidRequest> first = test.getDatumReader(DemandSideServer.AVRO_BINARY_CONTENT_TYPE);
+        DatumReader<BidRequest> second = test.getDatumReader(DemandSideServer.AVRO_BINARY_CONTENT_TYPE);
+
+        assertNotNull("avro reader should be built", first);
+        assertSame("reader should be reused for the same content type", first, second);
+        assertEquals("first lookup should be a miss", 1, test.getMissCount());
+        assertEquals("second lookup should be a hit", 1, test.getHitCount());
+    }
+
+    @Test
+    public void writerIsReusedOnSameThread() {
+        DatumWriter<BidResponse> first = test.getDatumWriter(DemandSideServer.AVRO_BINARY_CONTENT_TYPE);
+        DatumWriter<BidResponse> second = test.getDatumWriter(DemandSideServer.AVRO_BINARY_CONTENT_TYPE);
+
+        assertNotNull("avro writer should be built", first);
+        assertSame("writer should be reused for the same content type", first, second);
+        assertEquals("first lookup should be a miss", 1, test.getMissCount());
+        assertEquals("second lookup should be a hit", 1, test.getHitCount());
+    }
+
+    @Test
+    public void readerIsNotSharedAcrossThreads() throws Exception {
+        DatumReader<BidRequest> mine = test.getDatumReader(DemandSideServer.AVRO_BINARY_CONTENT_TYPE);
+
+        final AtomicReference<DatumReader<BidRequest>> theirs = new AtomicReference<DatumReader<BidRequest>>();
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                theirs.set(test.getDatumReader(DemandSideServer.AVRO_BINARY_CONTENT_TYPE));
+            }
+        };
+        other.start();
+        other.join();
+
+        assertNotNull("other thread should get a reader", theirs.get());
+        assertNotSame("threads should not share a reader", mine, theirs.get());
+        assertEquals("each thread should build its own reader", 2, test.getMissCount());
+    }
+
+    @Test
+    public void unsupportedContentType() {
+        assertNull("json is not handled by an avro reader",
+                   test.getDatumReader(DemandSideServer.JSON_CONTENT_TYPE));
+        assertNull("unknown content types have no writer",
+                   test.getDatumWriter("text/plain"));
+        assertEquals("unsupported lookups are not counted", 0, test.getMissCount() + test.getHitCount());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openrtb.common.api.BidRequest;
+import org.openrtb.common.api.BidResponse;
+
+import com.google.gson.Gson;
+
+/**
+ * Compares the streaming {@link BidJsonCodec} with the per-request
+ * <tt>ObjectMapper</tt>/<tt>Gson</tt> path it replaced in
+ * {@link DemandSideServer}.
+ *
+ * Not run as part of the build; start it with
+ * <tt>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openrtb.dsp.core.BidJsonCodecBenchmark</tt>
+ * or from the IDE.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BidJsonCodecBenchmark {
+
+    private static final String REQUEST = "{\"id\":\"ad1d762\",\"at\":2,\"tmax\":150,"
+        + "\"imp\":[{\"id\":\"1\",\"bidfloor\":12.4,\"tagid\":\"30027\","
+        + "\"banner\":{\"w\":468,\"h\":60,\"battr\":[9,1,14014],\"api\":[]},"
+        + "\"video\":{\"mimes\":[\"video/x-ms-wmv\",\"video/x-flv\"],\"linearity\":1,"
+        + "\"minduration\":100,\"maxduration\":250,\"protocol\":414,\"w\":722,\"h\":30,\"startdelay\":200}}],"
+        + "\"site\":{\"id\":\"144655\",\"domain\":\"discovery.com\",\"cat\":[\"IAB1\"],\"page\":\"abc\","
+        + "\"publisher\":{\"id\":\"0\"}},"
+        + "\"wseat\":[\"w101\",\"w102\",\"w103\"],"
+        + "\"badv\":[\"a.com\",\"b.com\"],\"bcat\":[\"IAB25\",\"IAB26\"],"
+        + "\"user\":{\"id\":\"edcbabb5691ece183ca4d\"}}";
+
+    private final BidJsonCodec codec = new BidJsonCodec();
+
+    private byte[] request;
+    private BidResponse response;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() throws Exception {
+        request = REQUEST.getBytes("UTF-8");
+        response = BidJsonCodecTest.sampleResponse();
+        out = new ByteArrayOutputStream(1024);
+    }
+
+    @Benchmark
+    public BidRequest readObjectMapper() throws Exception {
+        return new ObjectMapper().readValue(new ByteArrayInputStream(request), BidRequest.class);
+    }
+
+    @Benchmark
+    public BidRequest readCodec() throws Exception {
+        return codec.readBidRequest(new ByteArrayInputStream(request));
+    }
+
+    @Benchmark
+    public int writeGson() throws Exception {
+        out.reset();
+        out.write(new Gson().toJson(response).getBytes());
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeCodec() throws Exception {
+        out.reset();
+        codec.writeBidResponse(response, out);
+        return out.size();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(BidJsonCodecBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openrtb.common.api.Bid;
+import org.openrtb.common.api.BidRequest;
+import org.openrtb.common.api.BidResponse;
+import org.openrtb.common.api.SeatBid;
+
+/**
+ * Verifies the {@link BidJsonCodec} mapping of bid requests and responses.
+ */
+public class BidJsonCodecTest {
+
+    private BidJsonCodec test;
+
+    @Before
+    public void setup() {
+        test = new BidJsonCodec();
+    }
+
+    @Test
+    public void responseRoundTrip() throws Exception {
+        BidResponse response = sampleResponse();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        test.writeBidResponse(response, out);
+        String json = new String(out.toByteArray(), "UTF-8");
+        assertFalse("null fields should be omitted", json.contains("null"));
+
+        BidResponse read = test.readBidResponse(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("response should survive a round trip", response, read);
+    }
+
+    @Test
+    public void lenientRequestRead() throws Exception {
+        String json = "{\"id\":\"req1\",\"at\":\"2\",\"tmax\":120,"
+                    + "\"imp\":[{\"id\":\"1\",\"bidfloor\":\"1.5\",\"banner\":{\"w\":300,\"h\":250}}],"
+                    + "\"user\":{\"id\":\"u1\"},"
+                    + "\"unknown\":{\"nested\":[1,2,{\"a\":null}]},"
+                    + "\"badv\":[\"a.com\",\"b.com\"]}";
+
+        BidRequest request = test.readBidRequest(new ByteArrayInputStream(json.getBytes("UTF-8")));
+
+        assertEquals("req1", request.getId().toString());
+        assertEquals("string numbers should be coerced", Integer.valueOf(2), request.getAt());
+        assertEquals(Integer.valueOf(120), request.getTmax());
+        assertEquals(Float.valueOf(1.5f), request.getImp().get(0).getBidfloor());
+        assertEquals(Integer.valueOf(250), request.getImp().get(0).getBanner().getH());
+        assertEquals("field names should match case-insensitively", "u1", request.getUser().getId().toString());
+        assertEquals(2, request.getBadv().size());
+        assertNull("absent fields should stay null", request.getSite());
+    }
+
+    @Test
+    public void requestRoundTrip() throws Exception {
+        String json = "{\"id\":\"req1\",\"imp\":[{\"id\":\"1\"}],\"wseat\":[\"s1\"]}";
+        BidRequest request = test.readBidRequest(new ByteArrayInputStream(json.getBytes("UTF-8")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        test.writeBidRequest(request, out);
+
+        assertEquals("output should use the schema field mapping", json, new String(out.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void emptyInput() throws Exception {
+        try {
+            test.readBidRequest(new ByteArrayInputStream(new byte[0]));
+            fail("empty input should be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("No content"));
+        }
+    }
+
+    static BidResponse sampleResponse() {
+        Bid bid = new Bid();
+        bid.setId("bid1");
+        bid.setImpid("imp1");
+        bid.setPrice(1.25f);
+        bid.setNurl("http://win.example.com/?id=${AUCTION_ID}");
+        List<CharSequence> adomain = new ArrayList<CharSequence>();
+        adomain.add("example.com");
+        bid.setAdomain(adomain);
+
+        List<Bid> bids = new ArrayList<Bid>();
+        bids.add(bid);
+        SeatBid seatBid = new SeatBid();
+        seatBid.setBid(bids);
+        seatBid.setSeat("SeatID001");
+
+        List<SeatBid> seatBids = new ArrayList<SeatBid>();
+        seatBids.add(seatBid);
+        BidResponse response = new BidResponse();
+        response.setId("req1");
+        response.setSeatbid(seatBids);
+        response.setCur("USD");
+        return response;
+    }
+}
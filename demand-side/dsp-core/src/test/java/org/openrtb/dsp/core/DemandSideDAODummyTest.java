@@ -43,6 +43,8 @@ import org.codehaus.jackson.map.annotate.JsonSerialize;
 import org.codehaus.jackson.map.annotate.JsonSerialize.Inclusion;
 import org.openrtb.dsp.intf.model.DSPException;
 import org.openrtb.dsp.intf.model.DemandSideDAO;
+import org.openrtb.dsp.intf.model.DemandSideConfig;
+import org.openrtb.dsp.intf.model.DemandSideSnapshot;
 import org.openrtb.dsp.intf.model.RTBAdvertiser;
 import org.openrtb.dsp.intf.model.RTBExchange;
 
@@ -65,6 +67,7 @@ public class DemandSideDAODummyTest implements DemandSideDAO {
 	private final ConcurrentMap<String, Integer> properties = new ConcurrentHashMap<String, Integer>();	
 	private final ConcurrentMap<String, RTBExchange> exchanges = new ConcurrentHashMap<String, RTBExchange>();
 	private final ConcurrentMap<String, RTBAdvertiser> advertisers = new ConcurrentHashMap<String, RTBAdvertiser>();
+	private volatile DemandSideSnapshot snapshot = DemandSideSnapshot.EMPTY;
 	
 	// encapsulate all the config properties in the Json file backed data store in a temporary class
 	// this is used by a Jackson object mapper to load data from a JSON file.
@@ -145,15 +148,24 @@ public class DemandSideDAODummyTest implements DemandSideDAO {
 		return properties.get("server_port");
 	}
 
-	
+	@Deprecated
 	public ConcurrentMap<String, RTBExchange> getExchanges() {
 		return exchanges;
 	}
 
+	@Deprecated
 	public ConcurrentMap<String, RTBAdvertiser> getAdvertisers() {
 		return advertisers;
 	}
 
+	public DemandSideSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	public DemandSideConfig getConfig() {
+		return snapshot.getConfig();
+	}
+
 	public synchronized void loadData(String dbLocation) throws DSPException {
 		try {			
 			if ((dbLocation != null) && (dbLocation != "")) {
@@ -174,6 +186,10 @@ public class DemandSideDAODummyTest implements DemandSideDAO {
 			for (RTBAdvertiser adv : props.advertisers) {
 				this.advertisers.put(adv.getLandingPage(), adv);
 			}
+			// publish everything just loaded as one consistent version
+			this.snapshot = new DemandSideSnapshot(this.snapshot.getVersion() + 1,
+					this.exchanges, this.advertisers, props.dspServerPort,
+					props.defaultReqTimeout, props.defaultOfferTimeout);
 			
 		} catch (Exception e) {
 			throw new DSPException(e.getMessage());
@@ -1,5 +1,6 @@
 package org.openrtb.dsp.core;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -23,6 +24,7 @@ import org.junit.Test;
 import org.openrtb.common.api.App;
 import org.openrtb.common.api.Banner;
 import org.openrtb.common.api.BidRequest;
+import org.openrtb.common.api.BidResponse;
 import org.openrtb.common.api.Data;
 import org.openrtb.common.api.Device;
 import org.openrtb.common.api.Geo;
@@ -235,6 +237,26 @@ public class DemandSideServerTest {
 		byte b[] = server.respond("BigAdExchange", in, JSON_CONTENT_TYPE);	
 		assertNotNull("Response should not be null ",b);
 	}
+	/**
+	 * This method is used to test the process method and streaming the response
+	 */
+	@Test
+	public void processAndStreamTest() throws DSPException, IOException {
+		OpenRTBAPIDummyTest bidder = new OpenRTBAPIDummyTest();
+		DemandSideDAODummyTest dao = new DemandSideDAODummyTest();
+		URL url = this.getClass().getResource("/properties.json");
+		dao.loadData(url.getPath());
+		DemandSideServer server = new DemandSideServer(bidder, dao);
+		BidRequest decoded = server.readRequest(new ByteArrayInputStream(jsonContent.getBytes()), JSON_CONTENT_TYPE);
+		BidResponse response = server.process("BigAdExchange", decoded);
+		assertNotNull("Response should not be null ", response);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		server.writeResponse(response, JSON_CONTENT_TYPE, out);
+		assertArrayEquals("Streamed and buffered responses should match",
+				server.writeResponse(response, JSON_CONTENT_TYPE), out.toByteArray());
+	}
+
 	/**
 	 * This method is used to test the respond method with avro content type 
 	 */
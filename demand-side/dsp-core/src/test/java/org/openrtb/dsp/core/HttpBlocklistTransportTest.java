@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openrtb.dsp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpBlocklistTransportTest {
+
+    private HttpServer server;
+    private HttpBlocklistTransport transport;
+    private String baseUrl;
+    // the client ports the requests came from
+    private final List<Integer> ports = Collections.synchronizedList(new ArrayList<Integer>());
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/echo", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                ports.add(exchange.getRemoteAddress().getPort());
+                byte[] body = read(exchange.getRequestBody());
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.createContext("/fail", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                read(exchange.getRequestBody());
+                byte[] body = "no".getBytes("UTF-8");
+                exchange.sendResponseHeaders(500, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        transport = new HttpBlocklistTransport();
+    }
+
+    @After
+    public void teardown() {
+        transport.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void post_reusesConnection() throws Exception {
+        assertEquals("first", post("/echo", "first"));
+        assertEquals("second", post("/echo", "second"));
+        assertEquals(2, ports.size());
+        assertEquals("connection should be kept alive", ports.get(0), ports.get(1));
+    }
+
+    @Test
+    public void post_errorStatus() throws Exception {
+        try {
+            post("/fail", "request");
+            fail("a 500 should be reported");
+        } catch (BlocklistException e) {
+            // expected
+        }
+        // the connection is still usable afterwards
+        assertEquals("after", post("/echo", "after"));
+    }
+
+    private String post(String path, String body) throws BlocklistException, IOException {
+        return transport.post(baseUrl + path, "application/json; charset=UTF-8", body.getBytes("UTF-8"),
+                              new BlocklistTransport.ResponseHandler<String>() {
+            public String handle(InputStream in) throws IOException {
+                return new String(read(in), "UTF-8");
+            }
+        });
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[256];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
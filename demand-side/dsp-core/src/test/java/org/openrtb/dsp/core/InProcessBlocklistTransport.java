@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openrtb.dsp.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link BlocklistTransport} that answers requests in-process, for testing
+ * the requester without HTTP.
+ */
+public class InProcessBlocklistTransport implements BlocklistTransport {
+
+    /**
+     * Plays the part of one supply-side platform.
+     */
+    public interface Responder {
+        public byte[] respond(String contentType, byte[] request) throws BlocklistException;
+    }
+
+    private final Map<String, Responder> responders = new ConcurrentHashMap<String, Responder>();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    public void register(String url, Responder responder) {
+        responders.put(url, responder);
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public <T> T post(String url, String contentType, byte[] body,
+                      ResponseHandler<T> handler) throws BlocklistException {
+        requests.incrementAndGet();
+        Responder responder = responders.get(url);
+        if (responder == null) {
+            throw new BlocklistException("Request failed w/ code [404] for url ["+url+"]");
+        }
+        byte[] response = responder.respond(contentType, body);
+        try {
+            return handler.handle(new ByteArrayInputStream(response));
+        } catch (IOException e) {
+            throw new BlocklistException("Unable to exchange blocklists with ["+url+"]", e);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openrtb.dsp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ObjectNode;
+import org.junit.Test;
+import org.openrtb.common.json.AdvertiserBlocklistResponseTranslator;
+import org.openrtb.common.model.Advertiser;
+import org.openrtb.common.model.AdvertiserBlocklistResponse;
+import org.openrtb.common.model.Blocklist;
+import org.openrtb.common.model.Identification;
+import org.openrtb.common.model.Signable;
+import org.openrtb.common.model.Status;
+import org.openrtb.dsp.intf.service.BlocklistSink;
+
+public class StreamingBlocklistResponseReaderTest {
+
+    private static final byte[] SECRET = "a shared secret".getBytes();
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void readInChunks() throws Exception {
+        AdvertiserBlocklistResponse response = response(2500, 3);
+        RecordingSink sink = new RecordingSink();
+
+        AdvertiserBlocklistResponse read =
+            new StreamingBlocklistResponseReader(1000).read(stream(json(response)), SECRET, sink);
+
+        assertNotNull(read);
+        assertEquals(response.getIdentification().getToken(), read.getIdentification().getToken());
+        assertEquals("ssp", read.getIdentification().getOrganization());
+        assertEquals(Integer.valueOf(Status.SUCCESS_CODE), read.getStatus().getCode());
+        assertEquals(2, read.getAdvertisers().size());
+        assertEquals("first.com", read.getAdvertisers().get(0).getLandingPage());
+        assertTrue("blocklists are not kept", read.getAdvertisers().get(0).getBlocklist().isEmpty());
+
+        assertEquals(2, sink.advertisers.size());
+        assertEquals(2500, sink.added.size());
+        assertEquals(3, sink.removed.size());
+        assertEquals("pub-2499", sink.added.get(2499).getPublisherId());
+        assertEquals("Site \u00fc \ud83d\ude00 2499", sink.added.get(2499).getSiteName());
+        assertEquals(1000, sink.largestChunk);
+        assertEquals(2, sink.ended);
+    }
+
+    @Test
+    public void tamperedResponse() throws Exception {
+        String json = json(response(10, 0)).replace("pub-7", "pub-8");
+        RecordingSink sink = new RecordingSink();
+
+        assertNull(new StreamingBlocklistResponseReader().read(stream(json), SECRET, sink));
+        assertEquals("entries are still streamed; the caller aborts", 10, sink.added.size());
+    }
+
+    @Test
+    public void wrongSecret() throws Exception {
+        String json = json(response(10, 0));
+        assertNull(new StreamingBlocklistResponseReader().read(stream(json), "another secret".getBytes(),
+                                                               new RecordingSink()));
+    }
+
+    @Test
+    public void unsignedResponse() throws Exception {
+        AdvertiserBlocklistResponse response = response(1, 0);
+        response.clearToken();
+        assertNull(new StreamingBlocklistResponseReader().read(stream(json(response)), SECRET,
+                                                               new RecordingSink()));
+    }
+
+    @Test
+    public void prettyPrintedResponse() throws Exception {
+        JsonNode tree = MAPPER.readTree(unsignedJson(response(50, 2)));
+        String json = signBeforeOrganization(MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(tree));
+
+        assertVerifies(json, 50);
+    }
+
+    @Test
+    public void escapedCharacters() throws Exception {
+        String json = signBeforeOrganization(unsignedJson(response(50, 0)).replace("\u00fc", "\\u00fc"));
+
+        assertVerifies(json, 50);
+    }
+
+    @Test
+    public void identificationLast() throws Exception {
+        ObjectNode tree = (ObjectNode) MAPPER.readTree(unsignedJson(response(2500, 0)));
+        tree.put("identification", tree.remove("identification"));
+        String unsigned = MAPPER.writeValueAsString(tree);
+        String json = unsigned.replace("\"timestamp\":5000}",
+                                       "\"timestamp\":5000, \"token\":\"" + token(unsigned) + "\"}");
+
+        assertVerifies(json, 2500);
+        String tampered = json.replace("pub-7\"", "pub-8\"");
+        assertNull(new StreamingBlocklistResponseReader(100).read(stream(tampered), SECRET, new RecordingSink()));
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void advertiserFieldAfterBlocklist() throws Exception {
+        String json = "{\"advertisers\":[{\"blocklist\":[],\"landingPageTLD\":\"late.com\"}]}";
+        new StreamingBlocklistResponseReader().read(stream(json), SECRET, new RecordingSink());
+    }
+
+    private static AdvertiserBlocklistResponse response(int added, int removed) throws Exception {
+        AdvertiserBlocklistResponse response =
+            new AdvertiserBlocklistResponse(new Identification("ssp", 5000L), new Status("request-token"));
+        Advertiser first = new Advertiser("first.com", "First", 1000L);
+        for (int i = 0; i < added; i++) {
+            first.addBlocklist(new Blocklist("pub-" + i, "Publisher " + i, "site-" + i, "Site \u00fc \ud83d\ude00 " + i));
+        }
+        for (int i = 0; i < removed; i++) {
+            first.addRemovedBlocklist(new Blocklist("gone-" + i, null));
+        }
+        response.addAdvertiser(first);
+        response.addAdvertiser(new Advertiser("second.com"));
+        response.sign(SECRET, new AdvertiserBlocklistResponseTranslator());
+        return response;
+    }
+
+    // both DSP paths accept the response, whatever its layout
+    private static void assertVerifies(String json, int added) throws Exception {
+        assertTrue("verifyJSON", Signable.verifyJSON(json.getBytes("UTF-8"), SECRET));
+        RecordingSink sink = new RecordingSink();
+        AdvertiserBlocklistResponse read =
+            new StreamingBlocklistResponseReader(100).read(stream(json), SECRET, sink);
+        assertNotNull("streaming reader", read);
+        assertEquals(added, sink.added.size());
+        assertEquals("Site \u00fc \ud83d\ude00 7", sink.added.get(7).getSiteName());
+    }
+
+    private static String unsignedJson(AdvertiserBlocklistResponse response) throws Exception {
+        response.clearToken();
+        return json(response);
+    }
+
+    // signs the JSON as sent, the token going first in the identification
+    private static String signBeforeOrganization(String unsigned) {
+        return unsigned.replace("\"organization\"", "\"token\":\"" + token(unsigned) + "\",\"organization\"");
+    }
+
+    private static String token(String unsigned) {
+        return DigestUtils.md5Hex("{" + unsigned + ",\"sharedSecret\":" + new String(Hex.encodeHex(SECRET)) + "}");
+    }
+
+    private static String json(AdvertiserBlocklistResponse response) throws Exception {
+        return new AdvertiserBlocklistResponseTranslator().toJSON(response);
+    }
+
+    private static ByteArrayInputStream stream(String json) throws Exception {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    private static class RecordingSink implements BlocklistSink {
+        final List<Advertiser> advertisers = new ArrayList<Advertiser>();
+        final List<Blocklist> added = new ArrayList<Blocklist>();
+        final List<Blocklist> removed = new ArrayList<Blocklist>();
+        int largestChunk;
+        int ended;
+
+        public void startAdvertiser(Advertiser advertiser) {
+            advertisers.add(advertiser);
+        }
+
+        public void blocklistsAdded(List<Blocklist> chunk) {
+            largestChunk = Math.max(largestChunk, chunk.size());
+            added.addAll(chunk);
+        }
+
+        public void blocklistsRemoved(List<Blocklist> chunk) {
+            largestChunk = Math.max(largestChunk, chunk.size());
+            removed.addAll(chunk);
+        }
+
+        public void endAdvertiser() {
+            ended++;
+        }
+
+        public void commit() { }
+
+        public void abort() { }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.intf.model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, precompiled view of the advertisers that answers "which seats
+ * may bid on this request" with a handful of bitset operations instead of a
+ * scan over every advertiser.
+ *
+ * Each advertiser is given an ordinal when the index is built. For every
+ * exchange the index keeps the set of advertisers holding a seat on it (and
+ * the seat ids, by ordinal); for every category and every advertiser
+ * domain/landing page it keeps the set of advertisers it applies to. The
+ * seats eligible for a request are then the exchange's set with the postings
+ * of each blocked category (<tt>bcat</tt>) and blocked advertiser
+ * (<tt>badv</tt>) removed.
+ *
+ * The index only depends on the advertiser configuration, so it is built once
+ * when the configuration is loaded and shared by all requests.
+ */
+public final class AdvertiserEligibilityIndex {
+
+	public static final AdvertiserEligibilityIndex EMPTY = build(Collections
+			.<String, RTBAdvertiser> emptyMap());
+
+	// by ordinal
+	private final String[] keys;
+	private final RTBAdvertiser[] advertisers;
+
+	private final Map<String, Seats> seatsByExchange;
+	private final Map<String, BitSet> byCategory;
+	private final Map<String, BitSet> byLandingPage;
+
+	private AdvertiserEligibilityIndex(String[] keys, RTBAdvertiser[] advertisers,
+			Map<String, Seats> seatsByExchange, Map<String, BitSet> byCategory,
+			Map<String, BitSet> byLandingPage) {
+		this.keys = keys;
+		this.advertisers = advertisers;
+		this.seatsByExchange = seatsByExchange;
+		this.byCategory = byCategory;
+		this.byLandingPage = byLandingPage;
+	}
+
+	/**
+	 * Compiles the index for <tt>advertisers</tt>, keyed the same way as
+	 * {@link DemandSideSnapshot#getAdvertisers()}. Later changes to the map or the
+	 * advertisers are not reflected in the index.
+	 */
+	public static AdvertiserEligibilityIndex build(Map<String, RTBAdvertiser> advertisers) {
+		int size = advertisers.size();
+		String[] keys = new String[size];
+		RTBAdvertiser[] values = new RTBAdvertiser[size];
+		Map<String, Seats> seatsByExchange = new HashMap<String, Seats>();
+		Map<String, BitSet> byCategory = new HashMap<String, BitSet>();
+		Map<String, BitSet> byLandingPage = new HashMap<String, BitSet>();
+
+		int ordinal = 0;
+		for (Map.Entry<String, RTBAdvertiser> entry : advertisers.entrySet()) {
+			RTBAdvertiser advertiser = entry.getValue();
+			keys[ordinal] = entry.getKey();
+			values[ordinal] = advertiser;
+
+			// an advertiser may be blocked by its key or its landing page
+			posting(byLandingPage, entry.getKey(), size).set(ordinal);
+			if (advertiser.getLandingPage() != null) {
+				posting(byLandingPage, advertiser.getLandingPage(), size).set(ordinal);
+			}
+			if (advertiser.getCategories() != null) {
+				for (String category : advertiser.getCategories()) {
+					posting(byCategory, category, size).set(ordinal);
+				}
+			}
+			if (advertiser.getSeats() != null) {
+				for (Map.Entry<String, String> seat : advertiser.getSeats().entrySet()) {
+					if (seat.getValue() == null) {
+						continue;
+					}
+					Seats exchange = seatsByExchange.get(seat.getKey());
+					if (exchange == null) {
+						exchange = new Seats(size);
+						seatsByExchange.put(seat.getKey(), exchange);
+					}
+					exchange.seated.set(ordinal);
+					exchange.seatIds[ordinal] = seat.getValue();
+				}
+			}
+			ordinal++;
+		}
+		return new AdvertiserEligibilityIndex(keys, values, seatsByExchange,
+				byCategory, byLandingPage);
+	}
+
+	/**
+	 * Returns the ordinals of the advertisers that hold a seat on
+	 * <tt>exchange</tt> and are not blocked by the request's blocked
+	 * advertiser or category lists. The returned set belongs to the caller.
+	 *
+	 * @param badv blocked advertiser domains, may be <tt>null</tt>
+	 * @param bcat blocked categories, may be <tt>null</tt>
+	 */
+	public BitSet getEligible(String exchange, List<CharSequence> badv,
+			List<CharSequence> bcat) {
+		Seats seats = exchange == null ? null : seatsByExchange.get(exchange);
+		if (seats == null) {
+			return new BitSet();
+		}
+		BitSet eligible = (BitSet) seats.seated.clone();
+		andNot(eligible, byCategory, bcat);
+		andNot(eligible, byLandingPage, badv);
+		return eligible;
+	}
+
+	/**
+	 * Builds a map of the seat ids allowed to bid on a request to the landing
+	 * page of the advertiser that owns the seat.
+	 *
+	 * @see #getEligible(String, List, List)
+	 */
+	public Map<String, String> getUnblockedSeats(String exchange,
+			List<CharSequence> badv, List<CharSequence> bcat) {
+		BitSet eligible = getEligible(exchange, badv, bcat);
+		if (eligible.isEmpty()) {
+			return new HashMap<String, String>();
+		}
+		String[] seatIds = seatsByExchange.get(exchange).seatIds;
+		Map<String, String> seats = new HashMap<String, String>(
+				(int) (eligible.cardinality() / 0.75f) + 1);
+		for (int i = eligible.nextSetBit(0); i >= 0; i = eligible.nextSetBit(i + 1)) {
+			seats.put(seatIds[i], advertisers[i].getLandingPage());
+		}
+		return seats;
+	}
+
+	/**
+	 * Returns the ids of the seats held on <tt>exchange</tt> by the
+	 * advertisers in <tt>ordinals</tt>.
+	 */
+	public List<String> getSeats(String exchange, BitSet ordinals) {
+		Seats seats = seatsByExchange.get(exchange);
+		List<String> result = new ArrayList<String>();
+		if (seats != null) {
+			for (int i = ordinals.nextSetBit(0); i >= 0; i = ordinals.nextSetBit(i + 1)) {
+				if (seats.seatIds[i] != null) {
+					result.add(seats.seatIds[i]);
+				}
+			}
+		}
+		return result;
+	}
+
+	public RTBAdvertiser getAdvertiser(int ordinal) {
+		return advertisers[ordinal];
+	}
+
+	/**
+	 * The key the advertiser at <tt>ordinal</tt> was stored under in the
+	 * advertiser map the index was built from.
+	 */
+	public String getKey(int ordinal) {
+		return keys[ordinal];
+	}
+
+	public int size() {
+		return advertisers.length;
+	}
+
+	private static BitSet posting(Map<String, BitSet> postings, String term, int size) {
+		BitSet posting = postings.get(term);
+		if (posting == null) {
+			posting = new BitSet(size);
+			postings.put(term, posting);
+		}
+		return posting;
+	}
+
+	private static void andNot(BitSet eligible, Map<String, BitSet> postings,
+			List<CharSequence> blocked) {
+		if (blocked == null) {
+			return;
+		}
+		for (int i = 0, n = blocked.size(); i < n && !eligible.isEmpty(); i++) {
+			CharSequence term = blocked.get(i);
+			BitSet posting = term == null ? null : postings.get(term.toString());
+			if (posting != null) {
+				eligible.andNot(posting);
+			}
+		}
+	}
+
+	private static final class Seats {
+		final BitSet seated;
+		final String[] seatIds;
+
+		Seats(int size) {
+			seated = new BitSet(size);
+			seatIds = new String[size];
+		}
+	}
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.intf.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable, compact store of advertisers for large catalogs, answering
+ * the lookups {@link RTBAdvertiser} does (seat by exchange, categories)
+ * without an object, a list and a map per advertiser.
+ *
+ * Categories and exchange names are dictionary encoded: each distinct one is
+ * kept once and given a small int id. An advertiser's categories are a bitset
+ * over the category ids, in one <tt>long[]</tt> shared by all advertisers,
+ * and the seats of each exchange are a dense array indexed by advertiser
+ * ordinal. Advertisers are ordered by key, and found by binary search; equal
+ * names and notification urls are shared.
+ *
+ * Categories are answered in dictionary order, and an advertiser's duplicate
+ * categories are kept once.
+ */
+public final class CompactAdvertiserStore {
+
+	// by ordinal, keys sorted
+	private final String[] keys;
+	private final String[] landingPages;
+	private final String[] names;
+	private final String[] nurls;
+
+	private final String[] categoryNames;
+	private final Map<String, Integer> categoryIds;
+	// words per advertiser in categoryBits
+	private final int categoryWords;
+	private final long[] categoryBits;
+
+	private final String[] exchangeNames;
+	private final Map<String, Integer> exchangeIds;
+	// seat ids by exchange id, then by ordinal
+	private final String[][] seats;
+
+	private CompactAdvertiserStore(String[] keys, String[] landingPages, String[] names,
+			String[] nurls, String[] categoryNames, int categoryWords, long[] categoryBits,
+			String[] exchangeNames, String[][] seats) {
+		this.keys = keys;
+		this.landingPages = landingPages;
+		this.names = names;
+		this.nurls = nurls;
+		this.categoryNames = categoryNames;
+		this.categoryIds = ids(categoryNames);
+		this.categoryWords = categoryWords;
+		this.categoryBits = categoryBits;
+		this.exchangeNames = exchangeNames;
+		this.exchangeIds = ids(exchangeNames);
+		this.seats = seats;
+	}
+
+	/**
+	 * Encodes <tt>advertisers</tt>, keyed the same way as
+	 * {@link DemandSideSnapshot#getAdvertisers()}. Later changes to the map or the
+	 * advertisers are not reflected in the store.
+	 */
+	public static CompactAdvertiserStore build(Map<String, RTBAdvertiser> advertisers) {
+		// the dictionaries, ids in order of first appearance
+		Map<String, Integer> categoryIds = new LinkedHashMap<String, Integer>();
+		Map<String, Integer> exchangeIds = new LinkedHashMap<String, Integer>();
+		for (RTBAdvertiser advertiser : advertisers.values()) {
+			if (advertiser.getCategories() != null) {
+				for (String category : advertiser.getCategories()) {
+					if (category != null && !categoryIds.containsKey(category)) {
+						categoryIds.put(category, categoryIds.size());
+					}
+				}
+			}
+			if (advertiser.getSeats() != null) {
+				for (Map.Entry<String, String> seat : advertiser.getSeats().entrySet()) {
+					if (seat.getKey() != null && seat.getValue() != null
+							&& !exchangeIds.containsKey(seat.getKey())) {
+						exchangeIds.put(seat.getKey(), exchangeIds.size());
+					}
+				}
+			}
+		}
+
+		int size = advertisers.size();
+		String[] keys = new String[size];
+		String[] landingPages = new String[size];
+		String[] names = new String[size];
+		String[] nurls = new String[size];
+		int categoryWords = (categoryIds.size() + 63) >>> 6;
+		long[] categoryBits = new long[size * categoryWords];
+		String[][] seats = new String[exchangeIds.size()][size];
+		Map<String, String> shared = new HashMap<String, String>();
+
+		int ordinal = 0;
+		for (Map.Entry<String, RTBAdvertiser> entry : new TreeMap<String, RTBAdvertiser>(advertisers).entrySet()) {
+			RTBAdvertiser advertiser = entry.getValue();
+			keys[ordinal] = entry.getKey();
+			landingPages[ordinal] = entry.getKey().equals(advertiser.getLandingPage())
+					? entry.getKey() : advertiser.getLandingPage();
+			names[ordinal] = share(shared, advertiser.getName());
+			nurls[ordinal] = share(shared, advertiser.getNurl());
+			if (advertiser.getCategories() != null) {
+				for (String category : advertiser.getCategories()) {
+					if (category != null) {
+						int id = categoryIds.get(category);
+						categoryBits[ordinal * categoryWords + (id >>> 6)] |= 1L << id;
+					}
+				}
+			}
+			if (advertiser.getSeats() != null) {
+				for (Map.Entry<String, String> seat : advertiser.getSeats().entrySet()) {
+					if (seat.getKey() != null && seat.getValue() != null) {
+						seats[exchangeIds.get(seat.getKey())][ordinal] = seat.getValue();
+					}
+				}
+			}
+			ordinal++;
+		}
+		return new CompactAdvertiserStore(keys, landingPages, names, nurls,
+				categoryIds.keySet().toArray(new String[categoryIds.size()]), categoryWords, categoryBits,
+				exchangeIds.keySet().toArray(new String[exchangeIds.size()]), seats);
+	}
+
+	/**
+	 * The ordinal of the advertiser stored under <tt>key</tt>, <tt>-1</tt>
+	 * if there is none.
+	 */
+	public int ordinal(String key) {
+		if (key == null) {
+			return -1;
+		}
+		int ordinal = Arrays.binarySearch(keys, key);
+		return ordinal < 0 ? -1 : ordinal;
+	}
+
+	public boolean contains(String key) {
+		return ordinal(key) >= 0;
+	}
+
+	/**
+	 * The seat the advertiser holds on the exchange, as
+	 * {@link RTBAdvertiser#getSeat(String)}.
+	 */
+	public String getSeat(String key, String exchangeName) {
+		int ordinal = ordinal(key);
+		Integer exchange = exchangeName == null ? null : exchangeIds.get(exchangeName);
+		return ordinal < 0 || exchange == null ? null : seats[exchange][ordinal];
+	}
+
+	/**
+	 * The seats of the advertiser, by exchange name; empty if it is not
+	 * known. The returned map belongs to the caller.
+	 */
+	public Map<String, String> getSeats(String key) {
+		Map<String, String> result = new HashMap<String, String>();
+		int ordinal = ordinal(key);
+		if (ordinal >= 0) {
+			for (int exchange = 0; exchange < exchangeNames.length; exchange++) {
+				if (seats[exchange][ordinal] != null) {
+					result.put(exchangeNames[exchange], seats[exchange][ordinal]);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The categories of the advertiser, in dictionary order; empty if it is
+	 * not known. The returned list belongs to the caller.
+	 */
+	public List<String> getCategories(String key) {
+		List<String> result = new ArrayList<String>();
+		int ordinal = ordinal(key);
+		if (ordinal >= 0) {
+			int base = ordinal * categoryWords;
+			for (int w = 0; w < categoryWords; w++) {
+				long word = categoryBits[base + w];
+				while (word != 0) {
+					int bit = Long.numberOfTrailingZeros(word);
+					result.add(categoryNames[(w << 6) + bit]);
+					word &= word - 1;
+				}
+			}
+		}
+		return result;
+	}
+
+	public boolean hasCategory(String key, String category) {
+		int ordinal = ordinal(key);
+		Integer id = category == null ? null : categoryIds.get(category);
+		return ordinal >= 0 && id != null
+				&& (categoryBits[ordinal * categoryWords + (id >>> 6)] & (1L << id)) != 0;
+	}
+
+	public String getLandingPage(String key) {
+		int ordinal = ordinal(key);
+		return ordinal < 0 ? null : landingPages[ordinal];
+	}
+
+	public String getName(String key) {
+		int ordinal = ordinal(key);
+		return ordinal < 0 ? null : names[ordinal];
+	}
+
+	public String getNurl(String key) {
+		int ordinal = ordinal(key);
+		return ordinal < 0 ? null : nurls[ordinal];
+	}
+
+	/**
+	 * A new, standalone {@link RTBAdvertiser} for the advertiser stored under
+	 * <tt>key</tt>, <tt>null</tt> if there is none.
+	 */
+	public RTBAdvertiser getAdvertiser(String key) {
+		int ordinal = ordinal(key);
+		if (ordinal < 0) {
+			return null;
+		}
+		return new RTBAdvertiser(landingPages[ordinal], names[ordinal], nurls[ordinal],
+				getCategories(key), getSeats(key));
+	}
+
+	/**
+	 * The keys of all advertisers, in order.
+	 */
+	public List<String> getKeys() {
+		return Arrays.asList(keys.clone());
+	}
+
+	public int size() {
+		return keys.length;
+	}
+
+	public int getCategoryCount() {
+		return categoryNames.length;
+	}
+
+	public int getExchangeCount() {
+		return exchangeNames.length;
+	}
+
+	private static Map<String, Integer> ids(String[] dictionary) {
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		for (int i = 0; i < dictionary.length; i++) {
+			ids.put(dictionary[i], i);
+		}
+		return ids;
+	}
+
+	private static String share(Map<String, String> shared, String s) {
+		if (s == null) {
+			return null;
+		}
+		String existing = shared.get(s);
+		if (existing == null) {
+			shared.put(s, s);
+			return s;
+		}
+		return existing;
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.intf.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The typed, immutable settings of a {@link DemandSideSnapshot}: the server
+ * port and the default timeouts, and the timeouts that apply to each
+ * exchange, with the exchange's own overrides already resolved against the
+ * defaults.
+ *
+ * Everything is resolved when the snapshot is built, so reading a setting on
+ * the bidding path is a field read, with no lookup by name and no unboxing.
+ */
+public final class DemandSideConfig {
+
+	private final long serverPort;
+	private final Exchange defaults;
+	private final Map<String, Exchange> exchanges;
+
+	public DemandSideConfig(long serverPort, long requestTimeout, long offerTimeout,
+			Map<String, RTBExchange> exchanges) {
+		this.serverPort = serverPort;
+		this.defaults = new Exchange(null, requestTimeout, offerTimeout);
+		Map<String, Exchange> resolved = new HashMap<String, Exchange>();
+		for (RTBExchange exchange : exchanges.values()) {
+			resolved.put(exchange.getOrgName(), new Exchange(exchange.getOrgName(),
+					resolve(exchange.getRequestTimeout(), requestTimeout),
+					resolve(exchange.getOfferTimeout(), offerTimeout)));
+		}
+		this.exchanges = Collections.unmodifiableMap(resolved);
+	}
+
+	// an override that is not set, or not positive, leaves the default
+	private static long resolve(Long override, long defaultValue) {
+		return override == null || override.longValue() <= 0 ? defaultValue : override.longValue();
+	}
+
+	public long getServerPort() {
+		return serverPort;
+	}
+
+	/**
+	 * The default time, in milliseconds, an exchange waits for a response
+	 * when the request does not carry a <tt>tmax</tt>.
+	 */
+	public long getRequestTimeout() {
+		return defaults.requestTimeout;
+	}
+
+	/**
+	 * The default time, in milliseconds, an offer stays valid.
+	 */
+	public long getOfferTimeout() {
+		return defaults.offerTimeout;
+	}
+
+	/**
+	 * The settings that apply to the exchange; the defaults if it is not
+	 * known, or <tt>orgName</tt> is <tt>null</tt>.
+	 */
+	public Exchange forExchange(String orgName) {
+		Exchange exchange = orgName == null ? null : exchanges.get(orgName);
+		return exchange == null ? defaults : exchange;
+	}
+
+	/**
+	 * The timeouts that apply to one exchange.
+	 */
+	public static final class Exchange {
+		private final String orgName;
+		private final long requestTimeout;
+		private final long offerTimeout;
+
+		Exchange(String orgName, long requestTimeout, long offerTimeout) {
+			this.orgName = orgName;
+			this.requestTimeout = requestTimeout;
+			this.offerTimeout = offerTimeout;
+		}
+
+		/**
+		 * The exchange these settings are for, <tt>null</tt> for the
+		 * defaults.
+		 */
+		public String getOrgName() {
+			return orgName;
+		}
+
+		public long getRequestTimeout() {
+			return requestTimeout;
+		}
+
+		public long getOfferTimeout() {
+			return offerTimeout;
+		}
+	}
+}
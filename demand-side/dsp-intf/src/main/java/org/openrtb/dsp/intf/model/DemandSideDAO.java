@@ -39,9 +39,18 @@ import java.util.concurrent.ConcurrentMap;
  */
 public interface DemandSideDAO {
 	public long getServerPort();
+	// a setting by name, "request_timeout" or "offer_timeout"; prefer getConfig()
 	public long getDefaultTimeout(String string);
+	/** @deprecated read-only in the shipped DAOs, use {@link #getSnapshot()} */
+	@Deprecated
 	public ConcurrentMap<String, RTBExchange> getExchanges();
+	/** @deprecated read-only in the shipped DAOs, use {@link #getSnapshot()} */
+	@Deprecated
 	public ConcurrentMap<String, RTBAdvertiser> getAdvertisers();
+	// rebuilt and republished each time the data is loaded, never null
+	public DemandSideSnapshot getSnapshot();
+	// the typed settings of the current snapshot, never null
+	public DemandSideConfig getConfig();
 	public void loadData(String dbLocation) throws DSPException;
 }
 
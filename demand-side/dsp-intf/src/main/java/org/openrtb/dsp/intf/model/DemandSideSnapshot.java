@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.intf.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable, versioned view of everything a {@link DemandSideDAO} knows:
+ * the exchanges, the advertisers, their compiled
+ * {@link AdvertiserEligibilityIndex} and the typed {@link DemandSideConfig}.
+ *
+ * A DAO builds a new snapshot each time it (re)loads its data and publishes
+ * it with a single reference assignment, so a request that grabs the current
+ * snapshot sees one consistent version of the configuration for its whole
+ * life, and setting up its context costs a pointer copy no matter how many
+ * advertisers there are. The maps are copied when the snapshot is built and
+ * cannot be modified; the exchange and advertiser objects they hold are
+ * shared between requests and must be treated as read-only.
+ */
+public final class DemandSideSnapshot {
+
+	public static final DemandSideSnapshot EMPTY = new DemandSideSnapshot(0,
+			Collections.<String, RTBExchange> emptyMap(),
+			Collections.<String, RTBAdvertiser> emptyMap(), 0, 0, 0);
+
+	private final long version;
+	private final Map<String, RTBExchange> exchanges;
+	private final Map<String, RTBAdvertiser> advertisers;
+	private final AdvertiserEligibilityIndex eligibilityIndex;
+	private final DemandSideConfig config;
+
+	/**
+	 * Copies the maps, compiles the eligibility index for
+	 * <tt>advertisers</tt> and resolves the timeouts of each exchange.
+	 */
+	public DemandSideSnapshot(long version, Map<String, RTBExchange> exchanges,
+			Map<String, RTBAdvertiser> advertisers, long serverPort,
+			long requestTimeout, long offerTimeout) {
+		this.version = version;
+		this.exchanges = Collections.unmodifiableMap(new HashMap<String, RTBExchange>(exchanges));
+		this.advertisers = Collections.unmodifiableMap(new HashMap<String, RTBAdvertiser>(advertisers));
+		this.eligibilityIndex = AdvertiserEligibilityIndex.build(this.advertisers);
+		this.config = new DemandSideConfig(serverPort, requestTimeout, offerTimeout, this.exchanges);
+	}
+
+	/**
+	 * Increases every time the owning DAO publishes a new snapshot.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public RTBExchange getExchange(String orgName) {
+		return orgName == null ? null : exchanges.get(orgName);
+	}
+
+	public Map<String, RTBExchange> getExchanges() {
+		return exchanges;
+	}
+
+	public RTBAdvertiser getAdvertiser(String key) {
+		return advertisers.get(key);
+	}
+
+	public Map<String, RTBAdvertiser> getAdvertisers() {
+		return advertisers;
+	}
+
+	public AdvertiserEligibilityIndex getEligibilityIndex() {
+		return eligibilityIndex;
+	}
+
+	public DemandSideConfig getConfig() {
+		return config;
+	}
+
+	public long getServerPort() {
+		return config.getServerPort();
+	}
+
+	public long getRequestTimeout() {
+		return config.getRequestTimeout();
+	}
+
+	public long getOfferTimeout() {
+		return config.getOfferTimeout();
+	}
+}
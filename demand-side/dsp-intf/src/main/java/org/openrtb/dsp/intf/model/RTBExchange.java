@@ -39,7 +39,7 @@ import org.codehaus.jackson.map.annotate.JsonSerialize.Inclusion;
 
 
 @JsonSerialize(include=Inclusion.NON_DEFAULT)
-@JsonPropertyOrder({"orgname", "rtbUrl", "rtbCtype"})
+@JsonPropertyOrder({"orgname", "rtbUrl", "rtbCtype", "requestTO", "offerTO"})
 public class RTBExchange  {
     @JsonProperty("orgname")
 	private String orgName;
@@ -47,6 +47,11 @@ public class RTBExchange  {
 	private String rtbServiceUrl;
     @JsonProperty("rtbCtype")
 	private String rtbContentType;
+    // overrides of the DSP's default timeouts for this exchange, if set
+    @JsonProperty("requestTO")
+	private Long requestTimeout;
+    @JsonProperty("offerTO")
+	private Long offerTimeout;
 	
     public RTBExchange() {
     }
@@ -57,10 +62,19 @@ public class RTBExchange  {
 		this.rtbContentType = rtbContentType;
 	}
 	
+	public RTBExchange(String orgName, String rtbServiceUrl, String rtbContentType,
+			Long requestTimeout, Long offerTimeout) {
+		this(orgName, rtbServiceUrl, rtbContentType);
+		this.requestTimeout = requestTimeout;
+		this.offerTimeout = offerTimeout;
+	}
+	
 	public RTBExchange(RTBExchange copy) {
 		this.orgName = copy.getOrgName();
 		this.rtbContentType = copy.getRtbContentType();
 		this.rtbServiceUrl = copy.getRtbServiceUrl();
+		this.requestTimeout = copy.getRequestTimeout();
+		this.offerTimeout = copy.getOfferTimeout();
 	}
 
     @JsonProperty("orgname")
@@ -89,4 +103,31 @@ public class RTBExchange  {
     protected void setRtbContentType(String rtbCtype) {
 		this.rtbContentType = rtbCtype;
 	}	
+
+    /**
+     * The time, in milliseconds, this exchange waits for a response when its
+     * requests carry no <tt>tmax</tt>; <tt>null</tt> (or not positive) for
+     * the DSP's default.
+     */
+    @JsonProperty("requestTO")
+	public Long getRequestTimeout() {
+		return requestTimeout;
+	}
+
+    protected void setRequestTimeout(Long requestTO) {
+		this.requestTimeout = requestTO;
+	}
+
+    /**
+     * The time, in milliseconds, offers to this exchange stay valid;
+     * <tt>null</tt> (or not positive) for the DSP's default.
+     */
+    @JsonProperty("offerTO")
+	public Long getOfferTimeout() {
+		return offerTimeout;
+	}
+
+    protected void setOfferTimeout(Long offerTO) {
+		this.offerTimeout = offerTO;
+	}
 }
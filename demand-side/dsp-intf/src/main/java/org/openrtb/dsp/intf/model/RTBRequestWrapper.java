@@ -44,8 +44,10 @@ public class RTBRequestWrapper extends BidRequest {
 	}
 
 	BidRequest request;
+	// all of the context below points into the snapshot, nothing is copied
+	DemandSideSnapshot snapshot = DemandSideSnapshot.EMPTY;
 	RTBExchange exchange;
-	final Map<String, RTBAdvertiser> advertisers = new HashMap<String, RTBAdvertiser>();
+	Map<String, RTBAdvertiser> advertisers = snapshot.getAdvertisers();
 	long requestTimeoutMs;
 	long offerTimeoutMs;
 	private boolean isOfferTimerActive;
@@ -60,71 +62,63 @@ public class RTBRequestWrapper extends BidRequest {
 		this.request = request;
 	}
 
+	/**
+	 * Sets the context for this request from a copy of the given exchange and
+	 * advertisers. This builds a private snapshot (and eligibility index) per
+	 * call; servers should share the DAO's snapshot through
+	 * {@link #setContext(String, DemandSideSnapshot)} instead.
+	 */
 	public void setContext(RTBExchange exchange, Map<String, RTBAdvertiser> advertisers,
 							long defaultRequestTO, long defaultOfferTO) {
-		this.exchange = new RTBExchange(exchange);
-		this.advertisers.clear();
-		this.advertisers.putAll(advertisers);
+		Map<String, RTBExchange> exchanges = new HashMap<String, RTBExchange>();
+		String sspName = null;
+		if (exchange != null) {
+			sspName = exchange.getOrgName();
+			exchanges.put(sspName, new RTBExchange(exchange));
+		}
+		setContext(sspName, new DemandSideSnapshot(0, exchanges, advertisers, 0,
+				defaultRequestTO, defaultOfferTO));
+	}
+
+	/**
+	 * Points this request at <tt>snapshot</tt>, the configuration it will see
+	 * for its whole life. This is O(1), no part of the snapshot is copied.
+	 */
+	public void setContext(String sspName, DemandSideSnapshot snapshot) {
+		this.snapshot = snapshot;
+		this.exchange = snapshot.getExchange(sspName);
+		this.advertisers = snapshot.getAdvertisers();
+		// the exchange's own timeouts, resolved when the snapshot was built
+		DemandSideConfig.Exchange config = snapshot.getConfig().forExchange(sspName);
 		if (this.request.tmax == null) {
-			this.requestTimeoutMs = defaultRequestTO;
+			this.requestTimeoutMs = config.getRequestTimeout();
 		} else {
 			this.requestTimeoutMs = this.request.tmax.longValue();
 		}
-		this.offerTimeoutMs = defaultOfferTO;
+		this.offerTimeoutMs = config.getOfferTimeout();
 		this.isOfferTimerActive = false;
 	}
 
+	public DemandSideSnapshot getSnapshot() {
+		return snapshot;
+	}
+
 	public BidRequest getRequest() {
 		return request;
 	}
 
 	/**
-	 * Builds a list of advertiser seat Ids that are allowed to bid on this
-	 * request
+	 * Builds a map of the advertiser seat Ids that are allowed to bid on this
+	 * request, i.e. seats on the exchange whose advertiser is neither blocked
+	 * (<tt>badv</tt>) nor in a blocked category (<tt>bcat</tt>), to the
+	 * advertiser's landing page.
 	 *
 	 * @param sspName
 	 * @return seats
 	 */
 	public Map<String, String> getUnblockedSeats(String sspName) {
-		Map<String, String> seats = new HashMap<String, String>();
-		boolean checkWseat = ((this.request.getWseat() != null) && (!this.request
-				.getWseat().isEmpty()));
-		for (Map.Entry<String, RTBAdvertiser> a : this.advertisers.entrySet()) {
-			// check if this is a private deal (checkWseat == true)
-			CharSequence seatID = a.getValue().getSeat(sspName);
-			// this.request.wseat.contains(seatID));
-			/**
-			 * if (checkWseat && !request.getWseat().contains(seatID)) {
-			 *	 break;
-			 * // yes its a private deal, but this adv is not part of it }
-			 **/
-
-			if (this.request.getBadv() != null) {
-				// now check for blocked advertisers
-				for (CharSequence badv : this.request.getBadv()) {
-
-					if (badv.equals(a.getKey())) {
-						break; // this advertiser is blocked for this request
-					}
-				}
-			}
-			// now check for blocked categories
-			for (String acat : a.getValue().getCategories()) {
-				if (this.request.getBcat() != null) {
-					for (CharSequence bcat : this.request.getBcat()) {
-						if (!acat.equals(bcat.toString())) {
-							break; // this advertiser belongs to a category that
-									// is
-									// blocked for this request
-						}
-					}
-				}
-			}
-
-			// if all tests pass, add seat as an allowed seat to return
-			seats.put(seatID.toString(), a.getValue().getLandingPage());
-		}
-		return seats;
+		return snapshot.getEligibilityIndex().getUnblockedSeats(sspName, this.request.getBadv(),
+				this.request.getBcat());
 	}
 
 	public String getSSPName() {
@@ -33,7 +33,6 @@ package org.openrtb.dsp.intf.service;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
 
 import org.openrtb.common.model.Advertiser;
 import org.openrtb.common.model.Blocklist;
@@ -52,7 +51,8 @@ import org.openrtb.dsp.intf.model.SupplySidePlatform;
  * will make a call to the
  * {@link #replaceBlocklists(SupplySidePlatform, Collection)}. If the blocklist
  * values being returned are an incremental update to the advertiser, then
- * {@link #updateAdvertiserBlocklists(List)} will be called.
+ * {@link #updateAdvertiserBlocklists(SupplySidePlatform, Collection)} will be
+ * called.
  * 
  * @since 1.0
  */
@@ -92,4 +92,26 @@ public interface AdvertiserService {
     public void replaceBlocklists(SupplySidePlatform ssp, 
                                   Collection<Advertiser> advertisers);
 
+    /**
+     * {@link Advertiser}s supplied in this call carry incremental changes to
+     * their {@link Blocklist} entries in the demand-side store: the entries in
+     * {@link Advertiser#getRemovedBlocklist()} are to be removed first, then
+     * those in {@link Advertiser#getBlocklist()} added.
+     * 
+     * Changes may be delivered more than once, so applying them should be
+     * idempotent: adding an entry already present, or removing one that is
+     * not, is not an error.
+     * 
+     * @param ssp
+     *            a non-<tt>null</tt> supply side platform. This SSP is the same
+     *            entity that was returned from
+     *            {@link IdentificationService#getServiceEndpoints()}.
+     * @param advertisers
+     *            a non-<tt>null</tt> list of advertisers whose blocklist
+     *            changes need to be applied to the demand-side platform's
+     *            persistent store.
+     */
+    public void updateAdvertiserBlocklists(SupplySidePlatform ssp,
+                                           Collection<Advertiser> advertisers);
+
 }
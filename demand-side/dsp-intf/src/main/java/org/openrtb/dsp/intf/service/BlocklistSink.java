@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openrtb.dsp.intf.service;
+
+import java.util.List;
+
+import org.openrtb.common.model.Advertiser;
+import org.openrtb.common.model.Blocklist;
+
+/**
+ * Receives the {@link Blocklist}s of one supply-side platform's response
+ * while it is being read, a chunk at a time, so that responses of any size
+ * can be stored without holding them in memory.
+ * 
+ * The response's signature can only be checked once it has been read
+ * completely; until {@link #commit()} is called everything received is
+ * provisional, and on {@link #abort()} it must be discarded.
+ * 
+ * @since 1.0.2
+ */
+public interface BlocklistSink {
+
+    /**
+     * Starts the entries of an advertiser. If its
+     * {@link Advertiser#getTimestamp()} is <tt>null</tt>, the entries that
+     * follow are its complete blocklist; otherwise they are the changes since
+     * that time (see
+     * {@link AdvertiserService#updateAdvertiserBlocklists(org.openrtb.dsp.intf.model.SupplySidePlatform, java.util.Collection)}
+     * ).
+     * 
+     * @param advertiser
+     *            the advertiser, without its blocklists.
+     */
+    public void startAdvertiser(Advertiser advertiser);
+
+    /**
+     * Blocklist entries of the current advertiser. The list is reused once
+     * the call returns.
+     */
+    public void blocklistsAdded(List<Blocklist> chunk);
+
+    /**
+     * Blocklist entries removed from the current advertiser. The list is
+     * reused once the call returns.
+     */
+    public void blocklistsRemoved(List<Blocklist> chunk);
+
+    public void endAdvertiser();
+
+    /**
+     * The response was verified; everything received can be applied.
+     */
+    public void commit();
+
+    /**
+     * The response failed verification or could not be read; everything
+     * received must be discarded.
+     */
+    public void abort();
+}
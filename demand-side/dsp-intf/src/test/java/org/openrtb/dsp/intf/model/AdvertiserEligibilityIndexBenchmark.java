@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.intf.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares seat eligibility through the {@link AdvertiserEligibilityIndex}
+ * with a per-request scan over every advertiser (what
+ * <tt>RTBRequestWrapper.getUnblockedSeats</tt> used to do, with the
+ * <tt>badv</tt>/<tt>bcat</tt> checks actually applied).
+ *
+ * Not run as part of the build; start it through {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdvertiserEligibilityIndexBenchmark {
+
+	private static final int EXCHANGES = 20;
+	private static final int CATEGORIES = 400;
+
+	@Param({"10000", "50000"})
+	int advertiserCount;
+
+	private Map<String, RTBAdvertiser> advertisers;
+	private AdvertiserEligibilityIndex index;
+	private List<CharSequence> badv;
+	private List<CharSequence> bcat;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		advertisers = new HashMap<String, RTBAdvertiser>();
+		for (int i = 0; i < advertiserCount; i++) {
+			String landingPage = "brand" + i + ".com";
+			List<String> categories = new ArrayList<String>();
+			for (int c = 0; c < 3; c++) {
+				categories.add("IAB" + random.nextInt(CATEGORIES));
+			}
+			Map<String, String> seats = new HashMap<String, String>();
+			for (int e = 0; e < 5; e++) {
+				seats.put("Exchange" + random.nextInt(EXCHANGES), "seat-" + i);
+			}
+			advertisers.put(landingPage, new RTBAdvertiser(landingPage, landingPage,
+					"http://" + landingPage + "/nurl", categories, seats));
+		}
+		index = AdvertiserEligibilityIndex.build(advertisers);
+
+		badv = new ArrayList<CharSequence>();
+		for (int i = 0; i < 50; i++) {
+			badv.add("brand" + random.nextInt(advertiserCount) + ".com");
+		}
+		bcat = new ArrayList<CharSequence>();
+		for (int i = 0; i < 10; i++) {
+			bcat.add("IAB" + random.nextInt(CATEGORIES));
+		}
+	}
+
+	@Benchmark
+	public Map<String, String> scan() {
+		Map<String, String> seats = new HashMap<String, String>();
+		String exchange = "Exchange7";
+		for (Map.Entry<String, RTBAdvertiser> a : advertisers.entrySet()) {
+			String seat = a.getValue().getSeat(exchange);
+			if (seat == null || contains(badv, a.getKey())) {
+				continue;
+			}
+			boolean blocked = false;
+			for (String category : a.getValue().getCategories()) {
+				if (contains(bcat, category)) {
+					blocked = true;
+					break;
+				}
+			}
+			if (!blocked) {
+				seats.put(seat, a.getValue().getLandingPage());
+			}
+		}
+		return seats;
+	}
+
+	@Benchmark
+	public Map<String, String> index() {
+		return index.getUnblockedSeats("Exchange7", badv, bcat);
+	}
+
+	private static boolean contains(List<CharSequence> values, String value) {
+		for (CharSequence v : values) {
+			if (value.equals(v.toString())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.include(AdvertiserEligibilityIndexBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.intf.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AdvertiserEligibilityIndexTest {
+
+	private AdvertiserEligibilityIndex index;
+
+	@Before
+	public void setUp() {
+		Map<String, RTBAdvertiser> advertisers = new LinkedHashMap<String, RTBAdvertiser>();
+		advertisers.put("bigbrand.com", advertiser("bigbrand.com", "BigAdExchange", "seat1", "IAB1", "IAB2"));
+		advertisers.put("smallbrand.com", advertiser("smallbrand.com", "BigAdExchange", "seat2", "IAB3"));
+		advertisers.put("otherbrand.com", advertiser("otherbrand.com", "SmallAdExchange", "seat3", "IAB1"));
+		index = AdvertiserEligibilityIndex.build(advertisers);
+	}
+
+	/**
+	 * This method test that only seats on the requesting exchange are eligible
+	 */
+	@Test
+	public void seatsByExchangeTest() {
+		Map<String, String> seats = index.getUnblockedSeats("BigAdExchange", null, null);
+		assertEquals("both seats on the exchange should be eligible", 2, seats.size());
+		assertEquals("bigbrand.com", seats.get("seat1"));
+		assertEquals("smallbrand.com", seats.get("seat2"));
+		assertTrue("unknown exchange should have no seats",
+				index.getUnblockedSeats("NoSuchExchange", null, null).isEmpty());
+	}
+
+	/**
+	 * This method test that blocked categories remove their advertisers
+	 */
+	@Test
+	public void blockedCategoryTest() {
+		Map<String, String> seats = index.getUnblockedSeats("BigAdExchange", null, list("IAB2", "IAB25"));
+		assertEquals("advertiser in a blocked category should be removed", 1, seats.size());
+		assertEquals("smallbrand.com", seats.get("seat2"));
+	}
+
+	/**
+	 * This method test that blocked advertisers are removed
+	 */
+	@Test
+	public void blockedAdvertiserTest() {
+		Map<String, String> seats = index.getUnblockedSeats("BigAdExchange", list("smallbrand.com"), list("IAB1"));
+		assertTrue("all advertisers should be blocked", seats.isEmpty());
+	}
+
+	/**
+	 * This method test the ordinals returned for a request
+	 */
+	@Test
+	public void eligibleOrdinalsTest() {
+		BitSet eligible = index.getEligible("SmallAdExchange", null, list("IAB3"));
+		assertEquals(1, eligible.cardinality());
+		int ordinal = eligible.nextSetBit(0);
+		assertEquals("otherbrand.com", index.getKey(ordinal));
+		assertEquals(Arrays.asList("seat3"), index.getSeats("SmallAdExchange", eligible));
+		assertEquals(3, index.size());
+	}
+
+	static RTBAdvertiser advertiser(String landingPage, String exchange, String seat, String... categories) {
+		Map<String, String> seats = new HashMap<String, String>();
+		seats.put(exchange, seat);
+		return new RTBAdvertiser(landingPage, landingPage, "http://" + landingPage + "/nurl",
+				new ArrayList<String>(Arrays.asList(categories)), seats);
+	}
+
+	static List<CharSequence> list(CharSequence... values) {
+		return Arrays.asList(values);
+	}
+}
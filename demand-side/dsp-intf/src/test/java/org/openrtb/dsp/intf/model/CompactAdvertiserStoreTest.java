@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.intf.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompactAdvertiserStoreTest {
+
+	private Map<String, RTBAdvertiser> advertisers;
+	private CompactAdvertiserStore store;
+
+	@Before
+	public void setUp() {
+		advertisers = new LinkedHashMap<String, RTBAdvertiser>();
+		advertisers.put("bigbrand.com", advertiser("bigbrand.com", 0, "BigAdExchange", "seat1", "IAB1", "IAB2"));
+		advertisers.put("smallbrand.com", advertiser("smallbrand.com", 1, "BigAdExchange", "seat2", "IAB3"));
+		advertisers.put("otherbrand.com", advertiser("otherbrand.com", 2, "SmallAdExchange", "seat3", "IAB1"));
+		store = CompactAdvertiserStore.build(advertisers);
+	}
+
+	@Test
+	public void lookups() {
+		assertEquals(3, store.size());
+		assertEquals(3, store.getCategoryCount());
+		assertEquals(2, store.getExchangeCount());
+		for (RTBAdvertiser expected : advertisers.values()) {
+			String key = expected.getLandingPage();
+			for (String exchange : Arrays.asList("BigAdExchange", "SmallAdExchange", "NoExchange")) {
+				assertEquals(expected.getSeat(exchange), store.getSeat(key, exchange));
+			}
+			assertEquals(expected.getSeats(), store.getSeats(key));
+			assertEquals(expected.getCategories(), store.getCategories(key));
+			assertEquals(expected.getName(), store.getName(key));
+			assertEquals(expected.getNurl(), store.getNurl(key));
+
+			RTBAdvertiser copy = store.getAdvertiser(key);
+			assertEquals(key, copy.getLandingPage());
+			assertEquals(expected.getSeats(), copy.getSeats());
+		}
+		assertTrue(store.hasCategory("bigbrand.com", "IAB2"));
+		assertFalse(store.hasCategory("smallbrand.com", "IAB2"));
+		assertFalse(store.hasCategory("smallbrand.com", "IAB9"));
+		assertEquals(Arrays.asList("bigbrand.com", "otherbrand.com", "smallbrand.com"), store.getKeys());
+	}
+
+	@Test
+	public void unknownAdvertiser() {
+		assertEquals(-1, store.ordinal("unknown.com"));
+		assertEquals(-1, store.ordinal(null));
+		assertNull(store.getSeat("unknown.com", "BigAdExchange"));
+		assertNull(store.getSeat("bigbrand.com", null));
+		assertTrue(store.getCategories("unknown.com").isEmpty());
+		assertTrue(store.getSeats("unknown.com").isEmpty());
+		assertNull(store.getAdvertiser("unknown.com"));
+	}
+
+	@Test
+	public void manyCategories() {
+		Map<String, RTBAdvertiser> many = new HashMap<String, RTBAdvertiser>();
+		List<String> all = new ArrayList<String>();
+		for (int c = 0; c < 200; c++) {
+			all.add("IAB" + c);
+		}
+		RTBAdvertiser wide = advertiser("wide.com", 0, "BigAdExchange", "seat1");
+		wide.setCategories(all);
+		many.put("wide.com", wide);
+		many.put("narrow.com", advertiser("narrow.com", 1, "BigAdExchange", "seat2", "IAB199", "IAB64"));
+		CompactAdvertiserStore wideStore = CompactAdvertiserStore.build(many);
+
+		assertEquals(200, wideStore.getCategories("wide.com").size());
+		assertEquals(Arrays.asList("IAB64", "IAB199"), wideStore.getCategories("narrow.com"));
+		assertTrue(wideStore.hasCategory("narrow.com", "IAB199"));
+		assertFalse(wideStore.hasCategory("narrow.com", "IAB63"));
+	}
+
+	/**
+	 * This method test that the store takes a fraction of the heap the
+	 * advertiser objects it encodes take.
+	 */
+	@Test
+	public void heapFootprint() {
+		int count = 50000;
+		long before = usedHeap();
+		Map<String, RTBAdvertiser> catalog = catalog(count);
+		long objects = usedHeap() - before;
+
+		CompactAdvertiserStore compact = CompactAdvertiserStore.build(catalog);
+		catalog = null;
+		long encoded = usedHeap() - before;
+
+		assertEquals(count, compact.size());
+		assertTrue("the store takes " + encoded + " bytes, the advertisers " + objects,
+				encoded < objects * 3 / 4);
+	}
+
+	// advertisers as parsed from a file: every string a copy of its own
+	private static Map<String, RTBAdvertiser> catalog(int count) {
+		Random random = new Random(42);
+		Map<String, RTBAdvertiser> catalog = new HashMap<String, RTBAdvertiser>();
+		for (int i = 0; i < count; i++) {
+			List<String> categories = new ArrayList<String>();
+			for (int c = 0; c < 3; c++) {
+				categories.add(new String("IAB" + random.nextInt(400)));
+			}
+			Map<String, String> seats = new HashMap<String, String>();
+			for (int s = 0; s < 3; s++) {
+				seats.put(new String("Exchange" + random.nextInt(20)), "s" + i + "-" + s);
+			}
+			String landingPage = "brand" + i + ".com";
+			catalog.put(landingPage, new RTBAdvertiser(landingPage, "Brand " + i,
+					"http://brand" + i + ".com/nurl", categories, seats));
+		}
+		return catalog;
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		// until collections stop freeing anything
+		for (int i = 0; i < 10; i++) {
+			System.gc();
+			long now = runtime.totalMemory() - runtime.freeMemory();
+			if (now >= used) {
+				return Math.min(now, used);
+			}
+			used = now;
+		}
+		return used;
+	}
+
+	private static RTBAdvertiser advertiser(String landingPage, int i, String exchange, String seat,
+			String... categories) {
+		Map<String, String> seats = new HashMap<String, String>();
+		seats.put(exchange, seat);
+		return new RTBAdvertiser(landingPage, "Brand " + i, "http://" + landingPage + "/nurl",
+				new ArrayList<String>(Arrays.asList(categories)), seats);
+	}
+}
@@ -1,7 +1,9 @@
 package org.openrtb.dsp.intf.model;
 
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -94,6 +96,58 @@ public class RTBRequestWrapperTest {
 		assertTrue("request time not match",requestWrapper.requestTimeoutMs==2000);		
 	}
 	
+	/**
+	 * This method test that a shared snapshot is referenced, not copied
+	 */
+	@Test
+	public void setContextSnapshotTest()
+	{
+		Map<String, RTBExchange> exchanges = new HashMap<String, RTBExchange>();
+		exchanges.put("BigAdExchange", new RTBExchange("BigAdExchange", "http://bigadex.com/rtb", "application/json"));
+		DemandSideSnapshot snapshot = new DemandSideSnapshot(7, exchanges, advertisers, 8080, requestTime, offerTime);
+		RTBRequestWrapper first = new RTBRequestWrapper(bidRequest);
+		first.setContext("BigAdExchange", snapshot);
+		RTBRequestWrapper second = new RTBRequestWrapper(bidRequest);
+		second.setContext("BigAdExchange", snapshot);
+
+		assertSame("requests should share the snapshot's advertisers", first.advertisers, second.advertisers);
+		assertSame("requests should share the snapshot's exchange", first.exchange, second.exchange);
+		assertEquals(7, first.getSnapshot().getVersion());
+		assertEquals("BigAdExchange", first.getSSPName());
+		assertEquals("index.htm", first.getUnblockedSeats("BigAdExchange").get("SeatID001"));
+
+		// later changes to the source map are not visible to the snapshot
+		advertisers.clear();
+		assertNotNull(first.getAdvertiser("My Advertiser"));
+	}
+
+	/**
+	 * This method test that an exchange's own timeouts override the defaults
+	 */
+	@Test
+	public void setContextExchangeOverridesTest()
+	{
+		Map<String, RTBExchange> exchanges = new HashMap<String, RTBExchange>();
+		RTBExchange bigAd = new RTBExchange("BigAdExchange", "http://bigadex.com/rtb", "application/json");
+		bigAd.setRequestTimeout(150L);
+		exchanges.put("BigAdExchange", bigAd);
+		exchanges.put("SmallAdExchange", new RTBExchange("SmallAdExchange", "http://smalladex.com/rtb", "application/json"));
+		DemandSideSnapshot snapshot = new DemandSideSnapshot(1, exchanges, advertisers, 8080, requestTime, offerTime);
+
+		assertEquals(150, snapshot.getConfig().forExchange("BigAdExchange").getRequestTimeout());
+		assertEquals(offerTime, snapshot.getConfig().forExchange("BigAdExchange").getOfferTimeout());
+		assertEquals(requestTime, snapshot.getConfig().forExchange("SmallAdExchange").getRequestTimeout());
+		assertEquals(requestTime, snapshot.getConfig().forExchange("UnknownExchange").getRequestTimeout());
+		assertEquals(8080, snapshot.getConfig().getServerPort());
+
+		RTBRequestWrapper bigAdRequest = new RTBRequestWrapper(bidRequest);
+		bigAdRequest.setContext("BigAdExchange", snapshot);
+		assertEquals(150, bigAdRequest.getRequestTO());
+		RTBRequestWrapper smallAdRequest = new RTBRequestWrapper(bidRequest);
+		smallAdRequest.setContext("SmallAdExchange", snapshot);
+		assertEquals(requestTime, smallAdRequest.getRequestTO());
+	}
+
 	/**
 	 * This method test the getUnblockedSeats property  of a RTBRequestWrapper class
 	 */
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openrtb.common.api.BidRequest;
+import org.openrtb.common.api.BidResponse;
+import org.openrtb.common.util.StringUtils;
+import org.openrtb.common.util.statemachines.HashedWheelTimer;
+import org.openrtb.common.util.statemachines.HashedWheelTimer.Timeout;
+import org.openrtb.dsp.core.DemandSideServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single bid request in flight. Whichever of the bidding thread, the
+ * deadline on the wheel and the container timeout gets to
+ * {@link #finish(int, BidResponse)} first writes the response; the others
+ * are ignored.
+ *
+ * The deadline starts out as the exchange's request timeout, which covers the
+ * request while it waits for a bidding thread and its body is decoded, and is
+ * moved to <tt>received + tmax</tt> once the request says what its
+ * <tt>tmax</tt> is. The container timeout, which can only be set before the
+ * body is read, is left as a cap above any of these.
+ */
+class BidTask implements Runnable, AsyncListener {
+
+	private static final Logger log = LoggerFactory.getLogger(BidTask.class);
+
+	private final DemandSideServer server;
+	private final HashedWheelTimer timer;
+	private final AsyncContext async;
+	private final String sspName;
+	private final String contentType;
+	private final long received;
+	private final AtomicBoolean finished = new AtomicBoolean(false);
+	private volatile Timeout expiry = null;
+
+	BidTask(DemandSideServer server, HashedWheelTimer timer, AsyncContext async,
+			String sspName, String contentType, long received) {
+		this.server = server;
+		this.timer = timer;
+		this.async = async;
+		this.sspName = sspName;
+		this.contentType = contentType;
+		this.received = received;
+	}
+
+	/**
+	 * Schedules the exchange's request timeout, to be called before the task
+	 * is handed to the bidding pool.
+	 */
+	void start() {
+		expiry = expireAt(received + server.getRequestTimeout(sspName));
+	}
+
+	public void run() {
+		if (finished.get()) {
+			// timed out while queued, the request has been answered
+			return;
+		}
+		BidRequest bidRequest;
+		try {
+			InputStream in = async.getRequest().getInputStream();
+			bidRequest = server.readRequest(in, contentType);
+		} catch (Exception e) {
+			log.error("Error in decoding bid request from " + sspName + ": "
+					+ StringUtils.stackTraceToString(e));
+			finish(HttpServletResponse.SC_BAD_REQUEST, null);
+			return;
+		}
+
+		if (bidRequest.getTmax() != null) {
+			Timeout queued = expiry;
+			expiry = expireAt(received + bidRequest.getTmax().longValue());
+			if (queued != null) {
+				queued.cancel();
+			}
+		}
+		if (finished.get()) {
+			// the exchange's timeout passed while the body was decoded
+			cancelExpiry();
+			return;
+		}
+
+		BidResponse bidResponse;
+		try {
+			bidResponse = server.process(sspName, bidRequest);
+		} catch (Exception e) {
+			log.error("Error in processing bid request from " + sspName + ": "
+					+ StringUtils.stackTraceToString(e));
+			finish(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, null);
+			return;
+		}
+		finish(DemandSideServlet.isNoBid(bidResponse) ? HttpServletResponse.SC_NO_CONTENT
+				: HttpServletResponse.SC_OK, bidResponse);
+	}
+
+	private Timeout expireAt(long deadline) {
+		return timer.newTimeout(new Runnable() {
+			public void run() {
+				if (finish(HttpServletResponse.SC_NO_CONTENT, null)) {
+					log.warn("bid request from " + sspName + " missed its deadline");
+				}
+			}
+		}, Math.max(0L, deadline - System.currentTimeMillis()));
+	}
+
+	private void cancelExpiry() {
+		Timeout pending = expiry;
+		if (pending != null) {
+			pending.cancel();
+		}
+	}
+
+	/**
+	 * Writes the response unless another party already has; returns whether
+	 * this call was the one that did.
+	 */
+	boolean finish(int status, BidResponse bidResponse) {
+		if (!finished.compareAndSet(false, true)) {
+			return false;
+		}
+		cancelExpiry();
+		HttpServletResponse response = (HttpServletResponse) async.getResponse();
+		try {
+			response.setStatus(status);
+			if (bidResponse != null) {
+				response.setContentType(contentType);
+				OutputStream out = response.getOutputStream();
+				server.writeResponse(bidResponse, contentType, out);
+				out.flush();
+			}
+		} catch (Exception e) {
+			log.error("Error in writing bid response to " + sspName + ": "
+					+ StringUtils.stackTraceToString(e));
+			if (!response.isCommitted()) {
+				response.reset();
+				response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			}
+		} finally {
+			async.complete();
+		}
+		return true;
+	}
+
+	public void onTimeout(AsyncEvent event) throws IOException {
+		log.warn("bid request from " + sspName + " reached the container timeout");
+		finish(HttpServletResponse.SC_NO_CONTENT, null);
+	}
+
+	public void onError(AsyncEvent event) throws IOException {
+		finished.set(true);
+	}
+
+	public void onComplete(AsyncEvent event) throws IOException {
+	}
+
+	public void onStartAsync(AsyncEvent event) throws IOException {
+	}
+}
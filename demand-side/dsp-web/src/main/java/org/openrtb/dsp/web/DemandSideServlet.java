@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.dsp.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openrtb.common.api.BidResponse;
+import org.openrtb.common.api.SeatBid;
+import org.openrtb.common.util.statemachines.HashedWheelTimer;
+import org.openrtb.dsp.client.JsonFileBackedDAO;
+import org.openrtb.dsp.client.JsonFileReloader;
+import org.openrtb.dsp.core.DemandSideServer;
+import org.openrtb.dsp.intf.model.DSPException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+
+/**
+ * The OpenRTB bid endpoint. Exchanges POST bid requests to
+ * <code>/bid/&lt;exchange org name&gt;</code> in the content type configured for
+ * them, and the request is handed to the {@link DemandSideServer} configured
+ * in the Spring context.
+ *
+ * Requests are processed asynchronously: the container thread only checks the
+ * exchange and content type and then hands the request to a bounded bidding
+ * pool, so a slow bidder cannot tie up the connector. When the pool is
+ * saturated the request is answered with <tt>503</tt> straight away.
+ *
+ * The <tt>tmax</tt> of the request (or the configured request timeout when it
+ * is absent) is treated as a hard deadline measured from the moment the
+ * request arrived: a response computed after it would be discarded by the
+ * exchange anyway, so a timeout on the shared {@link HashedWheelTimer} answers
+ * <tt>204 No Content</tt> at the deadline, as for a no-bid, whether or not
+ * the bidder has returned. Until the request is decoded the deadline is the
+ * configured request timeout; see {@link BidTask}. Bids are encoded straight
+ * into the response stream.
+ *
+ * A request that cannot be decoded is answered with <tt>400</tt>; a failure
+ * of the bidder or of encoding the response, while the response is still
+ * uncommitted, with <tt>500</tt>.
+ *
+ * Init parameters (all optional):
+ * <ul>
+ * <li><tt>dbLocation</tt> - DAO configuration file, relative to the web
+ * application root or absolute.</li>
+ * <li><tt>biddingThreads</tt> - size of the bidding pool, defaults to twice
+ * the number of processors.</li>
+ * <li><tt>biddingQueue</tt> - number of requests allowed to wait for a
+ * bidding thread, defaults to 1000.</li>
+ * <li><tt>maxTmax</tt> - the container timeout, in milliseconds, which caps
+ * the <tt>tmax</tt> of any request, defaults to 10000.</li>
+ * <li><tt>configPollInterval</tt> - how often, in milliseconds, the
+ * <tt>dbLocation</tt> file is checked for changes to reload, when the DAO is
+ * a {@link JsonFileBackedDAO}; defaults to 2000, 0 turns reloading off.</li>
+ * <li><tt>configDebounce</tt> - how long, in milliseconds, a changed file
+ * must stay the same before it is reloaded, defaults to 1000.</li>
+ * </ul>
+ */
+public class DemandSideServlet extends HttpServlet {
+
+	private static final Logger log = LoggerFactory.getLogger(DemandSideServlet.class);
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+	private static final int DEFAULT_MAX_TMAX = 10000;
+
+	private static final String DAO_SPRING_NAME = "dsp.client.DemandSideDAO";
+
+	private final HashedWheelTimer timer = HashedWheelTimer.getShared();
+
+	private DemandSideServer server = null;
+	private ThreadPoolExecutor biddingPool = null;
+	private long maxTmax = DEFAULT_MAX_TMAX;
+	private JsonFileReloader reloader = null;
+
+	/**
+	 * Looks up the {@link DemandSideServer} from the Spring context, loads its
+	 * configuration, starts watching it for changes and starts the bidding
+	 * pool.
+	 */
+	@Override
+	public void init() throws ServletException {
+		WebApplicationContext context = WebApplicationContextUtils
+				.getRequiredWebApplicationContext(getServletContext());
+		server = (DemandSideServer) context.getBean(DemandSideServer.SPRING_NAME);
+
+		String dbLocation = getServletConfig().getInitParameter("dbLocation");
+		if (dbLocation != null && !new File(dbLocation).isAbsolute()) {
+			dbLocation = getServletContext().getRealPath(dbLocation);
+		}
+		try {
+			server.init(dbLocation);
+		} catch (DSPException e) {
+			throw new ServletException(e.getMessage(), e);
+		}
+
+		Object dao = context.getBean(DAO_SPRING_NAME);
+		long pollInterval = intParameter("configPollInterval", (int) JsonFileReloader.DEFAULT_POLL_INTERVAL);
+		if (pollInterval > 0 && dao instanceof JsonFileBackedDAO) {
+			reloader = new JsonFileReloader((JsonFileBackedDAO) dao, pollInterval,
+					intParameter("configDebounce", (int) JsonFileReloader.DEFAULT_DEBOUNCE));
+			reloader.start();
+		}
+
+		maxTmax = intParameter("maxTmax", DEFAULT_MAX_TMAX);
+
+		int threads = intParameter("biddingThreads", 2 * Runtime.getRuntime().availableProcessors());
+		int queue = intParameter("biddingQueue", DEFAULT_QUEUE_SIZE);
+		biddingPool = new ThreadPoolExecutor(threads, threads, 0L,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queue),
+				new BiddingThreadFactory());
+		log.info("bidding pool started with " + threads + " threads, queue of " + queue);
+	}
+
+	@Override
+	public void destroy() {
+		if (reloader != null) {
+			reloader.shutdown();
+		}
+		if (biddingPool != null) {
+			biddingPool.shutdownNow();
+		}
+	}
+
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		final long received = System.currentTimeMillis();
+		final String sspName = getSSPName(request);
+		final String contentType = getMediaType(request.getContentType());
+
+		try {
+			if (sspName == null || !server.authorizeRemoteService(sspName)) {
+				response.sendError(HttpServletResponse.SC_FORBIDDEN);
+				return;
+			}
+			if (contentType == null || !server.verifyContentType(sspName, contentType)) {
+				response.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+				return;
+			}
+		} catch (DSPException e) {
+			throw new ServletException(e.getMessage(), e);
+		}
+
+		// servlet 3.0 only takes the timeout now, before tmax is known, so the
+		// container timeout is just a cap and the deadlines are kept by BidTask
+		AsyncContext async = request.startAsync();
+		async.setTimeout(maxTmax);
+		BidTask bid = new BidTask(server, timer, async, sspName, contentType, received);
+		async.addListener(bid);
+		bid.start();
+		try {
+			biddingPool.execute(bid);
+		} catch (RejectedExecutionException e) {
+			log.warn("bidding pool saturated, rejecting request from " + sspName);
+			bid.finish(HttpServletResponse.SC_SERVICE_UNAVAILABLE, null);
+		}
+	}
+
+	// exchanges post to /bid/<org name>
+	static String getSSPName(HttpServletRequest request) {
+		String path = request.getPathInfo();
+		if (path == null || path.length() < 2) {
+			return null;
+		}
+		return path.substring(1);
+	}
+
+	// drops parameters such as "; charset=UTF-8"
+	static String getMediaType(String contentType) {
+		if (contentType == null) {
+			return null;
+		}
+		int semicolon = contentType.indexOf(';');
+		return (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim();
+	}
+
+	static boolean isNoBid(BidResponse bidResponse) {
+		if (bidResponse == null) {
+			return true;
+		}
+		List<SeatBid> seatBids = bidResponse.getSeatbid();
+		return seatBids == null || seatBids.isEmpty();
+	}
+
+	private int intParameter(String name, int defaultValue) {
+		String value = getServletConfig().getInitParameter(name);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	private static class BiddingThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "dsp-bidder-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openrtb.dsp.web;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openrtb.common.api.BidRequest;
+import org.openrtb.common.api.BidResponse;
+import org.openrtb.common.api.SeatBid;
+import org.openrtb.common.util.statemachines.HashedWheelTimer;
+import org.openrtb.dsp.core.DemandSideServer;
+
+/**
+ * Test that a bid request is answered by its tmax, not by the exchange's
+ * request timeout, without a servlet container.
+ */
+public class BidTaskTest {
+	private static final String SSP = "BigAdExchange";
+	private static final String CONTENT_TYPE = "application/json";
+	private static final long REQUEST_TIMEOUT = 50;
+
+	private HashedWheelTimer timer;
+	private DemandSideServer server;
+	private AsyncContext async;
+	private HttpServletResponse response;
+	private CountDownLatch completed;
+
+	@Before
+	public void setUp() throws Exception {
+		timer = new HashedWheelTimer("bid-task-test", 5, TimeUnit.MILLISECONDS, 16);
+		server = mock(DemandSideServer.class);
+		when(server.getRequestTimeout(SSP)).thenReturn(REQUEST_TIMEOUT);
+
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		response = mock(HttpServletResponse.class);
+		when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		});
+		async = mock(AsyncContext.class);
+		when(async.getRequest()).thenReturn(request);
+		when(async.getResponse()).thenReturn(response);
+		completed = new CountDownLatch(1);
+		doAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) {
+				completed.countDown();
+				return null;
+			}
+		}).when(async).complete();
+	}
+
+	@After
+	public void tearDown() {
+		timer.stop();
+	}
+
+	/**
+	 * This method test that a bidder slower than the request timeout but
+	 * within the tmax of the request gets its bid through
+	 */
+	@Test
+	public void tmaxLongerThanRequestTimeout() throws Exception {
+		final long received = System.currentTimeMillis();
+		final BidResponse bid = bid();
+		when(server.readRequest(anyInput(), eq(CONTENT_TYPE))).thenReturn(request(10000));
+		when(server.process(eq(SSP), anyRequest())).thenAnswer(new Answer<BidResponse>() {
+			public BidResponse answer(InvocationOnMock invocation) throws InterruptedException {
+				// well past the request timeout, well within tmax
+				long done = received + 4 * REQUEST_TIMEOUT;
+				for (long now = received; now < done; now = System.currentTimeMillis()) {
+					Thread.sleep(done - now);
+				}
+				return bid;
+			}
+		});
+
+		BidTask task = new BidTask(server, timer, async, SSP, CONTENT_TYPE, received);
+		task.start();
+		task.run();
+
+		assertTrue(completed.await(10, TimeUnit.SECONDS));
+		verify(response).setStatus(HttpServletResponse.SC_OK);
+		verify(response, never()).setStatus(HttpServletResponse.SC_NO_CONTENT);
+		verify(response, never()).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		verify(server).writeResponse(eq(bid), eq(CONTENT_TYPE), anyOutput());
+	}
+
+	/**
+	 * This method test that a bidder slower than tmax gets a no-bid answered
+	 * for it while it is still bidding
+	 */
+	@Test
+	public void bidderSlowerThanTmax() throws Exception {
+		when(server.getRequestTimeout(SSP)).thenReturn(60000L);
+		when(server.readRequest(anyInput(), eq(CONTENT_TYPE))).thenReturn(request(50));
+		final CountDownLatch release = new CountDownLatch(1);
+		when(server.process(eq(SSP), anyRequest())).thenAnswer(new Answer<BidResponse>() {
+			public BidResponse answer(InvocationOnMock invocation) throws InterruptedException {
+				release.await();
+				return bid();
+			}
+		});
+
+		BidTask task = new BidTask(server, timer, async, SSP, CONTENT_TYPE,
+				System.currentTimeMillis());
+		task.start();
+		Thread bidder = new Thread(task);
+		bidder.start();
+		try {
+			assertTrue(completed.await(10, TimeUnit.SECONDS));
+			verify(response).setStatus(HttpServletResponse.SC_NO_CONTENT);
+		} finally {
+			release.countDown();
+			bidder.join();
+		}
+		verify(response, never()).setStatus(HttpServletResponse.SC_OK);
+		verify(server, never()).writeResponse(anyResponse(), eq(CONTENT_TYPE), anyOutput());
+	}
+
+	/**
+	 * This method test that a request still waiting for a bidding thread is
+	 * answered at the request timeout, and left alone when a thread gets to it
+	 */
+	@Test
+	public void queuedRequestTimesOut() throws Exception {
+		BidTask task = new BidTask(server, timer, async, SSP, CONTENT_TYPE,
+				System.currentTimeMillis());
+		task.start();
+
+		assertTrue(completed.await(10, TimeUnit.SECONDS));
+		verify(response).setStatus(HttpServletResponse.SC_NO_CONTENT);
+		task.run();
+		verify(server, never()).readRequest(anyInput(), eq(CONTENT_TYPE));
+	}
+
+	private static BidRequest request(int tmax) {
+		BidRequest request = new BidRequest();
+		request.setId("bid-task-test");
+		request.setTmax(tmax);
+		return request;
+	}
+
+	private static BidResponse bid() {
+		BidResponse bid = new BidResponse();
+		bid.setSeatbid(Collections.singletonList(new SeatBid()));
+		return bid;
+	}
+
+	private static InputStream anyInput() {
+		return anyObject();
+	}
+
+	private static OutputStream anyOutput() {
+		return anyObject();
+	}
+
+	private static BidRequest anyRequest() {
+		return anyObject();
+	}
+
+	private static BidResponse anyResponse() {
+		return anyObject();
+	}
+}
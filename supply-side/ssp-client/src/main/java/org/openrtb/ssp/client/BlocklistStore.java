@@ -0,0 +1,532 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.ssp.client;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.openrtb.common.model.Blocklist;
+
+/**
+ * An in-memory store of advertiser {@link Blocklist}s for
+ * {@link org.openrtb.ssp.SupplySideService} implementations.
+ *
+ * Reads never block: the store's contents are an immutable {@link Snapshot},
+ * replaced as a whole on every change. Writers are serialized, and copy only
+ * what they change: the snapshot's maps are {@link PersistentMap}s, which
+ * share everything but the path to a changed key with the previous snapshot,
+ * and the entries of the advertisers concerned are copied once per change. A
+ * single {@link #add(String, Blocklist)} therefore costs the size of its
+ * advertiser's blocklist, not that of the store; bulk changes are still
+ * cheaper through {@link #importBlocklists(Map)}, which copies each
+ * advertiser once.
+ *
+ * Entries are keyed by advertiser landing page, and indexed by publisher and
+ * by site. Each entry remembers when it was added, and removed entries are
+ * remembered for <tt>removalRetention</tt> milliseconds, so that the changes
+ * since a given time can be served; the {@link Snapshot#getHorizon() horizon}
+ * is the earliest time for which they are known. Removals are queued by
+ * time, so expiring them only looks at those that are due. The strings of
+ * entries are interned in a weak pool of the store's own, as the same
+ * publishers and sites recur across advertisers; strings no entry uses any
+ * more drop out of it.
+ *
+ * @since 2.0.0
+ */
+public class BlocklistStore {
+
+	public static final long DEFAULT_REMOVAL_RETENTION = 7L * 24 * 60 * 60 * 1000;
+
+	private final long removalRetention;
+	private final Object writeLock = new Object();
+	// guarded by writeLock, as are all changes
+	private final Map<String,WeakReference<String>> strings = new WeakHashMap<String,WeakReference<String>>();
+	// the removals not expired yet, oldest first; guarded by writeLock
+	private final PriorityQueue<Removal> removals = new PriorityQueue<Removal>();
+	private volatile Snapshot current;
+
+	public BlocklistStore() {
+		this(DEFAULT_REMOVAL_RETENTION);
+	}
+
+	public BlocklistStore(long removalRetention) {
+		this.removalRetention = removalRetention;
+		this.current = new Snapshot(System.currentTimeMillis());
+	}
+
+	/**
+	 * The current contents of the store. The snapshot never changes; take one
+	 * to answer a request consistently.
+	 */
+	public Snapshot snapshot() {
+		return current;
+	}
+
+	/**
+	 * Blocks the advertiser on the publisher (and site) of <tt>blocklist</tt>,
+	 * replacing any entry for the same publisher and site.
+	 */
+	public void add(String landingPage, Blocklist blocklist) {
+		synchronized (writeLock) {
+			Writer writer = new Writer(current, System.currentTimeMillis());
+			writer.add(landingPage, blocklist);
+			current = writer.publish();
+		}
+	}
+
+	/**
+	 * Lifts the block of the advertiser on the given publisher (and site).
+	 * @return <tt>false</tt> if there was no such block.
+	 */
+	public boolean remove(String landingPage, String publisherId, String siteId) {
+		synchronized (writeLock) {
+			Writer writer = new Writer(current, System.currentTimeMillis());
+			if (!writer.remove(landingPage, key(publisherId, siteId))) {
+				return false;
+			}
+			current = writer.publish();
+			return true;
+		}
+	}
+
+	/**
+	 * Replaces the complete blocklists of the given advertisers, in one
+	 * change. Entries that are already present keep the time they were
+	 * added, and entries no longer present are recorded as removed, so that
+	 * the changes served afterwards are only the actual ones.
+	 *
+	 * @param blocklists advertiser landing page -> complete blocklist
+	 */
+	public void importBlocklists(Map<String,? extends Collection<Blocklist>> blocklists) {
+		synchronized (writeLock) {
+			Writer writer = new Writer(current, System.currentTimeMillis());
+			for (Map.Entry<String,? extends Collection<Blocklist>> e : blocklists.entrySet()) {
+				String landingPage = e.getKey();
+				Set<String> keep = new HashSet<String>();
+				for (Blocklist blocklist : e.getValue()) {
+					String key = key(blocklist.getPublisherId(), blocklist.getSiteId());
+					keep.add(key);
+					if (!writer.contains(landingPage, key, blocklist)) {
+						writer.add(landingPage, blocklist);
+					}
+				}
+				for (String key : writer.keys(landingPage)) {
+					if (!keep.contains(key)) {
+						writer.remove(landingPage, key);
+					}
+				}
+			}
+			current = writer.publish();
+		}
+	}
+
+	private Entry intern(Entry entry) {
+		return new Entry(intern(entry.publisherId), intern(entry.publisherName),
+				intern(entry.siteId), intern(entry.siteName), entry.time);
+	}
+
+	private String intern(String s) {
+		if (s == null) {
+			return null;
+		}
+		WeakReference<String> ref = strings.get(s);
+		String interned = ref == null ? null : ref.get();
+		if (interned == null) {
+			strings.put(s, new WeakReference<String>(s));
+			interned = s;
+		}
+		return interned;
+	}
+
+	/**
+	 * Replaces the contents of the store with those of a snapshot file, as
+	 * they were when it was written: entries keep the time they were added,
+	 * and removals and the horizon are carried over.
+	 */
+	public void restore(MappedBlocklistSnapshot snapshot) {
+		synchronized (writeLock) {
+			removals.clear();
+			Writer writer = new Writer(new Snapshot(snapshot.getHorizon()), System.currentTimeMillis());
+			snapshot.restoreTo(writer);
+			current = writer.publish();
+		}
+	}
+
+	private static String key(String publisherId, String siteId) {
+		return publisherId + ":" + siteId;
+	}
+
+	/**
+	 * An immutable view of the store at one point in time.
+	 */
+	public static class Snapshot implements BlocklistView {
+		// advertiser landing page -> its entries
+		private final PersistentMap<String,AdvertiserEntries> advertisers;
+		// publisher id -> landing pages with entries for it, as a set
+		private final PersistentMap<String,PersistentMap<String,String>> byPublisher;
+		// publisher id:site id -> landing pages with entries for the site
+		private final PersistentMap<String,PersistentMap<String,String>> bySite;
+		private final long horizon;
+
+		Snapshot(long horizon) {
+			this(PersistentMap.<String,AdvertiserEntries>empty(),
+					PersistentMap.<String,PersistentMap<String,String>>empty(),
+					PersistentMap.<String,PersistentMap<String,String>>empty(), horizon);
+		}
+
+		Snapshot(PersistentMap<String,AdvertiserEntries> advertisers,
+				PersistentMap<String,PersistentMap<String,String>> byPublisher,
+				PersistentMap<String,PersistentMap<String,String>> bySite, long horizon) {
+			this.advertisers = advertisers;
+			this.byPublisher = byPublisher;
+			this.bySite = bySite;
+			this.horizon = horizon;
+		}
+
+		@Override
+		public List<Blocklist> getBlocklist(String landingPage) {
+			return getBlocklistSince(landingPage, Long.MIN_VALUE);
+		}
+
+		@Override
+		public List<Blocklist> getBlocklistSince(String landingPage, long since) {
+			AdvertiserEntries advertiser = advertisers.get(landingPage);
+			if (advertiser == null || advertiser.lastModified < since) {
+				return new ArrayList<Blocklist>();
+			}
+			List<Blocklist> list = new ArrayList<Blocklist>(advertiser.entries.size());
+			for (Entry e : advertiser.entries.values()) {
+				if (e.time >= since) {
+					list.add(e.toBlocklist());
+				}
+			}
+			return list;
+		}
+
+		@Override
+		public List<Blocklist> getRemovedSince(String landingPage, long since) {
+			AdvertiserEntries advertiser = advertisers.get(landingPage);
+			List<Blocklist> list = new ArrayList<Blocklist>();
+			if (advertiser == null || advertiser.lastModified < since) {
+				return list;
+			}
+			for (Entry e : advertiser.removed) {
+				if (e.time >= since) {
+					list.add(e.toBlocklist());
+				}
+			}
+			return list;
+		}
+
+		@Override
+		public long getLastModified(String landingPage) {
+			AdvertiserEntries advertiser = advertisers.get(landingPage);
+			return advertiser == null ? 0 : advertiser.lastModified;
+		}
+
+		@Override
+		public long getHorizon() {
+			return horizon;
+		}
+
+		/**
+		 * The landing pages of the advertisers with an entry for the publisher,
+		 * for the whole of it or any of its sites.
+		 */
+		public Set<String> getAdvertisersByPublisher(String publisherId) {
+			PersistentMap<String,String> landingPages = publisherId == null ? null : byPublisher.get(publisherId);
+			return landingPages == null ? Collections.<String>emptySet() : landingPages.keySet();
+		}
+
+		/**
+		 * The landing pages of the advertisers with an entry for this site of
+		 * the publisher.
+		 */
+		public Set<String> getAdvertisersBySite(String publisherId, String siteId) {
+			PersistentMap<String,String> landingPages = bySite.get(key(publisherId, siteId));
+			return landingPages == null ? Collections.<String>emptySet() : landingPages.keySet();
+		}
+
+		@Override
+		public Set<String> getAdvertisers() {
+			return advertisers.keySet();
+		}
+
+		@Override
+		public int size() {
+			return advertisers.size();
+		}
+
+		// the advertiser's entries as kept, null if it is not known
+		AdvertiserEntries entries(String landingPage) {
+			return advertisers.get(landingPage);
+		}
+	}
+
+	/**
+	 * Builds the next snapshot from the current one, copying the entries of an
+	 * advertiser the first time it changes them.
+	 */
+	class Writer {
+		private final long now;
+		private PersistentMap<String,AdvertiserEntries> advertisers;
+		private PersistentMap<String,PersistentMap<String,String>> byPublisher;
+		private PersistentMap<String,PersistentMap<String,String>> bySite;
+		// the advertisers copied already, by this writer
+		private final Set<String> copiedAdvertisers = new HashSet<String>();
+		// removals made by this writer, queued when it publishes
+		private final List<Removal> removed = new ArrayList<Removal>();
+		private long horizon;
+
+		Writer(Snapshot base, long now) {
+			this.now = now;
+			this.advertisers = base.advertisers;
+			this.byPublisher = base.byPublisher;
+			this.bySite = base.bySite;
+			this.horizon = base.horizon;
+		}
+
+		boolean contains(String landingPage, String key, Blocklist blocklist) {
+			AdvertiserEntries advertiser = advertisers.get(landingPage);
+			Entry entry = advertiser == null ? null : advertiser.entries.get(key);
+			return entry != null && entry.matches(blocklist);
+		}
+
+		Collection<String> keys(String landingPage) {
+			AdvertiserEntries advertiser = advertisers.get(landingPage);
+			return advertiser == null ? Collections.<String>emptyList()
+					: new ArrayList<String>(advertiser.entries.keySet());
+		}
+
+		void add(String landingPage, Blocklist blocklist) {
+			put(landingPage, new Entry(blocklist.getPublisherId(), blocklist.getPublisherName(),
+					blocklist.getSiteId(), blocklist.getSiteName(), now));
+			advertiser(landingPage).lastModified = now;
+		}
+
+		// the entry as it is, with its own time
+		void put(String landingPage, Entry entry) {
+			entry = intern(entry);
+			AdvertiserEntries advertiser = advertiser(landingPage);
+			String key = key(entry.publisherId, entry.siteId);
+			advertiser.entries.remove(key);
+			advertiser.entries.put(key, entry);
+			if (entry.publisherId != null) {
+				byPublisher = index(byPublisher, entry.publisherId, landingPage, true);
+			}
+			if (entry.siteId != null) {
+				bySite = index(bySite, key, landingPage, true);
+			}
+		}
+
+		boolean remove(String landingPage, String key) {
+			AdvertiserEntries existing = advertisers.get(landingPage);
+			if (existing == null || !existing.entries.containsKey(key)) {
+				return false;
+			}
+			AdvertiserEntries advertiser = advertiser(landingPage);
+			Entry entry = advertiser.entries.remove(key);
+			advertiser.removed.add(entry.removedAt(now));
+			advertiser.lastModified = now;
+			removed.add(new Removal(now, landingPage));
+
+			boolean publisherLeft = false;
+			for (Entry e : advertiser.entries.values()) {
+				if (e.publisherId == null ? entry.publisherId == null : e.publisherId.equals(entry.publisherId)) {
+					publisherLeft = true;
+					break;
+				}
+			}
+			if (!publisherLeft && entry.publisherId != null) {
+				byPublisher = index(byPublisher, entry.publisherId, landingPage, false);
+			}
+			if (entry.siteId != null) {
+				bySite = index(bySite, key, landingPage, false);
+			}
+			return true;
+		}
+
+		void putRemoved(String landingPage, Entry entry) {
+			advertiser(landingPage).removed.add(intern(entry));
+			removed.add(new Removal(entry.time, landingPage));
+		}
+
+		void setLastModified(String landingPage, long lastModified) {
+			advertiser(landingPage).lastModified = lastModified;
+		}
+
+		Snapshot publish() {
+			removals.addAll(removed);
+			expireRemovals();
+			dropEmpty();
+			return new Snapshot(advertisers, byPublisher, bySite, horizon);
+		}
+
+		// the advertiser's entries, copied for this writer
+		private AdvertiserEntries advertiser(String landingPage) {
+			AdvertiserEntries advertiser = advertisers.get(landingPage);
+			if (copiedAdvertisers.add(landingPage)) {
+				advertiser = advertiser == null ? new AdvertiserEntries() : new AdvertiserEntries(advertiser);
+				advertisers = advertisers.plus(landingPage, advertiser);
+			}
+			return advertiser;
+		}
+
+		private PersistentMap<String,PersistentMap<String,String>> index(
+				PersistentMap<String,PersistentMap<String,String>> index, String key,
+				String landingPage, boolean add) {
+			PersistentMap<String,String> landingPages = index.get(key);
+			if (landingPages == null) {
+				landingPages = PersistentMap.empty();
+			}
+			landingPages = add ? landingPages.plus(landingPage, landingPage) : landingPages.minus(landingPage);
+			return landingPages.isEmpty() ? index.minus(key) : index.plus(key, landingPages);
+		}
+
+		// only the removals that are due are looked at; those of an advertiser
+		// are oldest first, so its list is trimmed from the head
+		private void expireRemovals() {
+			long oldest = now - removalRetention;
+			while (!removals.isEmpty() && removals.peek().time < oldest) {
+				String landingPage = removals.poll().landingPage;
+				AdvertiserEntries existing = advertisers.get(landingPage);
+				if (existing == null || existing.removed.isEmpty() || existing.removed.get(0).time >= oldest) {
+					// expired along with an earlier removal of the advertiser
+					continue;
+				}
+				AdvertiserEntries advertiser = advertiser(landingPage);
+				Iterator<Entry> itr = advertiser.removed.iterator();
+				while (itr.hasNext()) {
+					Entry entry = itr.next();
+					if (entry.time >= oldest) {
+						break;
+					}
+					itr.remove();
+					horizon = Math.max(horizon, entry.time);
+				}
+			}
+		}
+
+		// advertisers left with nothing are dropped, before publishing
+		private void dropEmpty() {
+			for (String landingPage : copiedAdvertisers) {
+				AdvertiserEntries advertiser = advertisers.get(landingPage);
+				if (advertiser.entries.isEmpty() && advertiser.removed.isEmpty()) {
+					advertisers = advertisers.minus(landingPage);
+				}
+			}
+		}
+	}
+
+	// a removal waiting to expire
+	private static class Removal implements Comparable<Removal> {
+		final long time;
+		final String landingPage;
+
+		Removal(long time, String landingPage) {
+			this.time = time;
+			this.landingPage = landingPage;
+		}
+
+		public int compareTo(Removal other) {
+			return time < other.time ? -1 : (time == other.time ? 0 : 1);
+		}
+	}
+
+	/**
+	 * The entries of one advertiser; never changed once published.
+	 */
+	static class AdvertiserEntries {
+		// by publisher id:site id, in the order added
+		final LinkedHashMap<String,Entry> entries;
+		// oldest first
+		final List<Entry> removed;
+		long lastModified;
+
+		AdvertiserEntries() {
+			entries = new LinkedHashMap<String,Entry>();
+			removed = new ArrayList<Entry>();
+		}
+
+		AdvertiserEntries(AdvertiserEntries other) {
+			entries = new LinkedHashMap<String,Entry>(other.entries);
+			removed = new ArrayList<Entry>(other.removed);
+			lastModified = other.lastModified;
+		}
+	}
+
+	static class Entry {
+		final String publisherId;
+		final String publisherName;
+		final String siteId;
+		final String siteName;
+		// when the entry was added, or removed
+		final long time;
+
+		Entry(String publisherId, String publisherName, String siteId, String siteName, long time) {
+			this.publisherId = publisherId;
+			this.publisherName = publisherName;
+			this.siteId = siteId;
+			this.siteName = siteName;
+			this.time = time;
+		}
+
+		Entry removedAt(long time) {
+			return new Entry(publisherId, publisherName, siteId, siteName, time);
+		}
+
+		boolean matches(Blocklist blocklist) {
+			return equal(publisherId, blocklist.getPublisherId())
+					&& equal(publisherName, blocklist.getPublisherName())
+					&& equal(siteId, blocklist.getSiteId())
+					&& equal(siteName, blocklist.getSiteName());
+		}
+
+		Blocklist toBlocklist() {
+			return new Blocklist(publisherId, publisherName, siteId, siteName);
+		}
+
+		private static boolean equal(String a, String b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.ssp.client;
+
+import java.util.List;
+import java.util.Set;
+
+import org.openrtb.common.model.Blocklist;
+
+/**
+ * Read access to advertiser {@link Blocklist}s at one point in time, as
+ * needed to answer DSP requests; implemented by {@link BlocklistStore.Snapshot}
+ * on the heap, and by {@link MappedBlocklistSnapshot} from a file.
+ *
+ * @since 2.0.0
+ */
+public interface BlocklistView {
+
+	/**
+	 * The advertiser's complete blocklist.
+	 */
+	List<Blocklist> getBlocklist(String landingPage);
+
+	/**
+	 * The entries added to the advertiser's blocklist at or after
+	 * <tt>since</tt>.
+	 */
+	List<Blocklist> getBlocklistSince(String landingPage, long since);
+
+	/**
+	 * The entries removed from the advertiser's blocklist at or after
+	 * <tt>since</tt>, as far as they are known (see {@link #getHorizon()}).
+	 */
+	List<Blocklist> getRemovedSince(String landingPage, long since);
+
+	/**
+	 * When the advertiser's blocklist last changed, <tt>0</tt> if it is
+	 * not known.
+	 */
+	long getLastModified(String landingPage);
+
+	/**
+	 * The earliest time from which all changes are known; changes since an
+	 * earlier time can only be served as complete blocklists.
+	 */
+	long getHorizon();
+
+	/**
+	 * The landing pages of all advertisers known.
+	 */
+	Set<String> getAdvertisers();
+
+	int size();
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.ssp.client;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openrtb.common.model.Blocklist;
+
+/**
+ * A {@link BlocklistStore} snapshot written to a file, and read back by
+ * mapping the file into memory: lookups read the mapped region directly, so
+ * a restarted SSP can answer requests as soon as the file is opened, without
+ * loading it first.
+ *
+ * The file is written to a temporary file next to it, synced, and renamed
+ * over it, so that readers see either the old or the new snapshot, never a
+ * partial one. Its layout, big-endian throughout:
+ * <pre>
+ * header      magic, version, written, horizon,
+ *             advertiser count, entry count, string count, string bytes
+ * advertisers landing page, first entry, entry count, removed count,
+ *             last modified; sorted by landing page
+ * entries     publisher id, publisher name, site id, site name, time;
+ *             each advertiser's entries, followed by its removed ones
+ * strings     (string count + 1) offsets, then the UTF-8 bytes
+ * </pre>
+ * Strings are referred to by their index, <tt>-1</tt> standing for
+ * <tt>null</tt>, and are written once however often they occur. Files are
+ * limited to 2GB, the most a single mapping can hold.
+ *
+ * @since 2.0.0
+ */
+public class MappedBlocklistSnapshot implements BlocklistView {
+
+	private static final int MAGIC = 0x4f52424c; // "ORBL"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 40;
+	private static final int ADVERTISER_SIZE = 24;
+	private static final int ENTRY_SIZE = 24;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final ByteBuffer buffer;
+	private final long written;
+	private final long horizon;
+	private final int advertiserCount;
+	private final int entriesStart;
+	private final int offsetsStart;
+	private final int stringsStart;
+
+	private MappedBlocklistSnapshot(File file, ByteBuffer buffer) throws IOException {
+		this.file = file;
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException(file + " is not a blocklist snapshot");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException(file + " is a version " + buffer.getInt(4) + " blocklist snapshot, "
+					+ "only version " + VERSION + " is supported");
+		}
+		written = buffer.getLong(8);
+		horizon = buffer.getLong(16);
+		advertiserCount = buffer.getInt(24);
+		int entryCount = buffer.getInt(28);
+		int stringCount = buffer.getInt(32);
+		int stringBytes = buffer.getInt(36);
+
+		entriesStart = HEADER_SIZE + advertiserCount * ADVERTISER_SIZE;
+		offsetsStart = entriesStart + entryCount * ENTRY_SIZE;
+		stringsStart = offsetsStart + (stringCount + 1) * 4;
+		if (advertiserCount < 0 || entryCount < 0 || stringCount < 0
+				|| (long) stringsStart + stringBytes != buffer.capacity()) {
+			throw new IOException(file + " is truncated or corrupt");
+		}
+	}
+
+	/**
+	 * Maps a snapshot file into memory. Only the header is read; the mapping
+	 * stays valid for as long as the returned snapshot is referenced.
+	 */
+	public static MappedBlocklistSnapshot open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to be mapped");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new MappedBlocklistSnapshot(file, buffer);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Writes the snapshot to <tt>file</tt>, replacing it as a whole once the
+	 * new contents are on disk.
+	 */
+	public static void write(BlocklistStore.Snapshot snapshot, File file) throws IOException {
+		// landing pages in the order looked up: by their UTF-8 bytes
+		List<byte[]> landingPages = new ArrayList<byte[]>(snapshot.size());
+		for (String landingPage : snapshot.getAdvertisers()) {
+			landingPages.add(landingPage.getBytes(UTF8));
+		}
+		Collections.sort(landingPages, new Comparator<byte[]>() {
+			@Override
+			public int compare(byte[] a, byte[] b) {
+				return MappedBlocklistSnapshot.compare(a, ByteBuffer.wrap(b), 0, b.length);
+			}
+		});
+
+		StringTable strings = new StringTable();
+		List<BlocklistStore.AdvertiserEntries> advertisers =
+				new ArrayList<BlocklistStore.AdvertiserEntries>(landingPages.size());
+		int entryCount = 0;
+		for (byte[] landingPage : landingPages) {
+			String name = new String(landingPage, UTF8);
+			strings.id(name);
+			BlocklistStore.AdvertiserEntries advertiser = snapshot.entries(name);
+			advertisers.add(advertiser);
+			for (BlocklistStore.Entry e : advertiser.entries.values()) {
+				strings.add(e);
+			}
+			for (BlocklistStore.Entry e : advertiser.removed) {
+				strings.add(e);
+			}
+			entryCount += advertiser.entries.size() + advertiser.removed.size();
+		}
+
+		File dir = file.getAbsoluteFile().getParentFile();
+		File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+		boolean renamed = false;
+		try {
+			FileOutputStream fos = new FileOutputStream(tmp);
+			try {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(System.currentTimeMillis());
+				out.writeLong(snapshot.getHorizon());
+				out.writeInt(landingPages.size());
+				out.writeInt(entryCount);
+				out.writeInt(strings.size());
+				out.writeInt(strings.bytes);
+
+				int next = 0;
+				for (int i = 0; i < landingPages.size(); i++) {
+					BlocklistStore.AdvertiserEntries advertiser = advertisers.get(i);
+					out.writeInt(strings.id(new String(landingPages.get(i), UTF8)));
+					out.writeInt(next);
+					out.writeInt(advertiser.entries.size());
+					out.writeInt(advertiser.removed.size());
+					out.writeLong(advertiser.lastModified);
+					next += advertiser.entries.size() + advertiser.removed.size();
+				}
+				for (BlocklistStore.AdvertiserEntries advertiser : advertisers) {
+					for (BlocklistStore.Entry e : advertiser.entries.values()) {
+						strings.write(out, e);
+					}
+					for (BlocklistStore.Entry e : advertiser.removed) {
+						strings.write(out, e);
+					}
+				}
+
+				int offset = 0;
+				for (byte[] s : strings.values) {
+					out.writeInt(offset);
+					offset += s.length;
+				}
+				out.writeInt(offset);
+				for (byte[] s : strings.values) {
+					out.write(s);
+				}
+				out.flush();
+				fos.getFD().sync();
+			} finally {
+				fos.close();
+			}
+			// File.renameTo() replaces the target atomically where the
+			// platform can (POSIX); elsewhere, the target is deleted first
+			renamed = tmp.renameTo(file) || (file.delete() && tmp.renameTo(file));
+			if (!renamed) {
+				throw new IOException("unable to replace " + file + " with " + tmp);
+			}
+		} finally {
+			if (!renamed) {
+				tmp.delete();
+			}
+		}
+	}
+
+	/**
+	 * The file the snapshot was mapped from.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * When the snapshot was written.
+	 */
+	public long getWritten() {
+		return written;
+	}
+
+	@Override
+	public List<Blocklist> getBlocklist(String landingPage) {
+		return getBlocklistSince(landingPage, Long.MIN_VALUE);
+	}
+
+	@Override
+	public List<Blocklist> getBlocklistSince(String landingPage, long since) {
+		List<Blocklist> list = new ArrayList<Blocklist>();
+		int a = find(landingPage);
+		if (a < 0 || lastModified(a) < since) {
+			return list;
+		}
+		int first = buffer.getInt(advertiser(a) + 4);
+		int count = buffer.getInt(advertiser(a) + 8);
+		for (int e = first; e < first + count; e++) {
+			if (time(e) >= since) {
+				list.add(blocklist(e));
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public List<Blocklist> getRemovedSince(String landingPage, long since) {
+		List<Blocklist> list = new ArrayList<Blocklist>();
+		int a = find(landingPage);
+		if (a < 0 || lastModified(a) < since) {
+			return list;
+		}
+		int first = buffer.getInt(advertiser(a) + 4) + buffer.getInt(advertiser(a) + 8);
+		int count = buffer.getInt(advertiser(a) + 12);
+		for (int e = first; e < first + count; e++) {
+			if (time(e) >= since) {
+				list.add(blocklist(e));
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public long getLastModified(String landingPage) {
+		int a = find(landingPage);
+		return a < 0 ? 0 : lastModified(a);
+	}
+
+	@Override
+	public long getHorizon() {
+		return horizon;
+	}
+
+	/**
+	 * {@inheritDoc} The landing pages are read from the file on every call.
+	 */
+	@Override
+	public Set<String> getAdvertisers() {
+		Set<String> landingPages = new LinkedHashSet<String>(advertiserCount * 2);
+		for (int a = 0; a < advertiserCount; a++) {
+			landingPages.add(string(buffer.getInt(advertiser(a))));
+		}
+		return Collections.unmodifiableSet(landingPages);
+	}
+
+	@Override
+	public int size() {
+		return advertiserCount;
+	}
+
+	// copies the snapshot into a store being restored
+	void restoreTo(BlocklistStore.Writer writer) {
+		for (int a = 0; a < advertiserCount; a++) {
+			String landingPage = string(buffer.getInt(advertiser(a)));
+			int first = buffer.getInt(advertiser(a) + 4);
+			int count = buffer.getInt(advertiser(a) + 8);
+			int removed = buffer.getInt(advertiser(a) + 12);
+			for (int e = first; e < first + count; e++) {
+				writer.put(landingPage, entry(e));
+			}
+			for (int e = first + count; e < first + count + removed; e++) {
+				writer.putRemoved(landingPage, entry(e));
+			}
+			writer.setLastModified(landingPage, lastModified(a));
+		}
+	}
+
+	// binary search of the advertisers, comparing UTF-8 bytes in place
+	private int find(String landingPage) {
+		if (landingPage == null) {
+			return -1;
+		}
+		byte[] key = landingPage.getBytes(UTF8);
+		int low = 0;
+		int high = advertiserCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int id = buffer.getInt(advertiser(mid));
+			int start = stringsStart + buffer.getInt(offsetsStart + id * 4);
+			int end = stringsStart + buffer.getInt(offsetsStart + id * 4 + 4);
+			int cmp = compare(key, buffer, start, end);
+			if (cmp > 0) {
+				low = mid + 1;
+			} else if (cmp < 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	// unsigned, lexicographic comparison of key with buffer[start, end)
+	private static int compare(byte[] key, ByteBuffer buffer, int start, int end) {
+		int length = end - start;
+		for (int i = 0; i < key.length && i < length; i++) {
+			int cmp = (key[i] & 0xff) - (buffer.get(start + i) & 0xff);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return key.length - length;
+	}
+
+	private int advertiser(int a) {
+		return HEADER_SIZE + a * ADVERTISER_SIZE;
+	}
+
+	private long lastModified(int a) {
+		return buffer.getLong(advertiser(a) + 16);
+	}
+
+	private long time(int e) {
+		return buffer.getLong(entriesStart + e * ENTRY_SIZE + 16);
+	}
+
+	private Blocklist blocklist(int e) {
+		int at = entriesStart + e * ENTRY_SIZE;
+		return new Blocklist(string(buffer.getInt(at)), string(buffer.getInt(at + 4)),
+				string(buffer.getInt(at + 8)), string(buffer.getInt(at + 12)));
+	}
+
+	private BlocklistStore.Entry entry(int e) {
+		int at = entriesStart + e * ENTRY_SIZE;
+		return new BlocklistStore.Entry(string(buffer.getInt(at)), string(buffer.getInt(at + 4)),
+				string(buffer.getInt(at + 8)), string(buffer.getInt(at + 12)), time(e));
+	}
+
+	private String string(int id) {
+		if (id < 0) {
+			return null;
+		}
+		int start = stringsStart + buffer.getInt(offsetsStart + id * 4);
+		int end = stringsStart + buffer.getInt(offsetsStart + id * 4 + 4);
+		byte[] bytes = new byte[end - start];
+		// a duplicate per read, as positions are not safe to share
+		ByteBuffer view = buffer.duplicate();
+		view.position(start);
+		view.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * The strings of a snapshot being written, each given an index the
+	 * first time it is seen.
+	 */
+	private static class StringTable {
+		final Map<String,Integer> ids = new HashMap<String,Integer>();
+		final List<byte[]> values = new ArrayList<byte[]>();
+		int bytes;
+
+		int id(String s) {
+			if (s == null) {
+				return -1;
+			}
+			Integer id = ids.get(s);
+			if (id == null) {
+				id = values.size();
+				byte[] value = s.getBytes(UTF8);
+				ids.put(s, id);
+				values.add(value);
+				bytes += value.length;
+			}
+			return id;
+		}
+
+		void add(BlocklistStore.Entry e) {
+			id(e.publisherId);
+			id(e.publisherName);
+			id(e.siteId);
+			id(e.siteName);
+		}
+
+		void write(DataOutputStream out, BlocklistStore.Entry e) throws IOException {
+			out.writeInt(id(e.publisherId));
+			out.writeInt(id(e.publisherName));
+			out.writeInt(id(e.siteId));
+			out.writeInt(id(e.siteName));
+			out.writeLong(e.time);
+		}
+
+		int size() {
+			return values.size();
+		}
+	}
+}
@@ -0,0 +1,427 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.ssp.client;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable hash map whose updates return a new map sharing everything
+ * they do not change with the old one: a hash array mapped trie, 32 ways per
+ * level, so that {@link #plus(Object, Object)} and {@link #minus(Object)}
+ * copy a handful of small nodes whatever the size of the map. Keys and values
+ * must not be <tt>null</tt>.
+ *
+ * This is what lets {@link BlocklistStore} publish a new snapshot for a
+ * single change without copying its maps.
+ */
+final class PersistentMap<K,V> implements Iterable<Map.Entry<K,V>> {
+
+	private static final PersistentMap<Object,Object> EMPTY = new PersistentMap<Object,Object>(null, 0);
+
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	// null, a Leaf, a Collision or a Branch
+	private final Object root;
+	private final int size;
+
+	private PersistentMap(Object root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <K,V> PersistentMap<K,V> empty() {
+		return (PersistentMap<K,V>) EMPTY;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	V get(Object key) {
+		int hash = hash(key);
+		Object node = root;
+		int shift = 0;
+		while (node != null) {
+			if (node instanceof Branch) {
+				Branch branch = (Branch) node;
+				int bit = 1 << ((hash >>> shift) & MASK);
+				if ((branch.bitmap & bit) == 0) {
+					return null;
+				}
+				node = branch.children[Integer.bitCount(branch.bitmap & (bit - 1))];
+				shift += BITS;
+			} else if (node instanceof Leaf) {
+				Leaf leaf = (Leaf) node;
+				return leaf.hash == hash && leaf.key.equals(key) ? (V) leaf.value : null;
+			} else {
+				Leaf leaf = ((Collision) node).find(hash, key);
+				return leaf == null ? null : (V) leaf.value;
+			}
+		}
+		return null;
+	}
+
+	boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * This map with <tt>key</tt> mapped to <tt>value</tt>; this map itself if
+	 * it already is.
+	 */
+	PersistentMap<K,V> plus(K key, V value) {
+		if (key == null || value == null) {
+			throw new NullPointerException();
+		}
+		boolean[] added = new boolean[1];
+		Object newRoot = put(root, 0, hash(key), key, value, added);
+		return newRoot == root ? this : new PersistentMap<K,V>(newRoot, added[0] ? size + 1 : size);
+	}
+
+	/**
+	 * This map without <tt>key</tt>; this map itself if it has no such key.
+	 */
+	PersistentMap<K,V> minus(Object key) {
+		if (key == null) {
+			return this;
+		}
+		Object newRoot = remove(root, 0, hash(key), key);
+		return newRoot == root ? this : new PersistentMap<K,V>(newRoot, size - 1);
+	}
+
+	/**
+	 * A read-only view of the keys.
+	 */
+	Set<K> keySet() {
+		return new AbstractSet<K>() {
+			@Override
+			public Iterator<K> iterator() {
+				final Iterator<Map.Entry<K,V>> entries = PersistentMap.this.iterator();
+				return new Iterator<K>() {
+					public boolean hasNext() {
+						return entries.hasNext();
+					}
+
+					public K next() {
+						return entries.next().getKey();
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return containsKey(o);
+			}
+		};
+	}
+
+	/**
+	 * The entries, in no particular order; read-only.
+	 */
+	public Iterator<Map.Entry<K,V>> iterator() {
+		return new EntryIterator<K,V>(root);
+	}
+
+	private static int hash(Object key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private static Object put(Object node, int shift, int hash, Object key, Object value, boolean[] added) {
+		if (node == null) {
+			added[0] = true;
+			return new Leaf(hash, key, value);
+		}
+		if (node instanceof Branch) {
+			Branch branch = (Branch) node;
+			int bit = 1 << ((hash >>> shift) & MASK);
+			int index = Integer.bitCount(branch.bitmap & (bit - 1));
+			if ((branch.bitmap & bit) == 0) {
+				added[0] = true;
+				Object[] children = new Object[branch.children.length + 1];
+				System.arraycopy(branch.children, 0, children, 0, index);
+				children[index] = new Leaf(hash, key, value);
+				System.arraycopy(branch.children, index, children, index + 1, branch.children.length - index);
+				return new Branch(branch.bitmap | bit, children);
+			}
+			Object child = branch.children[index];
+			Object newChild = put(child, shift + BITS, hash, key, value, added);
+			if (newChild == child) {
+				return branch;
+			}
+			Object[] children = branch.children.clone();
+			children[index] = newChild;
+			return new Branch(branch.bitmap, children);
+		}
+		if (node instanceof Leaf) {
+			Leaf leaf = (Leaf) node;
+			if (leaf.hash == hash && leaf.key.equals(key)) {
+				return leaf.value == value ? leaf : new Leaf(hash, key, value);
+			}
+			added[0] = true;
+			if (leaf.hash == hash) {
+				return new Collision(hash, new Leaf[] { leaf, new Leaf(hash, key, value) });
+			}
+			return merge(leaf, leaf.hash, new Leaf(hash, key, value), shift);
+		}
+		Collision collision = (Collision) node;
+		if (collision.hash != hash) {
+			added[0] = true;
+			return merge(collision, collision.hash, new Leaf(hash, key, value), shift);
+		}
+		Leaf[] leaves = collision.leaves;
+		for (int i = 0; i < leaves.length; i++) {
+			if (leaves[i].key.equals(key)) {
+				if (leaves[i].value == value) {
+					return collision;
+				}
+				leaves = leaves.clone();
+				leaves[i] = new Leaf(hash, key, value);
+				return new Collision(hash, leaves);
+			}
+		}
+		added[0] = true;
+		Leaf[] grown = new Leaf[leaves.length + 1];
+		System.arraycopy(leaves, 0, grown, 0, leaves.length);
+		grown[leaves.length] = new Leaf(hash, key, value);
+		return new Collision(hash, grown);
+	}
+
+	// a branch holding two nodes whose hashes differ
+	private static Object merge(Object a, int hashA, Leaf b, int shift) {
+		int indexA = (hashA >>> shift) & MASK;
+		int indexB = (b.hash >>> shift) & MASK;
+		if (indexA == indexB) {
+			return new Branch(1 << indexA, new Object[] { merge(a, hashA, b, shift + BITS) });
+		}
+		return new Branch((1 << indexA) | (1 << indexB),
+				indexA < indexB ? new Object[] { a, b } : new Object[] { b, a });
+	}
+
+	// the node without key, null if nothing is left of it
+	private static Object remove(Object node, int shift, int hash, Object key) {
+		if (node == null) {
+			return null;
+		}
+		if (node instanceof Leaf) {
+			Leaf leaf = (Leaf) node;
+			return leaf.hash == hash && leaf.key.equals(key) ? null : leaf;
+		}
+		if (node instanceof Collision) {
+			Collision collision = (Collision) node;
+			if (collision.hash != hash) {
+				return collision;
+			}
+			Leaf[] leaves = collision.leaves;
+			for (int i = 0; i < leaves.length; i++) {
+				if (leaves[i].key.equals(key)) {
+					if (leaves.length == 2) {
+						return leaves[1 - i];
+					}
+					Leaf[] shrunk = new Leaf[leaves.length - 1];
+					System.arraycopy(leaves, 0, shrunk, 0, i);
+					System.arraycopy(leaves, i + 1, shrunk, i, leaves.length - i - 1);
+					return new Collision(hash, shrunk);
+				}
+			}
+			return collision;
+		}
+		Branch branch = (Branch) node;
+		int bit = 1 << ((hash >>> shift) & MASK);
+		if ((branch.bitmap & bit) == 0) {
+			return branch;
+		}
+		int index = Integer.bitCount(branch.bitmap & (bit - 1));
+		Object child = branch.children[index];
+		Object newChild = remove(child, shift + BITS, hash, key);
+		if (newChild == child) {
+			return branch;
+		}
+		if (newChild != null) {
+			if (branch.children.length == 1 && !(newChild instanceof Branch)) {
+				// a lone leaf moves up, where its hash still finds it
+				return newChild;
+			}
+			Object[] children = branch.children.clone();
+			children[index] = newChild;
+			return new Branch(branch.bitmap, children);
+		}
+		if (branch.children.length == 1) {
+			return null;
+		}
+		if (branch.children.length == 2 && !(branch.children[1 - index] instanceof Branch)) {
+			return branch.children[1 - index];
+		}
+		Object[] children = new Object[branch.children.length - 1];
+		System.arraycopy(branch.children, 0, children, 0, index);
+		System.arraycopy(branch.children, index + 1, children, index, children.length - index);
+		return new Branch(branch.bitmap & ~bit, children);
+	}
+
+	private static final class Leaf implements Map.Entry<Object,Object> {
+		final int hash;
+		final Object key;
+		final Object value;
+
+		Leaf(int hash, Object key, Object value) {
+			this.hash = hash;
+			this.key = key;
+			this.value = value;
+		}
+
+		public Object getKey() {
+			return key;
+		}
+
+		public Object getValue() {
+			return value;
+		}
+
+		public Object setValue(Object value) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	// keys with the same hash
+	private static final class Collision {
+		final int hash;
+		final Leaf[] leaves;
+
+		Collision(int hash, Leaf[] leaves) {
+			this.hash = hash;
+			this.leaves = leaves;
+		}
+
+		Leaf find(int hash, Object key) {
+			if (hash != this.hash) {
+				return null;
+			}
+			for (Leaf leaf : leaves) {
+				if (leaf.key.equals(key)) {
+					return leaf;
+				}
+			}
+			return null;
+		}
+	}
+
+	// one child per bit set, in bit order
+	private static final class Branch {
+		final int bitmap;
+		final Object[] children;
+
+		Branch(int bitmap, Object[] children) {
+			this.bitmap = bitmap;
+			this.children = children;
+		}
+	}
+
+	// depth first, with a stack of the arrays being walked
+	private static final class EntryIterator<K,V> implements Iterator<Map.Entry<K,V>> {
+		private final List<Object[]> arrays = new ArrayList<Object[]>();
+		private final List<Integer> positions = new ArrayList<Integer>();
+		private Leaf next;
+
+		EntryIterator(Object root) {
+			if (root != null) {
+				push(new Object[] { root });
+			}
+			advance();
+		}
+
+		private void push(Object[] array) {
+			arrays.add(array);
+			positions.add(0);
+		}
+
+		private void advance() {
+			next = null;
+			while (!arrays.isEmpty()) {
+				int top = arrays.size() - 1;
+				Object[] array = arrays.get(top);
+				int position = positions.get(top);
+				if (position == array.length) {
+					arrays.remove(top);
+					positions.remove(top);
+					continue;
+				}
+				positions.set(top, position + 1);
+				Object node = array[position];
+				if (node instanceof Leaf) {
+					next = (Leaf) node;
+					return;
+				}
+				push(node instanceof Branch ? ((Branch) node).children : ((Collision) node).leaves);
+			}
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@SuppressWarnings("unchecked")
+		public Map.Entry<K,V> next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			Leaf leaf = next;
+			advance();
+			return (Map.Entry<K,V>) (Map.Entry<?,?>) leaf;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
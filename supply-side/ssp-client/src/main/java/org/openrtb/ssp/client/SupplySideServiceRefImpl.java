@@ -31,51 +31,141 @@
  */
 package org.openrtb.ssp.client;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 import org.openrtb.common.model.Advertiser;
 import org.openrtb.common.model.Blocklist;
-import org.openrtb.ssp.SupplySideService;
+import org.openrtb.ssp.IncrementalSupplySideService;
 
 /**
  * A sample reference implementation in order to demonstrate
  * the role of SSP implementor.   
  *
+ * Blocklists are kept in a {@link BlocklistStore}, which time stamps entries
+ * when they are added and remembers removals for <tt>REMOVAL_RETENTION</tt>
+ * milliseconds, so that DSPs can be sent only the changes since their last
+ * synchronization (see {@link IncrementalSupplySideService}). Requests are
+ * answered from a snapshot of the store, without locking, and with new
+ * {@link Advertiser} objects; the ones passed in are left untouched.
+ *
+ * The blocklists can be saved to a {@link MappedBlocklistSnapshot}, and
+ * served from it straight away on the next start: the snapshot is only
+ * restored into the store when the blocklists are first changed.
+ *
  * @since 1.0.1
  */
-public class SupplySideServiceRefImpl implements SupplySideService {
+public class SupplySideServiceRefImpl implements IncrementalSupplySideService {
 
-	private Map<String,List<Blocklist>> blocklistDB = new HashMap<String,List<Blocklist>>();
+	public static final long REMOVAL_RETENTION = BlocklistStore.DEFAULT_REMOVAL_RETENTION;
+
+	private final BlocklistStore store = new BlocklistStore(REMOVAL_RETENTION);
+	// served from until the first change, if started from a snapshot file
+	private volatile MappedBlocklistSnapshot mapped;
 	private String secret = "RTB";
 	private String org = "The SSP";
 	
 	public SupplySideServiceRefImpl() {
-		List<Blocklist> list1 = new LinkedList<Blocklist>();
-		list1.add(new Blocklist("3422","Joe's News"));
-		list1.add(new Blocklist("2342","Big Portal","1","Finance section"));
-		list1.add(new Blocklist("23423","Smith Blog","223","Technology Section"));
-		list1.add(new Blocklist("423","Smith Blog","23","Cars Section"));
-		list1.add(new Blocklist("34223","Jones Blog"));
-		blocklistDB.put("acmeluxuryfurniture.com", list1);
+		addSampleBlocklists();
+	}
+
+	/**
+	 * Starts from the snapshot saved to <tt>snapshotFile</tt>, if there is
+	 * one, and from the sample blocklists otherwise.
+	 */
+	public SupplySideServiceRefImpl(File snapshotFile) throws IOException {
+		if (snapshotFile.exists()) {
+			mapped = MappedBlocklistSnapshot.open(snapshotFile);
+		} else {
+			addSampleBlocklists();
+		}
+	}
+
+	private void addSampleBlocklists() {
+		addBlocklist("acmeluxuryfurniture.com", new Blocklist("3422","Joe's News"));
+		addBlocklist("acmeluxuryfurniture.com", new Blocklist("2342","Big Portal","1","Finance section"));
+		addBlocklist("acmeluxuryfurniture.com", new Blocklist("23423","Smith Blog","223","Technology Section"));
+		addBlocklist("acmeluxuryfurniture.com", new Blocklist("423","Smith Blog","23","Cars Section"));
+		addBlocklist("acmeluxuryfurniture.com", new Blocklist("34223","Jones Blog"));
 		
-		List<Blocklist> list2 = new LinkedList<Blocklist>();
-		list2.add(new Blocklist("34223","Joe's Blog"));
-		blocklistDB.put("luxurycarbrand.com", list2);
+		addBlocklist("luxurycarbrand.com", new Blocklist("34223","Joe's Blog"));
+	}
+
+	/**
+	 * The store the blocklists are kept in, e.g. for bulk imports.
+	 */
+	public BlocklistStore getStore() {
+		return writable();
+	}
+
+	/**
+	 * Saves the blocklists to <tt>file</tt>, to start from on restart.
+	 */
+	public void saveSnapshot(File file) throws IOException {
+		MappedBlocklistSnapshot.write(writable().snapshot(), file);
+	}
+
+	/**
+	 * Blocks the advertiser on the publisher (and site) of <tt>blocklist</tt>.
+	 */
+	public void addBlocklist(String landingPage, Blocklist blocklist) {
+		writable().add(landingPage, blocklist);
+	}
+
+	/**
+	 * Lifts the block of the advertiser on the given publisher (and site).
+	 */
+	public void removeBlocklist(String landingPage, String publisherId, String siteId) {
+		writable().remove(landingPage, publisherId, siteId);
 	}
 	
 	@Override
 	public Collection<Advertiser> setBlocklists(Collection<Advertiser> advertisers) {
-		
+		BlocklistView snapshot = view();
+		List<Advertiser> answered = new ArrayList<Advertiser>(advertisers.size());
+		for (Advertiser a : advertisers)
+		{
+			answered.add(new Advertiser(a.getLandingPage(), a.getName(), null,
+					snapshot.getBlocklist(a.getLandingPage())));
+		}
+		return answered;
+	}
+
+	@Override
+	public Collection<Advertiser> updateBlocklists(Collection<Advertiser> advertisers) {
+		BlocklistView snapshot = view();
+		List<Advertiser> answered = new ArrayList<Advertiser>(advertisers.size());
 		for (Advertiser a : advertisers)
 		{
 			String url = a.getLandingPage();
-			a.setBlocklist(blocklistDB.get(url));
+			Long since = a.getTimestamp();
+			if (since == null || since < snapshot.getHorizon()) {
+				answered.add(new Advertiser(url, a.getName(), null, snapshot.getBlocklist(url)));
+				continue;
+			}
+			Advertiser changes = new Advertiser(url, a.getName(), since, snapshot.getBlocklistSince(url, since));
+			changes.setRemovedBlocklist(snapshot.getRemovedSince(url, since));
+			answered.add(changes);
+		}
+		return answered;
+	}
+
+	// the blocklists as they are now
+	private BlocklistView view() {
+		BlocklistView view = mapped;
+		return view != null ? view : store.snapshot();
+	}
+
+	// the store, once restored from the snapshot file started from
+	private synchronized BlocklistStore writable() {
+		if (mapped != null) {
+			store.restore(mapped);
+			mapped = null;
 		}
-		return advertisers;
+		return store;
 	}
 
 	@Override
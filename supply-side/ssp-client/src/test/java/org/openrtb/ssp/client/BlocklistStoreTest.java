@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.ssp.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openrtb.common.model.Blocklist;
+
+public class BlocklistStoreTest {
+
+	private static final String ACME = "acmeluxuryfurniture.com";
+	private static final String CARS = "luxurycarbrand.com";
+
+	private BlocklistStore store;
+
+	@Before
+	public void setup() {
+		store = new BlocklistStore();
+		store.add(ACME, new Blocklist("3422","Joe's News"));
+		store.add(ACME, new Blocklist("2342","Big Portal","1","Finance section"));
+		store.add(CARS, new Blocklist("2342","Big Portal","2","Cars section"));
+	}
+
+	/**
+	 * This method test that entries are kept per advertiser, and that an
+	 * entry for the same publisher and site replaces the previous one.
+	 */
+	@Test
+	public void addReplaces() {
+		store.add(ACME, new Blocklist("3422","Joe's Renamed News"));
+
+		List<Blocklist> acme = store.snapshot().getBlocklist(ACME);
+		assertEquals(2, acme.size());
+		assertEquals("Joe's Renamed News", acme.get(1).getPublisherName());
+		assertEquals(1, store.snapshot().getBlocklist(CARS).size());
+		assertTrue(store.snapshot().getBlocklist("unknown.com").isEmpty());
+	}
+
+	/**
+	 * This method test the publisher and site indexes.
+	 */
+	@Test
+	public void indexes() {
+		BlocklistStore.Snapshot snapshot = store.snapshot();
+		assertEquals(2, snapshot.getAdvertisersByPublisher("2342").size());
+		assertEquals(Collections.singleton(ACME), snapshot.getAdvertisersBySite("2342", "1"));
+		assertEquals(Collections.singleton(ACME), snapshot.getAdvertisersByPublisher("3422"));
+
+		store.remove(ACME, "2342", "1");
+		snapshot = store.snapshot();
+		assertEquals(Collections.singleton(CARS), snapshot.getAdvertisersByPublisher("2342"));
+		assertTrue(snapshot.getAdvertisersBySite("2342", "1").isEmpty());
+	}
+
+	/**
+	 * This method test that a snapshot does not see later changes.
+	 */
+	@Test
+	public void snapshotIsolation() {
+		BlocklistStore.Snapshot before = store.snapshot();
+		store.add(ACME, new Blocklist("999","New Site"));
+		assertTrue(store.remove(CARS, "2342", "2"));
+
+		assertEquals(2, before.getBlocklist(ACME).size());
+		assertEquals(1, before.getBlocklist(CARS).size());
+		assertEquals(2, before.getAdvertisersByPublisher("2342").size());
+		assertEquals(3, store.snapshot().getBlocklist(ACME).size());
+		assertTrue(store.snapshot().getBlocklist(CARS).isEmpty());
+	}
+
+	/**
+	 * This method test that the changes since a time are the entries added
+	 * and removed after it.
+	 */
+	@Test
+	public void changesSince() throws InterruptedException {
+		Thread.sleep(5);
+		long since = System.currentTimeMillis();
+		Thread.sleep(5);
+		store.add(ACME, new Blocklist("999","New Site"));
+		store.remove(ACME, "3422", null);
+		assertFalse("nothing to remove", store.remove(ACME, "3422", null));
+
+		BlocklistStore.Snapshot snapshot = store.snapshot();
+		assertEquals(1, snapshot.getBlocklistSince(ACME, since).size());
+		assertEquals("999", snapshot.getBlocklistSince(ACME, since).get(0).getPublisherId());
+		assertEquals(1, snapshot.getRemovedSince(ACME, since).size());
+		assertEquals("3422", snapshot.getRemovedSince(ACME, since).get(0).getPublisherId());
+		assertTrue(snapshot.getLastModified(ACME) >= since);
+		assertTrue("not modified since", snapshot.getBlocklistSince(CARS, since).isEmpty());
+	}
+
+	/**
+	 * This method test that a bulk import only changes what differs.
+	 */
+	@Test
+	public void importOnlyChanges() throws InterruptedException {
+		Thread.sleep(5);
+		long since = System.currentTimeMillis();
+		Thread.sleep(5);
+
+		Map<String,List<Blocklist>> blocklists = new HashMap<String,List<Blocklist>>();
+		blocklists.put(ACME, Arrays.asList(new Blocklist("2342","Big Portal","1","Finance section"),
+				new Blocklist("777","Another Blog")));
+		blocklists.put("newadvertiser.com", Arrays.asList(new Blocklist("3422","Joe's News")));
+		store.importBlocklists(blocklists);
+
+		BlocklistStore.Snapshot snapshot = store.snapshot();
+		assertEquals(2, snapshot.getBlocklist(ACME).size());
+		assertEquals("only the new entry changed", 1, snapshot.getBlocklistSince(ACME, since).size());
+		assertEquals("777", snapshot.getBlocklistSince(ACME, since).get(0).getPublisherId());
+		assertEquals(1, snapshot.getRemovedSince(ACME, since).size());
+		assertEquals("3422", snapshot.getRemovedSince(ACME, since).get(0).getPublisherId());
+		assertEquals(1, snapshot.getBlocklist("newadvertiser.com").size());
+		assertEquals(3, snapshot.size());
+	}
+
+	/**
+	 * This method test that removals expire after the retention time, moving
+	 * the horizon forward.
+	 */
+	@Test
+	public void removalsExpire() throws InterruptedException {
+		BlocklistStore shortLived = new BlocklistStore(10);
+		shortLived.add(ACME, new Blocklist("3422","Joe's News"));
+		shortLived.remove(ACME, "3422", null);
+		long removed = System.currentTimeMillis();
+		Thread.sleep(20);
+		shortLived.add(CARS, new Blocklist("2342","Big Portal"));
+
+		assertTrue(shortLived.snapshot().getRemovedSince(ACME, 0).isEmpty());
+		assertTrue(shortLived.snapshot().getHorizon() >= removed - 1);
+		assertFalse("nothing left of the advertiser", shortLived.snapshot().getAdvertisers().contains(ACME));
+	}
+
+	/**
+	 * This method test that a change copies only the advertiser it changes,
+	 * and shares the others with the previous snapshot.
+	 */
+	@Test
+	public void changesShareTheRest() {
+		BlocklistStore.Snapshot before = store.snapshot();
+		store.add(ACME, new Blocklist("9999","Another Portal"));
+		BlocklistStore.Snapshot after = store.snapshot();
+
+		assertSame(before.entries(CARS), after.entries(CARS));
+		assertEquals(2, before.getBlocklist(ACME).size());
+		assertEquals(3, after.getBlocklist(ACME).size());
+		assertEquals(Collections.singleton(ACME), after.getAdvertisersByPublisher("9999"));
+	}
+
+	/**
+	 * This method test that the strings of entries are shared.
+	 */
+	@Test
+	public void stringsInterned() {
+		store.add(CARS, new Blocklist(new String("3422"), new String("Joe's News")));
+		assertSame(store.snapshot().getBlocklist(ACME).get(0).getPublisherName(),
+				store.snapshot().getBlocklist(CARS).get(1).getPublisherName());
+	}
+}
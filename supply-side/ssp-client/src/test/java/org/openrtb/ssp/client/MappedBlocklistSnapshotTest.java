@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.ssp.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrtb.common.model.Advertiser;
+import org.openrtb.common.model.Blocklist;
+
+public class MappedBlocklistSnapshotTest {
+
+	private static final String ACME = "acmeluxuryfurniture.com";
+	private static final String CARS = "luxurycarbrand.com";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private BlocklistStore store;
+	private File file;
+
+	@Before
+	public void setup() {
+		store = new BlocklistStore();
+		store.add(ACME, new Blocklist("3422","Joe's News"));
+		store.add(ACME, new Blocklist("2342","Big Portal","1","Finance section"));
+		store.add(ACME, new Blocklist("777","Caf\u00e9 \uD83D\uDE00 Blog"));
+		store.add(CARS, new Blocklist("2342","Big Portal","2","Cars section"));
+		store.remove(ACME, "777", null);
+		file = new File(folder.getRoot(), "blocklists.snapshot");
+	}
+
+	/**
+	 * This method test that the mapped snapshot answers as the store it was
+	 * written from.
+	 */
+	@Test
+	public void roundTrip() throws IOException {
+		BlocklistStore.Snapshot expected = store.snapshot();
+		MappedBlocklistSnapshot.write(expected, file);
+		MappedBlocklistSnapshot mapped = MappedBlocklistSnapshot.open(file);
+
+		assertEquals(expected.getAdvertisers(), mapped.getAdvertisers());
+		assertEquals(2, mapped.size());
+		assertEquals(expected.getHorizon(), mapped.getHorizon());
+		for (String landingPage : expected.getAdvertisers()) {
+			assertBlocklists(expected.getBlocklist(landingPage), mapped.getBlocklist(landingPage));
+			assertBlocklists(expected.getRemovedSince(landingPage, 0), mapped.getRemovedSince(landingPage, 0));
+			assertEquals(expected.getLastModified(landingPage), mapped.getLastModified(landingPage));
+		}
+		List<Blocklist> removed = mapped.getRemovedSince(ACME, 0);
+		assertEquals("Caf\u00e9 \uD83D\uDE00 Blog", removed.get(0).getPublisherName());
+		assertNull(removed.get(0).getSiteId());
+
+		assertTrue(mapped.getBlocklist("unknown.com").isEmpty());
+		assertTrue(mapped.getBlocklist("").isEmpty());
+		assertEquals(0, mapped.getLastModified("zzz.com"));
+		assertTrue("nothing changed since", mapped.getBlocklistSince(ACME, System.currentTimeMillis() + 1).isEmpty());
+	}
+
+	/**
+	 * This method test that lookups find every advertiser, whatever the
+	 * order of their landing pages.
+	 */
+	@Test
+	public void lookup() throws IOException {
+		BlocklistStore many = new BlocklistStore();
+		for (int i = 0; i < 100; i++) {
+			many.add("advertiser" + i + ".com", new Blocklist(String.valueOf(i), "Publisher " + i));
+		}
+		many.add("\u00e9tude.fr", new Blocklist("1", "Publisher 1"));
+		MappedBlocklistSnapshot.write(many.snapshot(), file);
+		MappedBlocklistSnapshot mapped = MappedBlocklistSnapshot.open(file);
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(String.valueOf(i), mapped.getBlocklist("advertiser" + i + ".com").get(0).getPublisherId());
+		}
+		assertEquals(1, mapped.getBlocklist("\u00e9tude.fr").size());
+		assertTrue(mapped.getBlocklist("advertiser100.com").isEmpty());
+	}
+
+	/**
+	 * This method test that a snapshot mapped before the file is replaced
+	 * keeps answering from the old contents.
+	 */
+	@Test
+	public void replaceWhileMapped() throws IOException {
+		MappedBlocklistSnapshot.write(store.snapshot(), file);
+		MappedBlocklistSnapshot before = MappedBlocklistSnapshot.open(file);
+
+		store.remove(CARS, "2342", "2");
+		store.add(ACME, new Blocklist("999","New Site"));
+		MappedBlocklistSnapshot.write(store.snapshot(), file);
+		MappedBlocklistSnapshot after = MappedBlocklistSnapshot.open(file);
+
+		assertEquals(2, before.getBlocklist(ACME).size());
+		assertEquals(1, before.getBlocklist(CARS).size());
+		assertEquals(3, after.getBlocklist(ACME).size());
+		assertTrue(after.getBlocklist(CARS).isEmpty());
+		assertEquals("only the snapshot is left", Collections.singletonList(file.getName()),
+				Arrays.asList(folder.getRoot().list()));
+	}
+
+	/**
+	 * This method test that files which are not snapshots are rejected.
+	 */
+	@Test
+	public void corrupt() throws IOException {
+		MappedBlocklistSnapshot.write(store.snapshot(), file);
+		File truncated = folder.newFile("truncated.snapshot");
+		byte[] bytes = new byte[(int) file.length() - 1];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			assertEquals(bytes.length, in.read(bytes));
+		} finally {
+			in.close();
+		}
+		FileOutputStream out = new FileOutputStream(truncated);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		try {
+			MappedBlocklistSnapshot.open(truncated);
+			fail("a truncated file is not a snapshot");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("truncated"));
+		}
+		try {
+			MappedBlocklistSnapshot.open(folder.newFile("empty.snapshot"));
+			fail("an empty file is not a snapshot");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("not a blocklist snapshot"));
+		}
+	}
+
+	/**
+	 * This method test that a store restored from a snapshot carries on
+	 * where the one it was written from left off.
+	 */
+	@Test
+	public void restore() throws IOException {
+		BlocklistStore.Snapshot expected = store.snapshot();
+		MappedBlocklistSnapshot.write(expected, file);
+
+		BlocklistStore restored = new BlocklistStore();
+		restored.restore(MappedBlocklistSnapshot.open(file));
+		BlocklistStore.Snapshot actual = restored.snapshot();
+		assertEquals(expected.getAdvertisers(), actual.getAdvertisers());
+		for (String landingPage : expected.getAdvertisers()) {
+			assertBlocklists(expected.getBlocklist(landingPage), actual.getBlocklist(landingPage));
+			assertBlocklists(expected.getRemovedSince(landingPage, 0), actual.getRemovedSince(landingPage, 0));
+			assertEquals(expected.getLastModified(landingPage), actual.getLastModified(landingPage));
+		}
+		assertEquals(new HashSet<String>(Arrays.asList(ACME, CARS)),
+				actual.getAdvertisersByPublisher("2342"));
+	}
+
+	/**
+	 * This method test that the reference implementation serves from its
+	 * snapshot file on restart, and restores it on the first change.
+	 */
+	@Test
+	public void serviceRestart() throws IOException {
+		new SupplySideServiceRefImpl().saveSnapshot(file);
+
+		SupplySideServiceRefImpl restarted = new SupplySideServiceRefImpl(file);
+		Advertiser a = new Advertiser(ACME, "ACME Luxury Furniture");
+		assertEquals(5, restarted.setBlocklists(Collections.singletonList(a)).iterator().next().getBlocklist().size());
+
+		restarted.removeBlocklist(ACME, "3422", null);
+		assertEquals(4, restarted.setBlocklists(Collections.singletonList(a)).iterator().next().getBlocklist().size());
+	}
+
+	// blocklists have no equals()
+	private static void assertBlocklists(List<Blocklist> expected, List<Blocklist> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getPublisherId(), actual.get(i).getPublisherId());
+			assertEquals(expected.get(i).getPublisherName(), actual.get(i).getPublisherName());
+			assertEquals(expected.get(i).getSiteId(), actual.get(i).getSiteId());
+			assertEquals(expected.get(i).getSiteName(), actual.get(i).getSiteName());
+		}
+	}
+}
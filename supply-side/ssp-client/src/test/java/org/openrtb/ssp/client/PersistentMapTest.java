@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openrtb.ssp.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class PersistentMapTest {
+
+	/**
+	 * This method test the map against a HashMap through random changes,
+	 * with keys that often share their hash.
+	 */
+	@Test
+	public void matchesHashMap() {
+		Random random = new Random(42);
+		Map<Key,Integer> expected = new HashMap<Key,Integer>();
+		PersistentMap<Key,Integer> map = PersistentMap.empty();
+		for (int i = 0; i < 20000; i++) {
+			Key key = new Key(random.nextInt(3000), random.nextInt(4) == 0);
+			if (random.nextInt(3) == 0) {
+				expected.remove(key);
+				map = map.minus(key);
+			} else {
+				Integer value = Integer.valueOf(random.nextInt(10));
+				expected.put(key, value);
+				map = map.plus(key, value);
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (int id = 0; id < 3000; id++) {
+			for (boolean colliding : new boolean[] { false, true }) {
+				Key key = new Key(id, colliding);
+				assertEquals(expected.get(key), map.get(key));
+			}
+		}
+		Set<Key> seen = new HashSet<Key>();
+		for (Map.Entry<Key,Integer> e : map) {
+			assertTrue("each key once", seen.add(e.getKey()));
+			assertEquals(expected.get(e.getKey()), e.getValue());
+		}
+		assertEquals(expected.keySet(), seen);
+		assertEquals(expected.keySet(), map.keySet());
+
+		for (Key key : expected.keySet()) {
+			map = map.minus(key);
+		}
+		assertTrue(map.isEmpty());
+		assertFalse(map.iterator().hasNext());
+	}
+
+	/**
+	 * This method test that updates leave the original map as it was, and
+	 * that no-op updates return it.
+	 */
+	@Test
+	public void updatesAreCopies() {
+		PersistentMap<String,String> one = PersistentMap.<String,String>empty().plus("a", "1");
+		PersistentMap<String,String> two = one.plus("b", "2");
+
+		assertEquals(1, one.size());
+		assertNull(one.get("b"));
+		assertEquals("2", two.get("b"));
+		assertSame(two, two.plus("b", "2"));
+		assertSame(two, two.minus("c"));
+		assertEquals("1", two.minus("b").get("a"));
+		assertEquals(2, two.size());
+	}
+
+	// equal ids are equal keys; colliding keys all hash the same
+	private static class Key {
+		final int id;
+		final boolean colliding;
+
+		Key(int id, boolean colliding) {
+			this.id = id;
+			this.colliding = colliding;
+		}
+
+		@Override
+		public int hashCode() {
+			return colliding ? 7 : id * 31;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && ((Key) o).id == id && ((Key) o).colliding == colliding;
+		}
+	}
+}
@@ -31,6 +31,8 @@
  */
 package org.openrtb.ssp.client;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.LinkedList;
@@ -54,15 +56,46 @@ public class SupplySideServiceRefImplTest {
     @Test
     public void blocklistGetsSet()
     {
-    	List<Blocklist> bls = null;
      	Advertiser a  = new Advertiser("acmeluxuryfurniture.com","ACME Luxury Furniture");
-    	bls = a.getBlocklist();
-    	assertTrue("Blocklist is initialy empty",bls.size()==0);
+    	assertTrue("Blocklist is initialy empty",a.getBlocklist().size()==0);
     	
        	List<Advertiser> advertisers = new LinkedList<Advertiser>();
        	advertisers.add(a);
-    	ssp.setBlocklists(advertisers);
-    	assertTrue("Blocklist has been set",bls.size()!=0);
-    	//System.out.println("SIZE="+bls.size());
+    	Advertiser answered = ssp.setBlocklists(advertisers).iterator().next();
+    	assertTrue("Blocklist has been set",answered.getBlocklist().size()!=0);
+    	assertEquals("ACME Luxury Furniture", answered.getName());
+    	assertTrue("the request is left untouched",a.getBlocklist().size()==0);
+    }
+
+    @Test
+    public void blocklistChangesSince() throws InterruptedException
+    {
+    	SupplySideServiceRefImpl ref = new SupplySideServiceRefImpl();
+    	Thread.sleep(5);
+    	long since = System.currentTimeMillis();
+    	Thread.sleep(5);
+    	ref.addBlocklist("acmeluxuryfurniture.com", new Blocklist("999","New Site"));
+    	ref.removeBlocklist("acmeluxuryfurniture.com", "3422", null);
+
+    	List<Advertiser> advertisers = new LinkedList<Advertiser>();
+    	advertisers.add(new Advertiser("acmeluxuryfurniture.com", null, since));
+    	Advertiser a = ref.updateBlocklists(advertisers).iterator().next();
+    	assertEquals("changes are since the requested time", Long.valueOf(since), a.getTimestamp());
+    	assertEquals("only the new entry is sent", 1, a.getBlocklist().size());
+    	assertEquals("999", a.getBlocklist().get(0).getPublisherId());
+    	assertEquals("the removed entry is sent", 1, a.getRemovedBlocklist().size());
+    	assertEquals("3422", a.getRemovedBlocklist().get(0).getPublisherId());
+    }
+
+    @Test
+    public void blocklistChangesBeforeHorizon()
+    {
+    	SupplySideServiceRefImpl ref = new SupplySideServiceRefImpl();
+    	List<Advertiser> advertisers = new LinkedList<Advertiser>();
+    	advertisers.add(new Advertiser("acmeluxuryfurniture.com", null, 0L));
+    	Advertiser a = ref.updateBlocklists(advertisers).iterator().next();
+    	assertNull("too old a timestamp gets the complete list", a.getTimestamp());
+    	assertEquals(5, a.getBlocklist().size());
+    	assertTrue(a.getRemovedBlocklist().isEmpty());
     }
 }
@@ -32,6 +32,8 @@
 package org.openrtb.ssp.core;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.List;
 
@@ -43,7 +45,9 @@ import org.openrtb.common.model.Advertiser;
 import org.openrtb.common.model.AdvertiserBlocklistRequest;
 import org.openrtb.common.model.AdvertiserBlocklistResponse;
 import org.openrtb.common.model.Identification;
+import org.openrtb.common.model.Signable;
 import org.openrtb.common.model.Status;
+import org.openrtb.ssp.IncrementalSupplySideService;
 import org.openrtb.ssp.SupplySideService;
 
 import org.slf4j.Logger;
@@ -60,6 +64,7 @@ import org.slf4j.LoggerFactory;
 public class SupplySideServer {
 
     private static final Logger log = LoggerFactory.getLogger(SupplySideServer.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
 	private SupplySideService ssp;
 
 	private AdvertiserBlocklistRequestTranslator reqTrans =
@@ -77,11 +82,44 @@ public class SupplySideServer {
 	 * @param jsonRequest
 	 */
 	public String process(String jsonRequest) {
+		return process(jsonRequest.getBytes(UTF8));
+	}
+
+	/**
+	 * Processes UTF-8 encoded Open RTB JSON requests. The request's signature
+	 * is checked against the bytes as received. Returns JSON-formatted
+	 * responses.
+	 * @param jsonRequest
+	 */
+	public String process(byte[] jsonRequest) {
+		byte[] jsonResponse = respond(jsonRequest);
+		return jsonResponse == null ? null : new String(jsonResponse, UTF8);
+	}
+
+	/**
+	 * Processes UTF-8 encoded Open RTB JSON requests, writing the signed,
+	 * UTF-8 encoded JSON response to <code>out</code>.
+	 * @param jsonRequest
+	 * @param out
+	 * @return <code>false</code> if no response could be produced, in which
+	 *         case nothing is written.
+	 * @throws IOException if the response cannot be written
+	 */
+	public boolean process(byte[] jsonRequest, OutputStream out) throws IOException {
+		byte[] jsonResponse = respond(jsonRequest);
+		if (jsonResponse == null) {
+			return false;
+		}
+		out.write(jsonResponse);
+		return true;
+	}
+
+	private byte[] respond(byte[] jsonRequest) {
 		AdvertiserBlocklistRequest request = null;
 		AdvertiserBlocklistResponse response = new AdvertiserBlocklistResponse();
 		Status status = new Status("n/a");
 		String requestToken = null;
-		String jsonResponse = null;
+		byte[] jsonResponse = null;
 		Identification identification = new Identification(ssp.getOrganization(),System.currentTimeMillis());
 		String dsp = null;
 
@@ -90,13 +128,21 @@ public class SupplySideServer {
 			//translate and verify request
 			request = reqTrans.fromJSON(jsonRequest);
 			dsp = request.getIdentification().getOrganization();
-			if (dsp==null || !request.verify(ssp.getSharedSecret(dsp),reqTrans)) throw new IllegalArgumentException("Invalid MD5 checksum");
+			if (dsp==null || !Signable.verifyJSON(jsonRequest,ssp.getSharedSecret(dsp))) throw new IllegalArgumentException("Invalid MD5 checksum");
 			requestToken = request.getIdentification().getToken(); 
 			status.setRequestToken(requestToken);
 
-			//obtain block lists
+			//obtain block lists, incremental ones if the SSP supports them
 			Collection<Advertiser> advertisers = request.getAdvertisers();
-			advertisers = ssp.setBlocklists(advertisers);
+			if (ssp instanceof IncrementalSupplySideService) {
+				advertisers = ((IncrementalSupplySideService) ssp).updateBlocklists(advertisers);
+			} else {
+				// complete lists only; a timestamp left set would mark them as changes
+				for (Advertiser a : advertisers) {
+					a.setTimestamp(null);
+				}
+				advertisers = ssp.setBlocklists(advertisers);
+			}
 			response.setAdvertisers(advertisers);
 
 			//set success code
@@ -121,8 +167,9 @@ public class SupplySideServer {
 		//translate response and add a MD5 token
 		try {
 			if (dsp!=null)
-				response.sign(ssp.getSharedSecret(dsp), resTrans);
-			jsonResponse = resTrans.toJSON(response);
+				jsonResponse = response.signToJSON(ssp.getSharedSecret(dsp), resTrans);
+			else
+				jsonResponse = resTrans.toJSONBytes(response);
 		} catch (Exception e) {
 			//what to do in this case? ... HTTP error?
 			log.error("Response signing/translation failed",e);
@@ -31,8 +31,10 @@
  */
 package org.openrtb.ssp.core;
 
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.LinkedList;
@@ -48,6 +50,7 @@ import org.openrtb.common.model.Advertiser;
 import org.openrtb.common.model.AdvertiserBlocklistRequest;
 import org.openrtb.common.model.AdvertiserBlocklistResponse;
 import org.openrtb.common.model.Blocklist;
+import org.openrtb.common.model.Signable;
 import org.openrtb.common.model.Status;
 import org.openrtb.ssp.SupplySideService;
 
@@ -141,6 +144,40 @@ public class SupplySideServerTest {
     	assertTrue("expected successful verification",response.verify(ssp.getSharedSecret(DSP), resTrans));
     }
     
+    @Test
+    public void completeBlocklistsClearTimestamp() throws JsonMappingException, JsonParseException, IOException
+    {
+    	AdvertiserBlocklistRequestTranslator reqTrans = new AdvertiserBlocklistRequestTranslator();
+    	AdvertiserBlocklistResponseTranslator resTrans = new AdvertiserBlocklistResponseTranslator();
+
+    	AdvertiserBlocklistRequest request = reqTrans.fromJSON(REQUEST.replaceAll("[ \n]", ""));
+    	request.getAdvertisers().iterator().next().setTimestamp(1234L);
+    	request.sign(ssp.getSharedSecret(DSP), reqTrans);
+
+    	AdvertiserBlocklistResponse response = resTrans.fromJSON(server.process(reqTrans.toJSON(request)));
+    	assertTrue("expected success status code",response.getStatus().getCode()==Status.SUCCESS_CODE);
+    	assertNull("an SSP without incremental support answers with complete lists",
+    			response.getAdvertisers().get(0).getTimestamp());
+    }
+
+    @Test
+    public void processToStream() throws JsonMappingException, JsonParseException, IOException
+    {
+    	AdvertiserBlocklistRequestTranslator reqTrans = new AdvertiserBlocklistRequestTranslator();
+    	AdvertiserBlocklistResponseTranslator resTrans = new AdvertiserBlocklistResponseTranslator();
+
+    	AdvertiserBlocklistRequest request = reqTrans.fromJSON(REQUEST.replaceAll("[ \n]", ""));
+    	byte[] jsonRequest = request.signToJSON(ssp.getSharedSecret(DSP), reqTrans);
+
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	assertTrue("expected a response", server.process(jsonRequest, out));
+
+    	assertTrue("expected the signed response bytes to verify",
+    			Signable.verifyJSON(out.toByteArray(), ssp.getSharedSecret(DSP)));
+    	AdvertiserBlocklistResponse response = resTrans.fromJSON(out.toByteArray());
+    	assertTrue("expected success status code",response.getStatus().getCode()==Status.SUCCESS_CODE);
+    }
+
     @Test
     public void malformedRequest() throws JsonMappingException, JsonParseException, IOException
     {
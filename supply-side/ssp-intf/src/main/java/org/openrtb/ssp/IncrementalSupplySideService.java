@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2010, The OpenRTB Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ *   3. Neither the name of the OpenRTB nor the names of its contributors
+ *      may be used to endorse or promote products derived from this
+ *      software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openrtb.ssp;
+
+import java.util.Collection;
+
+import org.openrtb.common.model.Advertiser;
+
+/**
+ * A {@link SupplySideService} that can answer with incremental blocklist
+ * updates instead of complete blocklists, so that a synchronization costs in
+ * proportion to what changed rather than to the size of the blocklists.
+ *
+ * @since 1.0.2
+ */
+public interface IncrementalSupplySideService extends SupplySideService {
+	/**
+	 * Looks up blocklist changes for the requested advertisers.
+	 *
+	 * For an advertiser with a <tt>sinceThisTimestamp</tt>, sets the blocklist
+	 * entries added since then as its blocklist and those removed since then
+	 * as its removed blocklist, and keeps the timestamp. An advertiser without
+	 * a timestamp, or with one older than the changes still known to the SSP,
+	 * gets its complete blocklist and a <tt>null</tt> timestamp instead.
+	 *
+	 * @param advertisers
+	 * @return advertisers with initialized blocklists
+	 */
+	Collection<Advertiser> updateBlocklists(Collection<Advertiser> advertisers);
+}
@@ -31,12 +31,23 @@
  */
 package org.openrtb.ssp.web;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -54,11 +65,57 @@ import org.openrtb.ssp.core.SupplySideServer;
  * it as is as this servlet can be configured via <code>web.xml</code> to 
  * instantiate a specific implementation class of the {@link SupplySideService} interface. 
  *
+ * Requests are processed asynchronously: the container thread hands each
+ * request to a bounded sync pool straight away, so that large blocklist
+ * requests do not tie up the connector while they are processed. The request
+ * body is read as bytes and handed to the {@link SupplySideServer} as is, and
+ * the signed response is written straight to the response stream. When the
+ * pool is saturated the request is answered with <tt>503</tt>.
+ *
+ * The servlet 3.0 API has no non-blocking reads, so the body is still read
+ * with blocking I/O: a slow upload holds a sync-pool thread for the whole
+ * transfer, and enough of them make the servlet answer <tt>503</tt>. Size
+ * <tt>syncThreads</tt> for the number of concurrent uploads expected. A body
+ * larger than <tt>maxRequestSize</tt> is answered with <tt>413</tt>, before
+ * it is read when its <tt>Content-Length</tt> already says so.
+ *
+ * Init parameters:
+ * <ul>
+ * <li><tt>ClientClassName</tt> - the {@link SupplySideService}
+ * implementation.</li>
+ * <li><tt>syncThreads</tt> - size of the sync pool, defaults to twice the
+ * number of processors.</li>
+ * <li><tt>syncQueue</tt> - number of requests allowed to wait for a sync
+ * thread, defaults to 100.</li>
+ * <li><tt>requestTimeout</tt> - milliseconds a request may take, defaults to
+ * 60000.</li>
+ * <li><tt>maxRequestSize</tt> - the largest request body accepted, in bytes,
+ * defaults to 16MB.</li>
+ * <li><tt>debugSampleRate</tt> - with debug logging on, one in this many
+ * request and response payloads is logged, defaults to 100; 0 turns payload
+ * logging off.</li>
+ * </ul>
  */
 public class SupplySideServlet extends HttpServlet {
 
     private static final Logger log = LoggerFactory.getLogger(SupplySideServlet.class);
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+
+	private static final int DEFAULT_QUEUE_SIZE = 100;
+	private static final int DEFAULT_REQUEST_TIMEOUT = 60000;
+	private static final int DEFAULT_DEBUG_SAMPLE_RATE = 100;
+	private static final int DEFAULT_MAX_REQUEST_SIZE = 16 * 1024 * 1024;
+	// initial buffer for the body; a larger Content-Length is not trusted
+	// until the bytes have actually arrived
+	private static final int MAX_INITIAL_BUFFER = 64 * 1024;
+
 	private SupplySideServer server = null;
+	private ThreadPoolExecutor syncPool = null;
+	private int requestTimeout;
+	private int maxRequestSize;
+	private int debugSampleRate;
+	private final AtomicLong requests = new AtomicLong();
 	
 	private static final long serialVersionUID = 1L;
 
@@ -81,51 +138,228 @@ public class SupplySideServlet extends HttpServlet {
 			throw new ServletException(e.getMessage());
 		}
 		server = new SupplySideServer(ssp);
+
+		requestTimeout = intParameter("requestTimeout", DEFAULT_REQUEST_TIMEOUT);
+		debugSampleRate = intParameter("debugSampleRate", DEFAULT_DEBUG_SAMPLE_RATE);
+		maxRequestSize = intParameter("maxRequestSize", DEFAULT_MAX_REQUEST_SIZE);
+		int threads = intParameter("syncThreads", 2 * Runtime.getRuntime().availableProcessors());
+		int queue = intParameter("syncQueue", DEFAULT_QUEUE_SIZE);
+		syncPool = new ThreadPoolExecutor(threads, threads, 0L,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queue),
+				new SyncThreadFactory());
+		log.info("sync pool started with " + threads + " threads, queue of " + queue);
+	}
+
+	@Override
+	public void destroy() {
+		if (syncPool != null) {
+			syncPool.shutdownNow();
+		}
 	}
 
 	/**
 	 * Converts HTTP requests to JSON requests and JSON responses to HTTP responses
 	 */
+	@Override
 	public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-		String jsonRequest, jsonResponse;		
-		//process request
-		jsonRequest = getJsonRequest(request);
-		jsonResponse = server.process(jsonRequest);
-		//return the result
-		PrintWriter out = response.getWriter();
-		out.println(jsonResponse);
-    	log.info(" IN:"+jsonRequest);
-    	log.info("OUT:"+jsonResponse);
-		out.flush();
-		out.close();
+		if (request.getContentLength() > maxRequestSize) {
+			log.warn("rejecting blocklist request of " + request.getContentLength()
+					+ " bytes from " + request.getRemoteAddr());
+			response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+			return;
+		}
+		AsyncContext async = request.startAsync();
+		async.setTimeout(requestTimeout);
+		SyncTask sync = new SyncTask(async, request.getRemoteAddr());
+		async.addListener(sync);
+		try {
+			syncPool.execute(sync);
+		} catch (RejectedExecutionException e) {
+			log.warn("sync pool saturated, rejecting request from " + request.getRemoteAddr());
+			sync.fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		}
 	}
-	
+
 	/**
-	 * Extracts a JSON request form the HTTP request
-	 * @param request HTTP POST request
-	 * @return JSON request
+	 * Reads the complete request body.
+	 * @param in the request body
+	 * @param contentLength its length, if known, or a negative value
+	 * @param maxSize the largest body accepted
+	 * @return JSON request, UTF-8 encoded
+	 * @throws RequestTooLargeException if the body is longer than <tt>maxSize</tt>
 	 * @throws IOException
 	 */
-	private String getJsonRequest(HttpServletRequest request) throws IOException
-	{
-		StringBuilder stringBuilder = new StringBuilder();  
-		BufferedReader bufferedReader = null;  
-		try {  
-			InputStream inputStream = request.getInputStream();  
-			if (inputStream != null) {  
-				bufferedReader = new BufferedReader(new InputStreamReader(inputStream));  
-				char[] charBuffer = new char[128];  
-				int bytesRead = -1;  
-				while ((bytesRead = bufferedReader.read(charBuffer)) > 0)  
-					stringBuilder.append(charBuffer, 0, bytesRead); 
+	static byte[] readRequest(InputStream in, int contentLength, int maxSize) throws IOException {
+		if (contentLength > maxSize) {
+			throw new RequestTooLargeException(contentLength);
+		}
+		ByteArrayOutputStream body = new ByteArrayOutputStream(
+				contentLength > 0 ? Math.min(contentLength, MAX_INITIAL_BUFFER) : 8192);
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			if (body.size() + read > maxSize) {
+				throw new RequestTooLargeException(body.size() + read);
+			}
+			body.write(buffer, 0, read);
+		}
+		return body.toByteArray();
+	}
+
+	private boolean sampled() {
+		return debugSampleRate > 0 && log.isDebugEnabled()
+				&& requests.getAndIncrement() % debugSampleRate == 0;
+	}
+
+	private int intParameter(String name, int defaultValue) {
+		String value = getServletConfig().getInitParameter(name);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	/**
+	 * A single blocklist request in flight. Whichever of the sync thread and
+	 * the container timeout finishes it first writes the response; the other
+	 * one is ignored.
+	 */
+	private class SyncTask implements Runnable, AsyncListener {
+		private final AsyncContext async;
+		private final String remote;
+		private final AtomicBoolean finished = new AtomicBoolean(false);
+
+		SyncTask(AsyncContext async, String remote) {
+			this.async = async;
+			this.remote = remote;
+		}
+
+		public void run() {
+			if (finished.get()) {
+				// timed out while queued, the container has completed the request
+				return;
+			}
+			byte[] jsonRequest;
+			try {
+				jsonRequest = readRequest(async.getRequest().getInputStream(),
+						async.getRequest().getContentLength(), maxRequestSize);
+			} catch (RequestTooLargeException e) {
+				log.warn("rejecting blocklist request from " + remote + ": " + e.getMessage());
+				fail(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+				return;
+			} catch (IOException e) {
+				log.error("Unable to read blocklist request from " + remote, e);
+				fail(HttpServletResponse.SC_BAD_REQUEST);
+				return;
+			} catch (RuntimeException e) {
+				// typically the timeout completed the context meanwhile
+				log.warn("Blocklist request from " + remote + " was completed while being read", e);
+				fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+				return;
+			}
+			if (!finished.compareAndSet(false, true)) {
+				return;
+			}
+
+			HttpServletResponse response = (HttpServletResponse) async.getResponse();
+			try {
+				boolean debug = sampled();
+				response.setContentType(CONTENT_TYPE);
+				OutputStream out = response.getOutputStream();
+				ByteArrayOutputStream copy = null;
+				if (debug) {
+					log.debug(" IN:" + new String(jsonRequest, UTF8));
+					copy = new ByteArrayOutputStream();
+					out = new TeeOutputStream(out, copy);
+				}
+				if (!server.process(jsonRequest, out)) {
+					response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+				}
+				out.flush();
+				if (debug) {
+					log.debug("OUT:" + new String(copy.toByteArray(), UTF8));
+				}
+			} catch (Exception e) {
+				log.error("Unable to answer blocklist request from " + remote, e);
+			} finally {
+				async.complete();
 			}
-			else
-				stringBuilder.append("");   
-		} 
-		finally {  
-			if (bufferedReader != null)
-				bufferedReader.close();  
-		}  
-		return stringBuilder.toString();  
+		}
+
+		void fail(int status) {
+			if (!finished.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				((HttpServletResponse) async.getResponse()).setStatus(status);
+			} catch (RuntimeException e) {
+				log.warn("Unable to answer blocklist request from " + remote + " with " + status, e);
+			} finally {
+				try {
+					async.complete();
+				} catch (IllegalStateException e) {
+					// already completed by the container
+				}
+			}
+		}
+
+		public void onTimeout(AsyncEvent event) throws IOException {
+			log.warn("blocklist request from " + remote + " timed out");
+			fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		}
+
+		public void onError(AsyncEvent event) throws IOException {
+			finished.set(true);
+		}
+
+		public void onComplete(AsyncEvent event) throws IOException {
+		}
+
+		public void onStartAsync(AsyncEvent event) throws IOException {
+		}
+	}
+
+	// a body over maxRequestSize, answered with 413
+	static class RequestTooLargeException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		RequestTooLargeException(long size) {
+			super("request body of " + size + " bytes exceeds the limit");
+		}
+	}
+
+	// copies what is written, for debug logging
+	private static class TeeOutputStream extends OutputStream {
+		private final OutputStream out;
+		private final OutputStream copy;
+
+		TeeOutputStream(OutputStream out, OutputStream copy) {
+			this.out = out;
+			this.copy = copy;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			copy.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			copy.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+	}
+
+	private static class SyncThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "ssp-sync-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
 	}
 }